@@ -1,6 +1,8 @@
 package com.conveyal.datatools.common.status;
 
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.FeedSource;
+import com.conveyal.datatools.manager.persistence.Persistence;
 
 /**
  * This class should be used for any job that operates on a FeedSource.
@@ -11,4 +13,12 @@ public abstract class FeedSourceJob extends MonitorableJob {
     }
 
     public abstract String getFeedSourceId();
+
+    @Override
+    protected String retrieveProjectId() {
+        String feedSourceId = getFeedSourceId();
+        if (feedSourceId == null || Persistence.feedSources == null) return null;
+        FeedSource feedSource = Persistence.feedSources.getById(feedSourceId);
+        return feedSource != null ? feedSource.projectId : null;
+    }
 }
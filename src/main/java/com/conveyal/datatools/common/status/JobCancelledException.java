@@ -0,0 +1,11 @@
+package com.conveyal.datatools.common.status;
+
+/**
+ * Thrown from {@link MonitorableJob#checkCancelled} to unwind a job once cancellation has been requested. This is
+ * unchecked so that checkpoints can be placed deep inside job logic without changing method signatures.
+ */
+public class JobCancelledException extends RuntimeException {
+    public JobCancelledException(MonitorableJob job) {
+        super(String.format("Job %s (%s) was cancelled", job.jobId, job.type));
+    }
+}
@@ -0,0 +1,209 @@
+package com.conveyal.datatools.common.status;
+
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+
+/**
+ * Holds the jobs known to this server, indexed by job ID, by owner and by feed source, so that looking up a job (e.g.,
+ * when a client polls for its status) does not require scanning every job of every user.
+ *
+ * Jobs are registered on creation (see {@link MonitorableJob}) and are removed once a client has seen them in a
+ * finished state. Finished jobs that are never fetched (e.g., because the user closed their browser, or for scheduled
+ * system jobs) are evicted once they are older than the configured age or once there are more than the configured
+ * number of finished jobs, oldest first:
+ * - application.jobs.retention.max_completed_jobs (1000)
+ * - application.jobs.retention.max_age_minutes (60)
+ *
+ * Note: jobs are only indexed by feed source once they start running, because {@link FeedSourceJob}s do not know
+ * their feed source until their constructors have completed.
+ */
+public class JobRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(JobRegistry.class);
+    private static final String CONFIG_PREFIX = "application.jobs.retention";
+    private static final int DEFAULT_MAX_COMPLETED_JOBS = 1000;
+    private static final int DEFAULT_MAX_AGE_MINUTES = 60;
+    /** Minimum time between checks for finished jobs to evict (other than those requested via getStats). */
+    private static final long EVICTION_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final int maxCompletedJobs;
+    private final long maxAgeMillis;
+    private final Map<String, MonitorableJob> jobsById = new ConcurrentHashMap<>();
+    /** Note: the sets stored here must be thread-safe sets (see {@link #addToIndex}). */
+    private final Map<String, Set<MonitorableJob>> jobsByUserId = new ConcurrentHashMap<>();
+    private final Map<String, Set<MonitorableJob>> jobsByFeedSourceId = new ConcurrentHashMap<>();
+    /** Feed source each job was indexed under, so the job can be removed from the index. */
+    private final Map<String, String> feedSourceIdByJobId = new ConcurrentHashMap<>();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private volatile long lastEvictionTime = 0;
+
+    public JobRegistry(int maxCompletedJobs, long maxAgeMillis) {
+        this.maxCompletedJobs = maxCompletedJobs;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /** Construct a registry with the retention limits defined in server.yml. */
+    public static JobRegistry fromConfig() {
+        int maxCompletedJobs = Integer.parseInt(getConfigPropertyAsText(
+            CONFIG_PREFIX + ".max_completed_jobs",
+            String.valueOf(DEFAULT_MAX_COMPLETED_JOBS)
+        ));
+        int maxAgeMinutes = Integer.parseInt(getConfigPropertyAsText(
+            CONFIG_PREFIX + ".max_age_minutes",
+            String.valueOf(DEFAULT_MAX_AGE_MINUTES)
+        ));
+        return new JobRegistry(maxCompletedJobs, TimeUnit.MINUTES.toMillis(maxAgeMinutes));
+    }
+
+    /** Add the job to the registry. Registering a job more than once has no effect. */
+    public void register(MonitorableJob job) {
+        jobsById.put(job.jobId, job);
+        addToIndex(jobsByUserId, job.retrieveUserId(), job);
+        evictCompletedJobsIfDue();
+    }
+
+    /**
+     * Index the job by its feed source, if it has one. This is called once the job starts running (see
+     * {@link MonitorableJob#run}).
+     */
+    public void onJobStarted(MonitorableJob job) {
+        if (!(job instanceof FeedSourceJob) || !jobsById.containsKey(job.jobId)) return;
+        String feedSourceId = ((FeedSourceJob) job).getFeedSourceId();
+        if (feedSourceId == null || feedSourceIdByJobId.putIfAbsent(job.jobId, feedSourceId) != null) return;
+        addToIndex(jobsByFeedSourceId, feedSourceId, job);
+    }
+
+    /** @return the job with the given ID, or null if not found. */
+    public MonitorableJob get(String jobId) {
+        return jobId != null ? jobsById.get(jobId) : null;
+    }
+
+    /** @return a snapshot of the jobs owned by the user (empty if there are none). */
+    public Set<MonitorableJob> getJobsForUser(String userId) {
+        return snapshot(jobsByUserId.get(userId));
+    }
+
+    /** @return a snapshot of the jobs that have run (or are running) for the feed source (empty if there are none). */
+    public Set<MonitorableJob> getJobsForFeedSource(String feedSourceId) {
+        return snapshot(jobsByFeedSourceId.get(feedSourceId));
+    }
+
+    /** @return a snapshot of all registered jobs. */
+    public Set<MonitorableJob> getAllJobs() {
+        return new HashSet<>(jobsById.values());
+    }
+
+    /** Remove the job from the registry and all of its indexes. */
+    public void remove(MonitorableJob job) {
+        if (jobsById.remove(job.jobId, job)) {
+            removeFromIndex(jobsByUserId, job.retrieveUserId(), job);
+            String feedSourceId = feedSourceIdByJobId.remove(job.jobId);
+            if (feedSourceId != null) removeFromIndex(jobsByFeedSourceId, feedSourceId, job);
+        }
+    }
+
+    /**
+     * Evict finished jobs that are older than the maximum age, then evict the oldest finished jobs until no more than
+     * the maximum number remain.
+     * @return the number of jobs evicted
+     */
+    public int evictCompletedJobs() {
+        lastEvictionTime = System.currentTimeMillis();
+        long cutoff = lastEvictionTime - maxAgeMillis;
+        List<MonitorableJob> finishedJobs = jobsById.values().stream()
+            .filter(JobRegistry::isFinished)
+            .sorted(Comparator.comparingLong(JobRegistry::finishedTime))
+            .collect(Collectors.toList());
+        int excess = finishedJobs.size() - maxCompletedJobs;
+        int evicted = 0;
+        for (MonitorableJob job : finishedJobs) {
+            if (evicted >= excess && finishedTime(job) >= cutoff) break;
+            remove(job);
+            evicted++;
+        }
+        if (evicted > 0) {
+            evictedCount.addAndGet(evicted);
+            LOG.info("Evicted {} finished jobs from job registry", evicted);
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of registered jobs by state and the sizes of the indexes, along with the JVM heap usage
+     * (retained jobs can hold on to large objects such as feed versions and their validation results).
+     */
+    public Map<String, Object> getStats() {
+        evictCompletedJobs();
+        int active = 0;
+        int finished = 0;
+        for (MonitorableJob job : jobsById.values()) {
+            if (isFinished(job)) finished++;
+            else if (job.active) active++;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("total", jobsById.size());
+        stats.put("active", active);
+        stats.put("staged", jobsById.size() - active - finished);
+        stats.put("finished", finished);
+        stats.put("users", jobsByUserId.size());
+        stats.put("feedSources", jobsByFeedSourceId.size());
+        stats.put("evicted", evictedCount.get());
+        stats.put("maxCompletedJobs", maxCompletedJobs);
+        stats.put("maxAgeMinutes", TimeUnit.MILLISECONDS.toMinutes(maxAgeMillis));
+        Runtime runtime = Runtime.getRuntime();
+        stats.put("heapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+        stats.put("heapMaxBytes", runtime.maxMemory());
+        return stats;
+    }
+
+    /** @return whether the job has finished, either successfully or with an error. */
+    public static boolean isFinished(MonitorableJob job) {
+        return job.status.completed || job.status.error;
+    }
+
+    private void evictCompletedJobsIfDue() {
+        if (System.currentTimeMillis() - lastEvictionTime < EVICTION_INTERVAL_MILLIS) return;
+        evictCompletedJobs();
+    }
+
+    private static long finishedTime(MonitorableJob job) {
+        return job.status.startTime + job.status.duration;
+    }
+
+    private static Set<MonitorableJob> snapshot(Set<MonitorableJob> jobs) {
+        return jobs != null ? new HashSet<>(jobs) : Collections.emptySet();
+    }
+
+    /**
+     * Add the job to the set for the key. This (and {@link #removeFromIndex}) updates the set atomically with respect
+     * to the map so that a job is never added to a set that is being removed because it became empty.
+     */
+    private static void addToIndex(Map<String, Set<MonitorableJob>> index, String key, MonitorableJob job) {
+        index.compute(key, (k, jobs) -> {
+            if (jobs == null) jobs = Sets.newConcurrentHashSet();
+            jobs.add(job);
+            return jobs;
+        });
+    }
+
+    private static void removeFromIndex(Map<String, Set<MonitorableJob>> index, String key, MonitorableJob job) {
+        index.computeIfPresent(key, (k, jobs) -> {
+            jobs.remove(job);
+            return jobs.isEmpty() ? null : jobs;
+        });
+    }
+}
@@ -0,0 +1,583 @@
+package com.conveyal.datatools.common.status;
+
+import com.conveyal.datatools.common.status.MonitorableJob.JobPriority;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+
+/**
+ * Executor for long-running jobs that runs at most a fixed number of jobs at once, choosing which queued job to start
+ * next by priority class (see {@link MonitorableJob#retrievePriority}). Each priority class has its own limit on
+ * concurrently running jobs, so that, e.g., a nightly fetch of every feed can never occupy all the threads and make a
+ * user's upload wait behind dozens of background validations.
+ *
+ * Within a priority class, jobs are queued separately for each share key (generally the owner, see
+ * {@link MonitorableJob#retrieveShareKey}) and started round-robin across share keys, FIFO within each. Each share key
+ * also has a limit on running jobs, so a user who uploads dozens of feeds at once cannot take every thread from other
+ * users.
+ *
+ * Jobs are also admitted against a memory budget, using each job's estimate of the heap it needs (see
+ * {@link MonitorableJob#retrieveMemoryEstimate}), so that, e.g., several loads of very large feeds or a regional merge
+ * do not run at once and exhaust the heap. A job is only started if its estimate fits within the memory not reserved by
+ * running jobs. If the next job does not fit, no other jobs are started until it does (rather than starting smaller jobs
+ * queued behind it, which could hold it back indefinitely). A job whose estimate exceeds the whole budget runs alone.
+ *
+ * Jobs that would repeat work already queued or running (e.g., two fetches of the same feed source from a double-click
+ * or overlapping schedules) are not queued again: a job with the same deduplication key (see
+ * {@link MonitorableJob#retrieveDeduplicationKey}) as one in flight is attached to that job instead (see
+ * {@link MonitorableJob#attachTo}).
+ *
+ * Optionally, I/O-bound jobs (see {@link MonitorableJob#retrieveWorkload}) can be run by a separate scheduler with its own,
+ * larger thread limit, so that jobs waiting on downloads, S3 transfers or other servers do not hold the threads that
+ * CPU-heavy jobs (loading, validating, merging) need. I/O-bound jobs run separately use little memory and CPU, so they
+ * are not counted against the limits or memory budget of CPU-bound jobs.
+ *
+ * Optionally, jobs can be handed to an {@link Offloader} instead (e.g., to run CPU-heavy jobs in worker processes, see
+ * {@link com.conveyal.datatools.manager.jobs.JobWorker}). Offloaded jobs are not queued or counted here, but identical
+ * jobs are still attached to them until they finish (see {@link #finishOffloadedJob}).
+ *
+ * The scheduler also applies backpressure: endpoints that queue jobs check {@link #retrieveRetryAfterMillis} first and
+ * turn clients away (with a Retry-After estimate) once too many jobs of the same priority class are queued, overall or
+ * for the requesting user, rather than letting the queue grow without limit during a burst. Estimates of the wait are
+ * based on the average run time of finished jobs in the priority class.
+ *
+ * Limits are configured in server.yml (defaults in parentheses):
+ * - application.jobs.max_concurrent_jobs (4): total number of jobs running at once
+ * - application.jobs.interactive.max_concurrent_jobs (total): limit for interactive jobs
+ * - application.jobs.background.max_concurrent_jobs (total - 1): limit for background jobs. By default this leaves a
+ *   thread free for interactive jobs.
+ * - application.jobs.max_concurrent_jobs_per_user (half of total): limit for each share key. Note: this is a hard
+ *   limit, so threads may sit idle while a single user's jobs are queued.
+ * - application.jobs.memory_budget_mb (half of the max heap): total memory estimate of jobs running at once. The thread
+ *   limits above still apply, so max_concurrent_jobs can be raised to let many small jobs run while the budget keeps
+ *   large jobs apart.
+ * - application.jobs.io_bound_jobs (shared): set to "separate" to run I/O-bound jobs separately (see above)
+ * - application.jobs.io.max_concurrent_jobs (16): total number of I/O-bound jobs running at once when run separately.
+ *   Half of these may be used by a single user.
+ * - application.jobs.max_queued_jobs (50): queued jobs of a priority class above which endpoints reject new jobs
+ * - application.jobs.max_queued_jobs_per_user (10): queued jobs for a single user above which endpoints reject new jobs
+ *
+ * Note: a job is never preempted once started, so a newly queued interactive job may still need to wait for a running
+ * job to finish if interactive jobs already use all of the threads available to them.
+ */
+public class JobScheduler implements Executor {
+    private static final Logger LOG = LoggerFactory.getLogger(JobScheduler.class);
+    private static final String CONFIG_PREFIX = "application.jobs";
+    private static final int DEFAULT_MAX_CONCURRENT_JOBS = 4;
+    private static final long BYTES_PER_MB = 1024 * 1024;
+    private static final int DEFAULT_MAX_CONCURRENT_IO_JOBS = 16;
+    private static final int DEFAULT_MAX_QUEUED_JOBS = 50;
+    private static final int DEFAULT_MAX_QUEUED_JOBS_PER_USER = 10;
+    /** Run time assumed for wait estimates until a job of the priority class has finished. */
+    private static final long DEFAULT_RUN_MILLIS = 60 * 1000;
+    /** Share key for tasks that are not {@link MonitorableJob}s. */
+    private static final String OTHER_TASKS_SHARE_KEY = "other";
+
+    private final int maxConcurrentJobs;
+    private final Map<JobPriority, Integer> maxConcurrentJobsByPriority = new EnumMap<>(JobPriority.class);
+    private final int maxConcurrentJobsPerShare;
+    /** Queued tasks by priority and then by share key. Share keys are kept in round-robin order. */
+    private final Map<JobPriority, LinkedHashMap<String, Deque<QueuedTask>>> queues = new EnumMap<>(JobPriority.class);
+    private final Map<JobPriority, Integer> runningByPriority = new EnumMap<>(JobPriority.class);
+    private final Map<String, Integer> runningByShare = new HashMap<>();
+    /** Total time in milliseconds that started tasks spent in the queue, by priority (used to report average waits). */
+    private final Map<JobPriority, Long> totalWaitMillisByPriority = new EnumMap<>(JobPriority.class);
+    private final Map<JobPriority, Long> startedCountByPriority = new EnumMap<>(JobPriority.class);
+    /** Total run time in milliseconds of finished tasks, by priority (used to estimate waits). */
+    private final Map<JobPriority, Long> totalRunMillisByPriority = new EnumMap<>(JobPriority.class);
+    private final Map<JobPriority, Long> finishedCountByPriority = new EnumMap<>(JobPriority.class);
+    /** Limits on queued tasks used for admission (see {@link #retrieveRetryAfterMillis}). */
+    private int maxQueuedJobs = Integer.MAX_VALUE;
+    private int maxQueuedJobsPerShare = Integer.MAX_VALUE;
+    private int runningCount;
+    /** Memory budget in bytes (Long.MAX_VALUE if unlimited). */
+    private final long memoryBudgetBytes;
+    /** Sum of the memory estimates of running tasks. */
+    private long reservedMemoryBytes;
+    /** Whether the next task to start is waiting for running tasks to release memory. */
+    private boolean waitingOnMemory;
+    /** Queued or running jobs by deduplication key. */
+    private final Map<String, MonitorableJob> inFlightJobsByKey = new HashMap<>();
+    private long deduplicatedCount;
+    /** Scheduler for I/O-bound jobs, or null if they are run alongside CPU-bound jobs. */
+    private JobScheduler ioScheduler;
+    /** Runs jobs elsewhere, if set (see class doc). */
+    private volatile Offloader offloader;
+    private long offloadedCount;
+    /** Threads are only created while fewer than maxConcurrentJobs tasks are running, which bounds the pool size. */
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+
+    public JobScheduler(
+        int maxConcurrentJobs,
+        Map<JobPriority, Integer> maxConcurrentJobsByPriority,
+        int maxConcurrentJobsPerShare,
+        long memoryBudgetBytes
+    ) {
+        if (maxConcurrentJobs < 1) throw new IllegalArgumentException("Max concurrent jobs must be positive.");
+        if (memoryBudgetBytes < 1) throw new IllegalArgumentException("Memory budget must be positive.");
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.maxConcurrentJobsPerShare = Math.max(1, Math.min(maxConcurrentJobsPerShare, maxConcurrentJobs));
+        for (JobPriority priority : JobPriority.values()) {
+            int limit = maxConcurrentJobsByPriority.getOrDefault(priority, maxConcurrentJobs);
+            this.maxConcurrentJobsByPriority.put(priority, Math.max(1, Math.min(limit, maxConcurrentJobs)));
+            queues.put(priority, new LinkedHashMap<>());
+            runningByPriority.put(priority, 0);
+            totalWaitMillisByPriority.put(priority, 0L);
+            startedCountByPriority.put(priority, 0L);
+            totalRunMillisByPriority.put(priority, 0L);
+            finishedCountByPriority.put(priority, 0L);
+        }
+        LOG.info("Job scheduler running up to {} jobs (limits by priority: {}, per user: {}, memory budget: {} MB)",
+            maxConcurrentJobs, this.maxConcurrentJobsByPriority, this.maxConcurrentJobsPerShare,
+            memoryBudgetBytes == Long.MAX_VALUE ? "unlimited" : memoryBudgetBytes / BYTES_PER_MB);
+    }
+
+    /** Construct a scheduler without a memory budget. */
+    public JobScheduler(
+        int maxConcurrentJobs,
+        Map<JobPriority, Integer> maxConcurrentJobsByPriority,
+        int maxConcurrentJobsPerShare
+    ) {
+        this(maxConcurrentJobs, maxConcurrentJobsByPriority, maxConcurrentJobsPerShare, Long.MAX_VALUE);
+    }
+
+    /** Construct a scheduler without a per-user limit. */
+    public JobScheduler(int maxConcurrentJobs, Map<JobPriority, Integer> maxConcurrentJobsByPriority) {
+        this(maxConcurrentJobs, maxConcurrentJobsByPriority, maxConcurrentJobs);
+    }
+
+    /**
+     * Construct a scheduler with the limits defined in the application config (see class doc).
+     */
+    public static JobScheduler fromConfig() {
+        int maxConcurrentJobs = Integer.parseInt(getConfigPropertyAsText(
+            CONFIG_PREFIX + ".max_concurrent_jobs",
+            String.valueOf(DEFAULT_MAX_CONCURRENT_JOBS)
+        ));
+        Map<JobPriority, Integer> limits = new EnumMap<>(JobPriority.class);
+        limits.put(JobPriority.INTERACTIVE, maxConcurrentJobs);
+        limits.put(JobPriority.BACKGROUND, Math.max(1, maxConcurrentJobs - 1));
+        for (JobPriority priority : JobPriority.values()) {
+            String limit = getConfigPropertyAsText(
+                String.join(".", CONFIG_PREFIX, priority.name().toLowerCase(), "max_concurrent_jobs"),
+                null
+            );
+            if (limit != null) limits.put(priority, Integer.parseInt(limit));
+        }
+        int maxConcurrentJobsPerShare = Integer.parseInt(getConfigPropertyAsText(
+            CONFIG_PREFIX + ".max_concurrent_jobs_per_user",
+            String.valueOf(Math.max(1, maxConcurrentJobs / 2))
+        ));
+        // Runtime#maxMemory returns Long.MAX_VALUE if the heap is not limited, in which case there is no default budget.
+        long maxHeapBytes = Runtime.getRuntime().maxMemory();
+        String memoryBudgetMb = getConfigPropertyAsText(CONFIG_PREFIX + ".memory_budget_mb", null);
+        long memoryBudgetBytes = memoryBudgetMb != null
+            ? Long.parseLong(memoryBudgetMb) * BYTES_PER_MB
+            : maxHeapBytes == Long.MAX_VALUE ? Long.MAX_VALUE : maxHeapBytes / 2;
+        JobScheduler scheduler = new JobScheduler(maxConcurrentJobs, limits, maxConcurrentJobsPerShare, memoryBudgetBytes);
+        int maxQueuedJobs = Integer.parseInt(getConfigPropertyAsText(
+            CONFIG_PREFIX + ".max_queued_jobs",
+            String.valueOf(DEFAULT_MAX_QUEUED_JOBS)
+        ));
+        int maxQueuedJobsPerShare = Integer.parseInt(getConfigPropertyAsText(
+            CONFIG_PREFIX + ".max_queued_jobs_per_user",
+            String.valueOf(DEFAULT_MAX_QUEUED_JOBS_PER_USER)
+        ));
+        scheduler.setQueueLimits(maxQueuedJobs, maxQueuedJobsPerShare);
+        if ("separate".equals(getConfigPropertyAsText(CONFIG_PREFIX + ".io_bound_jobs", "shared"))) {
+            int maxConcurrentIoJobs = Integer.parseInt(getConfigPropertyAsText(
+                CONFIG_PREFIX + ".io.max_concurrent_jobs",
+                String.valueOf(DEFAULT_MAX_CONCURRENT_IO_JOBS)
+            ));
+            // The I/O lane has no memory budget of its own (and does not reserve memory), so that the memory budget
+            // applies once across both lanes. Its jobs mostly wait on the network rather than hold feeds in memory.
+            JobScheduler ioScheduler =
+                new JobScheduler(maxConcurrentIoJobs, new EnumMap<>(JobPriority.class), maxConcurrentIoJobs / 2);
+            ioScheduler.setQueueLimits(maxQueuedJobs, maxQueuedJobsPerShare);
+            scheduler.setIoScheduler(ioScheduler);
+        }
+        return scheduler;
+    }
+
+    /** Run I/O-bound jobs with the given scheduler rather than this one (see class doc). */
+    public void setIoScheduler(JobScheduler ioScheduler) {
+        this.ioScheduler = ioScheduler;
+    }
+
+    /** Set the limits on queued jobs used for admission (see {@link #retrieveRetryAfterMillis}). */
+    public synchronized void setQueueLimits(int maxQueuedJobs, int maxQueuedJobsPerShare) {
+        this.maxQueuedJobs = Math.max(1, maxQueuedJobs);
+        this.maxQueuedJobsPerShare = Math.max(1, maxQueuedJobsPerShare);
+    }
+
+    /**
+     * Admission check for endpoints that queue jobs (see class doc). This does not stop jobs from being queued, so that
+     * jobs queued by other jobs (e.g., processing a fetched feed) are never lost.
+     * @return 0 if another job of the given priority and workload may be queued for the share key, otherwise a rough
+     * estimate of the milliseconds until enough queued jobs have started for it to be accepted
+     */
+    public long retrieveRetryAfterMillis(String shareKey, JobPriority priority, MonitorableJob.JobWorkload workload) {
+        if (ioScheduler != null && workload == MonitorableJob.JobWorkload.IO) {
+            return ioScheduler.retrieveRetryAfterMillis(shareKey, priority, workload);
+        }
+        synchronized (this) {
+            long averageRunMillis = retrieveAverageRunMillis(priority);
+            long retryAfterMillis = 0;
+            int queued = countQueued(priority, null);
+            if (queued >= maxQueuedJobs) {
+                retryAfterMillis = estimateDrainMillis(
+                    queued - maxQueuedJobs + 1,
+                    maxConcurrentJobsByPriority.get(priority),
+                    averageRunMillis
+                );
+            }
+            int queuedForShare = countQueued(shareKey);
+            if (queuedForShare >= maxQueuedJobsPerShare) {
+                retryAfterMillis = Math.max(retryAfterMillis, estimateDrainMillis(
+                    queuedForShare - maxQueuedJobsPerShare + 1,
+                    maxConcurrentJobsPerShare,
+                    averageRunMillis
+                ));
+            }
+            return retryAfterMillis;
+        }
+    }
+
+    /**
+     * @return a rough estimate of the milliseconds a job of the priority class queued now would wait before starting,
+     * based on the jobs queued ahead of it and the average run time of finished jobs. Must be called while holding the
+     * lock.
+     */
+    private long estimateWaitMillis(JobPriority priority) {
+        int slots = maxConcurrentJobsByPriority.get(priority);
+        int ahead = 0;
+        for (JobPriority higherPriority : JobPriority.values()) {
+            if (higherPriority.compareTo(priority) > 0) break;
+            ahead += countQueued(higherPriority, null);
+        }
+        // The number of jobs that must finish before a slot is free for the new job.
+        int mustFinish = Math.max(0, runningByPriority.get(priority) + ahead - slots + 1);
+        return estimateDrainMillis(mustFinish, slots, retrieveAverageRunMillis(priority));
+    }
+
+    /** @return the time for the given number of jobs to finish when run the given number at a time. */
+    private static long estimateDrainMillis(int jobs, int slots, long averageRunMillis) {
+        return (long) Math.ceil((double) jobs / slots) * averageRunMillis;
+    }
+
+    /** Must be called while holding the lock. */
+    private long retrieveAverageRunMillis(JobPriority priority) {
+        long finished = finishedCountByPriority.get(priority);
+        return finished > 0 ? totalRunMillisByPriority.get(priority) / finished : DEFAULT_RUN_MILLIS;
+    }
+
+    /** Offer each job to the given offloader before queueing it here (see class doc). */
+    public void setOffloader(Offloader offloader) {
+        this.offloader = offloader;
+    }
+
+    /**
+     * Stop deduplicating against an offloaded job once it has finished (or been lost) and give the jobs attached to it
+     * its results. This should be called by the offloader.
+     */
+    public void finishOffloadedJob(MonitorableJob job) {
+        synchronized (this) {
+            removeInFlightJob(job);
+        }
+        job.shareResults();
+    }
+
+    /**
+     * Queue the task to run once a thread is available for its priority class and share key, unless it is a job
+     * identical to one already in flight (see class doc). Tasks that are not {@link MonitorableJob}s are treated as
+     * interactive and share a single key.
+     */
+    @Override
+    public void execute(Runnable task) {
+        JobPriority priority = JobPriority.INTERACTIVE;
+        String shareKey = OTHER_TASKS_SHARE_KEY;
+        long memoryEstimate = 0;
+        if (task instanceof MonitorableJob) {
+            MonitorableJob job = (MonitorableJob) task;
+            if (ioScheduler != null && job.retrieveWorkload() == MonitorableJob.JobWorkload.IO) {
+                ioScheduler.execute(job);
+                return;
+            }
+            // Identical jobs are attached before offloading, so that they are not offloaded as separate jobs either.
+            String deduplicationKey = job.retrieveDeduplicationKey();
+            if (deduplicationKey != null) {
+                synchronized (this) {
+                    MonitorableJob inFlightJob = inFlightJobsByKey.get(deduplicationKey);
+                    // The same job may be queued again (e.g., a recurring job), in which case there is nothing to do.
+                    if (inFlightJob == job) return;
+                    if (inFlightJob != null) {
+                        job.attachTo(inFlightJob);
+                        deduplicatedCount++;
+                        LOG.info("{} (jobId={}) attached to identical job {}", job.type, job.jobId, inFlightJob.jobId);
+                        return;
+                    }
+                    inFlightJobsByKey.put(deduplicationKey, job);
+                }
+            }
+            Offloader offloader = this.offloader;
+            if (offloader != null && offloader.offload(job)) {
+                // The job stays in flight until the offloader reports that it has finished (see finishOffloadedJob).
+                synchronized (this) {
+                    offloadedCount++;
+                }
+                return;
+            }
+            priority = job.retrievePriority();
+            // Determined outside of the lock because these may require a database lookup.
+            shareKey = job.retrieveShareKey();
+            // Without a budget there is nothing to reserve, so skip the estimate (which may require a database lookup).
+            if (memoryBudgetBytes != Long.MAX_VALUE) memoryEstimate = retrieveMemoryEstimate(job);
+            // Record the job so that it can be recovered if the server restarts before it finishes.
+            if (Persistence.jobQueue != null) Persistence.jobQueue.recordQueued(job);
+        }
+        synchronized (this) {
+            queues.get(priority).computeIfAbsent(shareKey, key -> new ArrayDeque<>())
+                // Cap the estimate at the budget, so that a job larger than the budget can still run alone.
+                .add(new QueuedTask(task, priority, shareKey, Math.min(memoryEstimate, memoryBudgetBytes)));
+            dispatch();
+        }
+    }
+
+    /**
+     * Remove the task from the queue if it has not yet started.
+     * @return whether the task was removed
+     */
+    public boolean remove(Runnable task) {
+        if (ioScheduler != null && ioScheduler.remove(task)) return true;
+        // The offloader writes to the database, so it is called without holding the lock (as in execute).
+        Offloader offloader = this.offloader;
+        if (offloader != null && task instanceof MonitorableJob && offloader.remove((MonitorableJob) task)) {
+            synchronized (this) {
+                removeInFlightJob(task);
+            }
+            return true;
+        }
+        synchronized (this) {
+            for (LinkedHashMap<String, Deque<QueuedTask>> queuesByShare : queues.values()) {
+                for (Map.Entry<String, Deque<QueuedTask>> entry : queuesByShare.entrySet()) {
+                    if (entry.getValue().removeIf(queuedTask -> queuedTask.task == task)) {
+                        removeInFlightJob(task);
+                        if (entry.getValue().isEmpty()) queuesByShare.remove(entry.getKey());
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static long retrieveMemoryEstimate(MonitorableJob job) {
+        try {
+            return Math.max(0, job.retrieveMemoryEstimate());
+        } catch (Exception e) {
+            LOG.warn("Could not estimate memory for job {}, assuming it is negligible", job.jobId, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Start queued tasks in priority order while there are free threads, the task's priority class and share key are
+     * below their limits and the task's memory estimate fits within the budget. Must be called while holding the lock.
+     */
+    private void dispatch() {
+        waitingOnMemory = false;
+        while (runningCount < maxConcurrentJobs) {
+            QueuedTask next = null;
+            for (JobPriority priority : JobPriority.values()) {
+                if (runningByPriority.get(priority) >= maxConcurrentJobsByPriority.get(priority)) continue;
+                LinkedHashMap<String, Deque<QueuedTask>> queuesByShare = queues.get(priority);
+                String shareKey = nextShareKey(queuesByShare);
+                if (shareKey == null) continue;
+                if (memoryBudgetBytes - reservedMemoryBytes < queuesByShare.get(shareKey).peek().memoryEstimate) {
+                    // Wait for running tasks to release memory (see class doc).
+                    waitingOnMemory = true;
+                    return;
+                }
+                next = poll(queuesByShare, shareKey);
+                break;
+            }
+            if (next == null) return;
+            runningCount++;
+            reservedMemoryBytes += next.memoryEstimate;
+            runningByPriority.merge(next.priority, 1, Integer::sum);
+            runningByShare.merge(next.shareKey, 1, Integer::sum);
+            totalWaitMillisByPriority.merge(next.priority, System.currentTimeMillis() - next.queuedAt, Long::sum);
+            startedCountByPriority.merge(next.priority, 1L, Long::sum);
+            QueuedTask task = next;
+            workers.execute(() -> run(task));
+        }
+    }
+
+    /** Stop deduplicating against the task once it finishes or is removed. Must be called while holding the lock. */
+    private void removeInFlightJob(Runnable task) {
+        inFlightJobsByKey.values().remove(task);
+    }
+
+    /** @return the first share key (in round-robin order) with queued tasks that is below its limit, if any. */
+    private String nextShareKey(LinkedHashMap<String, Deque<QueuedTask>> queuesByShare) {
+        for (String shareKey : queuesByShare.keySet()) {
+            if (runningByShare.getOrDefault(shareKey, 0) < maxConcurrentJobsPerShare) return shareKey;
+        }
+        return null;
+    }
+
+    /** Take the next task for the share key and move the share key to the back of the rotation. */
+    private static QueuedTask poll(LinkedHashMap<String, Deque<QueuedTask>> queuesByShare, String shareKey) {
+        Deque<QueuedTask> queue = queuesByShare.remove(shareKey);
+        QueuedTask next = queue.poll();
+        if (!queue.isEmpty()) queuesByShare.put(shareKey, queue);
+        return next;
+    }
+
+    private void run(QueuedTask queuedTask) {
+        long startTime = System.currentTimeMillis();
+        try {
+            queuedTask.task.run();
+        } catch (RuntimeException e) {
+            // MonitorableJob#run handles its own exceptions, so this should only happen for other tasks.
+            LOG.error("Uncaught exception in scheduled task", e);
+        } finally {
+            synchronized (this) {
+                runningCount--;
+                removeInFlightJob(queuedTask.task);
+                reservedMemoryBytes -= queuedTask.memoryEstimate;
+                runningByPriority.merge(queuedTask.priority, -1, Integer::sum);
+                totalRunMillisByPriority.merge(queuedTask.priority, System.currentTimeMillis() - startTime, Long::sum);
+                finishedCountByPriority.merge(queuedTask.priority, 1L, Long::sum);
+                // Remove share keys with no running jobs so that the map does not grow with every user seen.
+                runningByShare.computeIfPresent(queuedTask.shareKey, (key, count) -> count > 1 ? count - 1 : null);
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * @return for each priority class, the number of queued and running jobs, the concurrency limit, the average
+     * time in milliseconds that started jobs waited in the queue and an estimate of the wait for a job queued now,
+     * along with queued and running counts by share key and the memory reserved by running jobs.
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrentJobs", maxConcurrentJobs);
+        stats.put("maxConcurrentJobsPerUser", maxConcurrentJobsPerShare);
+        stats.put("maxQueuedJobs", maxQueuedJobs);
+        stats.put("maxQueuedJobsPerUser", maxQueuedJobsPerShare);
+        stats.put("running", runningCount);
+        stats.put("memoryBudgetMb", memoryBudgetBytes == Long.MAX_VALUE ? null : memoryBudgetBytes / BYTES_PER_MB);
+        stats.put("reservedMemoryMb", reservedMemoryBytes / BYTES_PER_MB);
+        stats.put("waitingOnMemory", waitingOnMemory);
+        stats.put("deduplicated", deduplicatedCount);
+        if (offloader != null) stats.put("offloaded", offloadedCount);
+        for (JobPriority priority : JobPriority.values()) {
+            Map<String, Object> priorityStats = new LinkedHashMap<>();
+            long started = startedCountByPriority.get(priority);
+            priorityStats.put("queued", countQueued(priority, null));
+            priorityStats.put("running", runningByPriority.get(priority));
+            priorityStats.put("maxConcurrentJobs", maxConcurrentJobsByPriority.get(priority));
+            priorityStats.put("averageWaitMillis", started > 0 ? totalWaitMillisByPriority.get(priority) / started : 0);
+            priorityStats.put("estimatedWaitMillis", estimateWaitMillis(priority));
+            stats.put(priority.name().toLowerCase(), priorityStats);
+        }
+        Map<String, Map<String, Integer>> byShare = new TreeMap<>();
+        queues.values().forEach(queuesByShare -> queuesByShare.forEach((shareKey, queue) ->
+            getShareStats(byShare, shareKey).merge("queued", queue.size(), Integer::sum)));
+        runningByShare.forEach((shareKey, running) -> getShareStats(byShare, shareKey).put("running", running));
+        stats.put("byUser", byShare);
+        if (ioScheduler != null) stats.put("io", ioScheduler.getStats());
+        return stats;
+    }
+
+    /**
+     * @return the number of queued and running jobs for a single share key (e.g., so that users can see how many of
+     * their jobs are waiting), along with the limit on queued jobs and an estimate of the wait in seconds for an
+     * interactive job queued now.
+     */
+    public synchronized Map<String, Integer> getStats(String shareKey) {
+        Map<String, Integer> stats = new LinkedHashMap<>();
+        stats.put("queued", countQueued(shareKey));
+        stats.put("running", runningByShare.getOrDefault(shareKey, 0));
+        stats.put("maxConcurrentJobs", maxConcurrentJobsPerShare);
+        stats.put("maxQueuedJobs", maxQueuedJobsPerShare);
+        stats.put("estimatedWaitSeconds", (int) (estimateWaitMillis(JobPriority.INTERACTIVE) / 1000));
+        if (ioScheduler != null) {
+            Map<String, Integer> ioStats = ioScheduler.getStats(shareKey);
+            stats.put("ioQueued", ioStats.get("queued"));
+            stats.put("ioRunning", ioStats.get("running"));
+        }
+        return stats;
+    }
+
+    /** Count queued tasks of any priority for the share key. Must be called while holding the lock. */
+    private int countQueued(String shareKey) {
+        int queued = 0;
+        for (JobPriority priority : JobPriority.values()) queued += countQueued(priority, shareKey);
+        return queued;
+    }
+
+    /** Count queued tasks for the priority, optionally limited to a share key. Must be called while holding the lock. */
+    private int countQueued(JobPriority priority, String shareKey) {
+        return queues.get(priority).entrySet().stream()
+            .filter(entry -> shareKey == null || shareKey.equals(entry.getKey()))
+            .mapToInt(entry -> entry.getValue().size())
+            .sum();
+    }
+
+    private static Map<String, Integer> getShareStats(Map<String, Map<String, Integer>> byShare, String shareKey) {
+        return byShare.computeIfAbsent(shareKey, key -> {
+            Map<String, Integer> shareStats = new LinkedHashMap<>();
+            shareStats.put("queued", 0);
+            shareStats.put("running", 0);
+            return shareStats;
+        });
+    }
+
+    /** Runs jobs somewhere other than this scheduler's threads. */
+    public interface Offloader {
+        /**
+         * Take the job if it should run elsewhere.
+         * @return whether the job was taken (if not, the scheduler runs it)
+         */
+        boolean offload(MonitorableJob job);
+
+        /**
+         * Remove the job if it was taken and has not yet started.
+         * @return whether the job was removed
+         */
+        boolean remove(MonitorableJob job);
+    }
+
+    /** A task waiting to be run along with its priority, share key, memory estimate and the time it was queued. */
+    private static class QueuedTask {
+        final Runnable task;
+        final JobPriority priority;
+        final String shareKey;
+        final long memoryEstimate;
+        final long queuedAt = System.currentTimeMillis();
+
+        QueuedTask(Runnable task, JobPriority priority, String shareKey, long memoryEstimate) {
+            this.task = task;
+            this.priority = priority;
+            this.shareKey = shareKey;
+            this.memoryEstimate = memoryEstimate;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.conveyal.datatools.common.status;
+
+import com.conveyal.datatools.manager.models.JsonViews;
+import com.conveyal.datatools.manager.utils.json.JsonManager;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the job statuses last pushed to a single client of the job status stream, so that only jobs whose status has
+ * changed since then (and the IDs of jobs that have gone away) need to be sent. Messages have the form:
+ *
+ * {"updated": [job, ...], "removed": [jobId, ...]}
+ *
+ * where each job is serialized exactly as in the response for the jobs endpoint (/secure/status/jobs). The first
+ * message for a client contains all of the user's jobs. Because a client is only sent the latest status of each job
+ * when the stream is flushed, any progress updates made in between are coalesced into a single message.
+ */
+public class JobStatusStream {
+    private static final Logger LOG = LoggerFactory.getLogger(JobStatusStream.class);
+    private static final JsonManager<MonitorableJob> json =
+        new JsonManager<>(MonitorableJob.class, JsonViews.UserInterface.class);
+
+    /** Serialized job last sent to the client, by job ID. */
+    private Map<String, String> lastSentByJobId = new HashMap<>();
+
+    /**
+     * Serialize the jobs for comparison with what has been sent to clients. This is done once per user for each flush
+     * and shared among all of the user's clients (e.g., several open browser tabs).
+     * @return the serialized jobs by job ID (jobs that could not be serialized are skipped)
+     */
+    public static Map<String, String> serialize(Collection<MonitorableJob> jobs) {
+        Map<String, String> jobJsonById = new HashMap<>();
+        for (MonitorableJob job : jobs) {
+            try {
+                jobJsonById.put(job.jobId, json.write(job));
+            } catch (JsonProcessingException e) {
+                LOG.warn("Could not serialize job {} for status stream", job.jobId, e);
+            }
+        }
+        return jobJsonById;
+    }
+
+    /**
+     * @param jobJsonById the user's current jobs, as returned by {@link #serialize}
+     * @return a message containing the jobs that changed and the IDs of jobs that were removed since the last message,
+     * or null if nothing changed.
+     */
+    public synchronized String nextMessage(Map<String, String> jobJsonById) throws JsonProcessingException {
+        List<String> updated = new ArrayList<>();
+        for (Map.Entry<String, String> entry : jobJsonById.entrySet()) {
+            if (!entry.getValue().equals(lastSentByJobId.get(entry.getKey()))) updated.add(entry.getValue());
+        }
+        List<String> removed = new ArrayList<>();
+        for (String jobId : lastSentByJobId.keySet()) {
+            if (!jobJsonById.containsKey(jobId)) removed.add(jobId);
+        }
+        if (updated.isEmpty() && removed.isEmpty()) return null;
+        lastSentByJobId = new HashMap<>(jobJsonById);
+        return String.format("{\"updated\":[%s],\"removed\":%s}", String.join(",", updated), json.write(removed));
+    }
+}
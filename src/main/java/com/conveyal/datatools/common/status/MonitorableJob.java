@@ -1,6 +1,7 @@
 package com.conveyal.datatools.common.status;
 
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.persistence.Persistence;
 import com.conveyal.datatools.manager.utils.JobUtils;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -14,9 +15,15 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by landon on 6/13/16.
@@ -44,6 +51,23 @@ public abstract class MonitorableJob implements Runnable, Serializable {
     // Name is not final in case it needs to be amended during job processing.
     public String name;
     public final String jobId = UUID.randomUUID().toString();
+    /** If set, this job did not run because it was identical to this (in-flight) job, whose status it shares. */
+    public String attachedToJobId;
+
+    /** The in-flight job this job is attached to (see {@link #attachTo}). */
+    @JsonIgnore
+    @BsonIgnore
+    private volatile MonitorableJob attachedToJob;
+
+    /** Jobs attached to this one, which are given this job's results once it finishes (guarded by itself). */
+    @JsonIgnore
+    @BsonIgnore
+    private final List<MonitorableJob> attachedJobs = new ArrayList<>();
+
+    /** Whether this job has finished and shared its results with attached jobs (guarded by attachedJobs). */
+    @JsonIgnore
+    @BsonIgnore
+    private boolean resultsShared = false;
 
     /**
      * Additional jobs that will be run after the main logic of this job has completed.
@@ -51,10 +75,42 @@ public abstract class MonitorableJob implements Runnable, Serializable {
      */
     @JsonIgnore
     @BsonIgnore
-    public List<MonitorableJob> subJobs = new ArrayList<>();
+    public List<MonitorableJob> subJobs = new CopyOnWriteArrayList<>();
+
+    /** The sibling sub-jobs that must complete before this job is run as a sub-job (see {@link #addSubJob}). */
+    @JsonIgnore
+    @BsonIgnore
+    Set<MonitorableJob> dependencies = Collections.emptySet();
+
+    /** Message used for the status of jobs cancelled via {@link #requestCancellation}. */
+    static final String CANCELLED_MESSAGE = "Job cancelled.";
+
+    /** Set from the thread requesting cancellation and checked from the thread running the job. */
+    private volatile boolean cancellationRequested = false;
+
+    /**
+     * Scheduling classes for jobs (see {@link JobScheduler}), in order of precedence.
+     */
+    public enum JobPriority {
+        /** Jobs that a user is waiting on (e.g., processing an uploaded feed). */
+        INTERACTIVE,
+        /** Jobs started by the server itself or for bulk maintenance, which can wait for interactive jobs. */
+        BACKGROUND
+    }
+
+    /**
+     * What a job spends most of its time on. This decides which threads run the job if I/O-bound jobs are configured to
+     * run separately (see {@link JobScheduler}).
+     */
+    public enum JobWorkload {
+        /** Jobs that keep a thread busy (e.g., loading or validating a feed). */
+        CPU,
+        /** Jobs that mostly wait on the network or other servers (e.g., downloads, S3 transfers or polling a server). */
+        IO
+    }
 
     public enum JobType {
-        AUTO_DEPLOY_FEED_VERSION,
+        AUTO_DEPLOY_FEED_VERSION(JobPriority.BACKGROUND, JobWorkload.IO),
         UNKNOWN_TYPE,
         ARBITRARY_FEED_TRANSFORM,
         BUILD_TRANSPORT_NETWORK,
@@ -65,23 +121,46 @@ public abstract class MonitorableJob implements Runnable, Serializable {
         // ****
         LOAD_FEED,
         VALIDATE_FEED,
-        DEPLOY_TO_OTP,
+        DEPLOY_TO_OTP(JobWorkload.IO),
         EXPORT_GIS,
         EXPORT_DEPLOYMENT_GIS,
-        FETCH_PROJECT_FEEDS,
-        FETCH_SINGLE_FEED,
-        MAKE_PROJECT_PUBLIC,
+        FETCH_PROJECT_FEEDS(JobPriority.BACKGROUND, JobWorkload.IO),
+        FETCH_SINGLE_FEED(JobWorkload.IO),
+        MAKE_PROJECT_PUBLIC(JobWorkload.IO),
         PROCESS_FEED,
-        SYSTEM_JOB,
+        SYSTEM_JOB(JobPriority.BACKGROUND),
         CREATE_SNAPSHOT,
         EXPORT_SNAPSHOT_TO_GTFS,
-        CONVERT_EDITOR_MAPDB_TO_SQL,
-        VALIDATE_ALL_FEEDS,
-        MONITOR_SERVER_STATUS,
+        CONVERT_EDITOR_MAPDB_TO_SQL(JobPriority.BACKGROUND),
+        VALIDATE_ALL_FEEDS(JobPriority.BACKGROUND),
+        MONITOR_SERVER_STATUS(JobPriority.BACKGROUND, JobWorkload.IO),
         MERGE_FEED_VERSIONS,
-        RECREATE_BUILD_IMAGE,
-        UPDATE_PELIAS,
-        AUTO_PUBLISH_FEED_VERSION
+        RECREATE_BUILD_IMAGE(JobPriority.BACKGROUND, JobWorkload.IO),
+        UPDATE_PELIAS(JobWorkload.IO),
+        AUTO_PUBLISH_FEED_VERSION(JobPriority.BACKGROUND),
+        STORE_VALIDATION_RESULTS(JobPriority.BACKGROUND);
+
+        /** The scheduling class for jobs of this type (see {@link MonitorableJob#retrievePriority}). */
+        public final JobPriority priority;
+        /** The workload of jobs of this type (see {@link MonitorableJob#retrieveWorkload}). */
+        public final JobWorkload workload;
+
+        JobType() {
+            this(JobPriority.INTERACTIVE, JobWorkload.CPU);
+        }
+
+        JobType(JobPriority priority) {
+            this(priority, JobWorkload.CPU);
+        }
+
+        JobType(JobWorkload workload) {
+            this(JobPriority.INTERACTIVE, workload);
+        }
+
+        JobType(JobPriority priority, JobWorkload workload) {
+            this.priority = priority;
+            this.workload = workload;
+        }
     }
 
     public MonitorableJob(Auth0UserProfile owner, String name, JobType type) {
@@ -110,11 +189,9 @@ public abstract class MonitorableJob implements Runnable, Serializable {
      * It is a standard start-up stage for all monitorable jobs.
      */
     private void registerJob() {
-        // Get all active jobs and add the latest active job. Note: Removal of job from user's set of jobs is handled
-        // in the StatusController when a user requests their active jobs and the job has finished/errored.
-        Set<MonitorableJob> userJobs = JobUtils.getJobsForUser(this.owner);
-        userJobs.add(this);
-        JobUtils.userJobsMap.put(retrieveUserId(), userJobs);
+        // Note: Removal of the job from the registry is handled in the StatusController when a user requests their jobs
+        // and the job has finished/errored (or by the registry itself if the job is never requested).
+        JobUtils.jobRegistry.register(this);
     }
 
     @JsonProperty("owner")
@@ -127,6 +204,152 @@ public abstract class MonitorableJob implements Runnable, Serializable {
         return this.owner.getEmail();
     }
 
+    /**
+     * @return the scheduling class for this job. Jobs owned by the system user (e.g., scheduled fetches and their
+     * follow-on processing) always run in the background, whatever their type.
+     */
+    public JobPriority retrievePriority() {
+        return Auth0UserProfile.SYSTEM_USER_ID.equals(retrieveUserId()) ? JobPriority.BACKGROUND : type.priority;
+    }
+
+    /**
+     * @return the workload of this job. Note: sub-jobs run in the same thread as their parent, so jobs that run
+     * CPU-heavy sub-jobs should override this to return {@link JobWorkload#CPU}.
+     */
+    public JobWorkload retrieveWorkload() {
+        return type.workload;
+    }
+
+    /**
+     * @return the key used by {@link JobScheduler} to share threads fairly between users. This is the owner, except
+     * for jobs owned by the system user, which are shared out by project (if known) so that scheduled jobs for one
+     * project do not hold up those for another.
+     */
+    public String retrieveShareKey() {
+        String userId = retrieveUserId();
+        if (!Auth0UserProfile.SYSTEM_USER_ID.equals(userId)) return userId;
+        String projectId = retrieveProjectId();
+        return projectId != null ? String.join(":", userId, projectId) : userId;
+    }
+
+    /**
+     * @return the parameters needed to recreate this job if the server restarts before it finishes (see
+     * {@link com.conveyal.datatools.manager.jobs.JobRecovery}), or null if the job cannot be recreated. Jobs that
+     * override this must be safe to run again from the start.
+     */
+    public Map<String, String> retrieveRecoveryParameters() {
+        return null;
+    }
+
+    /**
+     * Save any state (beyond the recovery parameters) needed to recreate this job. This is called when the job is
+     * recorded for recovery or offloaded to a worker.
+     * @return whether the state was saved (if not, the job cannot be recreated)
+     */
+    public boolean saveRecoveryState() {
+        return true;
+    }
+
+    /**
+     * Remove the state saved by {@link #saveRecoveryState} once the job will not be run (e.g., it was cancelled before
+     * it started). A job that runs should remove the state itself once finished.
+     */
+    public void discardRecoveryState() {
+        // Do nothing by default.
+    }
+
+    /**
+     * @return the job-specific results that clients read from this job (beyond its status), so that a worker running
+     * the job can report them to the server that offloaded it (see
+     * {@link com.conveyal.datatools.manager.jobs.OffloadedJobs}), or null if the job has none (yet).
+     */
+    public Map<String, String> retrieveResults() {
+        return null;
+    }
+
+    /** Apply the results reported by a worker running this job (see {@link #retrieveResults}). */
+    public void applyResults(Map<String, String> results) {
+        // Do nothing by default.
+    }
+
+    /**
+     * @return a key that is the same for jobs that would do identical work (e.g., fetching the same feed source), so
+     * that {@link JobScheduler} can attach a job to an identical job already queued or running rather than run it
+     * twice, or null if the job should always run. Keys should start with the job type.
+     */
+    public String retrieveDeduplicationKey() {
+        return null;
+    }
+
+    /**
+     * Follow the given identical job rather than running this one (see {@link #retrieveDeduplicationKey}). This job
+     * shares the other job's status and is given its results (see {@link #retrieveResults}) once it finishes, so
+     * whoever requested this job sees the other job's progress and result under this job's ID.
+     */
+    void attachTo(MonitorableJob job) {
+        attachedToJob = job;
+        attachedToJobId = job.jobId;
+        status = job.status;
+        synchronized (job.attachedJobs) {
+            job.attachedJobs.add(this);
+            if (job.resultsShared) copyResultsFrom(job);
+        }
+    }
+
+    private void copyResultsFrom(MonitorableJob job) {
+        Map<String, String> results = job.retrieveResults();
+        if (results != null) applyResults(results);
+    }
+
+    /** Give the jobs attached to this one its results, once it has finished. */
+    void shareResults() {
+        synchronized (attachedJobs) {
+            resultsShared = true;
+            for (MonitorableJob attachedJob : attachedJobs) attachedJob.copyResultsFrom(this);
+        }
+    }
+
+    /**
+     * An attached job never runs, so cancelling it cancels the job it follows if all jobs sharing that work belong to
+     * the same user. Otherwise, the job is detached (so that the other users' jobs carry on) and marked as cancelled.
+     */
+    private void cancelAttachedJob(MonitorableJob inFlightJob) {
+        String userId = retrieveUserId();
+        boolean sameOwner;
+        synchronized (inFlightJob.attachedJobs) {
+            sameOwner = Objects.equals(userId, inFlightJob.retrieveUserId()) &&
+                inFlightJob.attachedJobs.stream().allMatch(job -> Objects.equals(userId, job.retrieveUserId()));
+            if (!sameOwner) inFlightJob.attachedJobs.remove(this);
+        }
+        if (sameOwner) {
+            inFlightJob.requestCancellation();
+            return;
+        }
+        attachedToJob = null;
+        attachedToJobId = null;
+        Status detachedStatus = new Status();
+        detachedStatus.cancel(CANCELLED_MESSAGE);
+        status = detachedStatus;
+    }
+
+    /**
+     * @return a rough estimate of the heap (in bytes) this job needs while running, used by {@link JobScheduler} to
+     * avoid running too many large jobs at once. Jobs that load or process whole feeds should override this (e.g., see
+     * {@link com.conveyal.datatools.manager.models.FeedVersion#retrieveMemoryEstimate}); by default it is assumed to be
+     * negligible. This is called when the job is queued, so it may look up the job's inputs.
+     */
+    public long retrieveMemoryEstimate() {
+        return 0;
+    }
+
+    /**
+     * @return the ID of the project this job operates on, or null if unknown. Subclasses that operate on a project
+     * should override this.
+     */
+    protected String retrieveProjectId() {
+        return null;
+    }
+
     @JsonIgnore @BsonIgnore
     public List<MonitorableJob> getSubJobs() {
         return subJobs;
@@ -150,48 +373,92 @@ public abstract class MonitorableJob implements Runnable, Serializable {
         // via the StatusController HTTP endpoint.
     }
 
+    /**
+     * Request that this job and its sub-jobs stop. Cancellation is cooperative: a job that is still queued in
+     * {@link JobUtils#heavyExecutor} is removed from the queue, while a running job stops at its next call to
+     * {@link #checkCancelled} (which {@link #run} also calls before {@link #jobLogic}) and no further sub-jobs are
+     * started. Once a running job has stopped, {@link #cleanUpAfterCancellation} is called instead of
+     * {@link #jobFinished}. A cancellation that arrives once the work is done (i.e., jobLogic has returned and all
+     * sub-jobs have run) has no effect, so that the work's results are still recorded in jobFinished. For a job
+     * attached to an identical job, see {@link #cancelAttachedJob}.
+     */
+    public void requestCancellation() {
+        cancellationRequested = true;
+        MonitorableJob inFlightJob = attachedToJob;
+        if (inFlightJob != null) {
+            cancelAttachedJob(inFlightJob);
+            return;
+        }
+        for (MonitorableJob subJob : subJobs) subJob.requestCancellation();
+        if (JobUtils.heavyExecutor.remove(this)) {
+            // The job never started, so there is nothing to clean up beyond the state saved for recovery.
+            status.cancel(CANCELLED_MESSAGE);
+            discardRecoveryState();
+            if (Persistence.jobQueue != null) Persistence.jobQueue.recordFinished(this);
+        }
+    }
+
+    @JsonIgnore @BsonIgnore
+    public boolean isCancellationRequested() {
+        return cancellationRequested;
+    }
+
+    /**
+     * Cancellation checkpoint for long-running loops. Throws {@link JobCancelledException} if cancellation of this job
+     * has been requested, which {@link #run} handles by marking the job as cancelled. Call this before (not after) any
+     * step that cannot be undone by {@link #cleanUpAfterCancellation}. Note: if the exception is caught and handled as
+     * an error within {@link #jobLogic}, the cancellation is still picked up once jobLogic returns.
+     */
+    public void checkCancelled() {
+        if (cancellationRequested) throw new JobCancelledException(this);
+    }
+
+    /**
+     * This method may be overridden to remove any partial output (e.g., temp files or a partially loaded namespace) if
+     * the job (or one of its sub-jobs) is cancelled while running. It should be safe to call regardless of how far the
+     * job got.
+     */
+    protected void cleanUpAfterCancellation() {
+        // Do nothing by default.
+    }
+
     /**
      * This implements Runnable.  All monitorable jobs should use this exact sequence of steps. Don't override this method;
      * override jobLogic and jobFinished method(s).
      */
     public void run () {
         active = true;
+        JobUtils.jobRegistry.onJobStarted(this);
+        if (Persistence.jobQueue != null) Persistence.jobQueue.recordStarted(this);
         boolean parentJobErrored = false;
         boolean subTaskErrored = false;
         String cancelMessage = "";
+        boolean cancelled = false;
         try {
+            // Skip the job if it was cancelled before it started.
+            checkCancelled();
             // First execute the core logic of the specific MonitorableJob subclass
             jobLogic();
+            // A cancellation reported as an error by jobLogic (see checkCancelled) is still a cancellation.
+            if (status.error) checkCancelled();
             if (status.error) {
                 parentJobErrored = true;
                 cancelMessage = String.format("Task cancelled due to error in %s task", getClass().getSimpleName());
             }
-            // Immediately run any sub-jobs in sequence in the current thread.
+            // Immediately run any sub-jobs in the current thread, in dependency order (see SubJobGraph). Sub-jobs are
+            // only run if no error occurred during the parent job, otherwise they are all cancelled (failed).
             // This hogs the current thread pool thread but makes execution order predictable.
-            int subJobNumber = 1;
-            int subJobsTotal = subJobs.size() + 1;
-
-            for (MonitorableJob subJob : subJobs) {
-                String subJobName = subJob.getClass().getSimpleName();
-                if (!parentJobErrored && !subTaskErrored) {
-                    // Calculate completion based on number of sub jobs remaining.
-                    double percentComplete = subJobNumber * 100D / subJobsTotal;
-                    // Run sub-task if no error has errored during parent job or previous sub-task execution.
-                    status.update(String.format("Waiting on %s...", subJobName), percentComplete);
-                    subJob.run();
-                    // Record if there has been an error in the execution of the sub-task. (Note: this will not
-                    // incorrectly overwrite a 'true' value with 'false' because the sub-task is only run if
-                    // jobHasErrored is false.
-                    if (subJob.status.error) {
-                        subTaskErrored = true;
-                        cancelMessage = String.format("Task cancelled due to error in %s task", subJobName);
-                    }
-                } else {
-                    // Cancel (fail) next sub-task and continue.
-                    subJob.cancel(cancelMessage);
-                }
-                subJobNumber += 1;
+            MonitorableJob erroredSubJob = new SubJobGraph(this).run(parentJobErrored ? cancelMessage : null);
+            if (erroredSubJob != null) {
+                subTaskErrored = true;
+                cancelMessage = String.format(
+                    "Task cancelled due to error in %s task",
+                    erroredSubJob.getClass().getSimpleName()
+                );
             }
+            // Sub-jobs stopped (or never started) because of a cancellation leave the work incomplete. Otherwise, the
+            // work is done and jobFinished must record it, even if a cancellation has since been requested.
+            if (subJobs.stream().anyMatch(subJob -> subJob.status.error)) checkCancelled();
             // FIXME: should jobFinished be run if task or any sub-task fails?
             if (subTaskErrored) {
                 // Cancel parent job completion if an error was encountered in task/sub-task. No need to cancel sub-task
@@ -209,11 +476,29 @@ public abstract class MonitorableJob implements Runnable, Serializable {
 
             // We retain finished or errored jobs on the server until they are fetched via the API, which implies they
             // could be displayed by the client.
+        } catch (JobCancelledException e) {
+            cancelled = true;
         } catch (Exception e) {
             status.fail("Job failed due to unhandled exception!", e);
         } finally {
-            LOG.info("{} (jobId={}) {} in {} ms", type, jobId, status.error ? "errored" : "completed", status.duration);
+            if (cancelled) {
+                status.cancel(CANCELLED_MESSAGE);
+                try {
+                    cleanUpAfterCancellation();
+                } catch (Exception e) {
+                    LOG.error("Error cleaning up after cancellation of {} (jobId={})", type, jobId, e);
+                }
+            }
+            LOG.info(
+                "{} (jobId={}) {} in {} ms",
+                type,
+                jobId,
+                cancelled ? "cancelled" : status.error ? "errored" : "completed",
+                status.duration
+            );
             active = false;
+            shareResults();
+            if (Persistence.jobQueue != null) Persistence.jobQueue.recordFinished(this);
         }
     }
 
@@ -222,7 +507,7 @@ public abstract class MonitorableJob implements Runnable, Serializable {
      * clean up steps needed to complete job in an errored state (generally due to failure in a previous task in
      * the chain).
      */
-    private void cancel(String message) {
+    void cancel(String message) {
         // Updating the job status with error is all we need to do in order to move the job into completion. Once the
         // user fetches the errored job, it will be automatically removed from the system.
         status.fail(message);
@@ -230,14 +515,31 @@ public abstract class MonitorableJob implements Runnable, Serializable {
     }
 
     /**
-     * Enqueues a sub-job to be run when the main logic of this job has finished.
+     * Enqueues a sub-job to be run when the main logic of this job has finished. The sub-job runs after all of the
+     * sub-jobs enqueued before it.
      */
     public void addNextJob(MonitorableJob ...jobs) {
         for (MonitorableJob job : jobs) {
-            job.parentJobId = this.jobId;
-            job.parentJobType = this.type;
-            subJobs.add(job);
+            addSubJob(job, subJobs.toArray(new MonitorableJob[0]));
+        }
+    }
+
+    /**
+     * Enqueues a sub-job to be run when the main logic of this job has finished, as soon as the given sub-jobs have
+     * completed. Sub-jobs that do not depend on each other may run at the same time (see {@link SubJobGraph}), so
+     * only use this for sub-jobs that do not read anything written by the sub-jobs they do not depend on.
+     * @param dependencies sub-jobs (already enqueued) that must complete before the job is run
+     */
+    public void addSubJob(MonitorableJob job, MonitorableJob ...dependencies) {
+        for (MonitorableJob dependency : dependencies) {
+            if (!subJobs.contains(dependency)) {
+                throw new IllegalArgumentException("Sub-jobs may only depend on sub-jobs already enqueued.");
+            }
         }
+        job.parentJobId = this.jobId;
+        job.parentJobType = this.type;
+        job.dependencies = new HashSet<>(Arrays.asList(dependencies));
+        subJobs.add(job);
     }
 
     /** Convenience wrapper for a {@link List} of jobs. */
@@ -262,6 +564,9 @@ public abstract class MonitorableJob implements Runnable, Serializable {
         /** What was the error (null if no error)? */
         public boolean error = false;
 
+        /** Was the job cancelled by a user (see {@link MonitorableJob#requestCancellation})? */
+        public boolean cancelled = false;
+
         /** Is the item currently being uploaded to the server? */
         public boolean uploading;
 
@@ -306,6 +611,24 @@ public abstract class MonitorableJob implements Runnable, Serializable {
             return stackTrace.length >= 3 ? stackTrace[3].toString() : "WARNING: Stack trace not found.";
         }
 
+        /**
+         * Copy the progress of the same job run elsewhere (e.g., as reported by a worker, see
+         * {@link com.conveyal.datatools.manager.jobs.JobWorker}), keeping this status's name.
+         */
+        public void updateFrom(Status other) {
+            this.message = other.message;
+            this.exceptionType = other.exceptionType;
+            this.exceptionDetails = other.exceptionDetails;
+            this.completed = other.completed;
+            this.error = other.error;
+            this.cancelled = other.cancelled;
+            this.uploading = other.uploading;
+            this.percentComplete = other.percentComplete;
+            this.duration = other.duration;
+            this.modified = other.modified;
+            this.completedName = other.completedName;
+        }
+
         /**
          * Shorthand method to update status object on successful job completion.
          */
@@ -314,6 +637,15 @@ public abstract class MonitorableJob implements Runnable, Serializable {
             if (!this.completed) this.complete(false, message);
         }
 
+        /**
+         * Complete the job as cancelled. Cancelled jobs are also flagged as errored so that clients unaware of
+         * cancellation treat them as having stopped without a result.
+         */
+        public void cancel(String message) {
+            this.cancelled = true;
+            this.complete(true, message);
+        }
+
         /**
          * Set job status to completed with error and message information.
          */
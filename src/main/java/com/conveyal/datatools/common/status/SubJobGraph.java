@@ -0,0 +1,126 @@
+package com.conveyal.datatools.common.status;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+
+/**
+ * Runs the sub-jobs of a {@link MonitorableJob} once its main logic has finished, starting each sub-job as soon as the
+ * sub-jobs it depends on have completed (see {@link MonitorableJob#addSubJob}). Sub-jobs added with
+ * {@link MonitorableJob#addNextJob} depend on every sub-job added before them, so a job that only uses addNextJob runs
+ * its sub-jobs in sequence, exactly as before.
+ *
+ * A sub-job is run in the parent's thread whenever it is the only one that can run. When independent sub-jobs are
+ * ready at the same time, up to application.jobs.max_parallel_sub_jobs (default 2) of them run at once, using threads
+ * outside of {@link com.conveyal.datatools.manager.utils.JobUtils#heavyExecutor} while the parent's thread waits on
+ * them. As before, once any sub-job errors (or the parent is cancelled), no further sub-jobs are started: those already
+ * running are allowed to finish and the rest are cancelled.
+ */
+class SubJobGraph {
+    static final int MAX_PARALLEL_SUB_JOBS = Math.max(
+        1,
+        Integer.parseInt(getConfigPropertyAsText("application.jobs.max_parallel_sub_jobs", "2"))
+    );
+
+    /**
+     * Threads for sub-jobs run alongside another sub-job. The pool is unbounded, but the number of threads in use is
+     * bounded by the number of running parent jobs times {@link #MAX_PARALLEL_SUB_JOBS}.
+     */
+    private static final ExecutorService subJobExecutor = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setNameFormat("sub-job-%d").setDaemon(true).build()
+    );
+
+    private final MonitorableJob parent;
+    private final int maxParallel;
+
+    SubJobGraph(MonitorableJob parent) {
+        this(parent, MAX_PARALLEL_SUB_JOBS);
+    }
+
+    SubJobGraph(MonitorableJob parent, int maxParallel) {
+        this.parent = parent;
+        this.maxParallel = maxParallel;
+    }
+
+    /**
+     * Run the parent's sub-jobs, cancelling any that are not started.
+     * @param cancelMessage if not null, no sub-jobs are run and all are cancelled with this message (e.g., because the
+     *                      parent job errored)
+     * @return the first sub-job to error, or null if none did
+     */
+    MonitorableJob run(String cancelMessage) throws InterruptedException {
+        List<MonitorableJob> subJobs = parent.subJobs;
+        Set<MonitorableJob> pending = new LinkedHashSet<>(subJobs);
+        Set<MonitorableJob> finished = new HashSet<>();
+        CompletionService<MonitorableJob> completionService = new ExecutorCompletionService<>(subJobExecutor);
+        int running = 0;
+        int started = 0;
+        MonitorableJob erroredJob = null;
+        while (!pending.isEmpty() || running > 0) {
+            if (cancelMessage == null && erroredJob == null && !parent.isCancellationRequested()) {
+                List<MonitorableJob> ready = pending.stream()
+                    .filter(job -> finished.containsAll(job.dependencies))
+                    .limit(maxParallel - running)
+                    .collect(Collectors.toList());
+                for (MonitorableJob subJob : ready) {
+                    pending.remove(subJob);
+                    started++;
+                    // Calculate completion based on number of sub jobs started.
+                    parent.status.update(
+                        String.format("Waiting on %s...", subJob.getClass().getSimpleName()),
+                        started * 100D / (subJobs.size() + 1)
+                    );
+                    if (ready.size() == 1 && running == 0) {
+                        // Nothing else can run yet, so run the sub-job in this thread.
+                        subJob.run();
+                        finished.add(subJob);
+                        if (subJob.status.error) erroredJob = subJob;
+                    } else {
+                        completionService.submit(subJob, subJob);
+                        running++;
+                    }
+                }
+                if (!ready.isEmpty() && running == 0) continue;
+            }
+            // Stop once nothing is running, either because no more sub-jobs should be started or because the remaining
+            // sub-jobs depend on one that will never finish (which cannot happen with dependencies on earlier jobs).
+            // Otherwise, sub-jobs still running after an error or cancellation are waited on, so that the parent does
+            // not complete before its sub-jobs.
+            if (running == 0) break;
+            MonitorableJob subJob = waitForSubJob(completionService);
+            running--;
+            finished.add(subJob);
+            if (subJob.status.error && erroredJob == null) erroredJob = subJob;
+        }
+        String message = parent.isCancellationRequested()
+            ? MonitorableJob.CANCELLED_MESSAGE
+            : cancelMessage != null
+                ? cancelMessage
+                : erroredJob != null
+                    ? String.format("Task cancelled due to error in %s task", erroredJob.getClass().getSimpleName())
+                    : "Task cancelled because a task it depends on did not complete";
+        for (MonitorableJob subJob : pending) subJob.cancel(message);
+        return erroredJob;
+    }
+
+    private static MonitorableJob waitForSubJob(CompletionService<MonitorableJob> completionService)
+        throws InterruptedException {
+        try {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            // MonitorableJob#run handles all exceptions, so this should never happen.
+            throw new IllegalStateException("Sub-job threw an unhandled exception", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.conveyal.datatools.common.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the start times of auto fetches a minimum spacing apart, which limits the rate of fetches when they are
+ * scheduled (rather than holding up the scheduler thread when they run). Start times are tracked as offsets within the
+ * fetch interval, so that recurring fetches with the same interval stay apart on every run.
+ */
+class AutoFetchStartTimes {
+    private static final Logger LOG = LoggerFactory.getLogger(AutoFetchStartTimes.class);
+
+    private final long spacingMillis;
+    /** Offset of each feed source's fetches within their interval, by interval (in milliseconds) and feed source ID. */
+    private final Map<Long, Map<String, Long>> offsetsByInterval = new HashMap<>();
+
+    AutoFetchStartTimes(long spacingMillis) {
+        this.spacingMillis = spacingMillis;
+    }
+
+    /**
+     * Reserve a start time for the feed source's fetches at or after the requested time, that is at least the spacing
+     * away from the fetches of other feed sources with the same interval. Any earlier reservation for the feed source
+     * is replaced.
+     * @return the reserved start time (epoch milliseconds)
+     */
+    synchronized long reserve(String feedSourceId, long startMillis, long intervalMillis) {
+        release(feedSourceId);
+        if (spacingMillis <= 0 || intervalMillis <= 0) return startMillis;
+        Map<String, Long> offsets = offsetsByInterval.computeIfAbsent(intervalMillis, k -> new HashMap<>());
+        // Move the start time past any fetches that are too close to it, until it is clear of all of them (or there is
+        // no room left in the interval).
+        for (long shiftMillis = 0; shiftMillis < intervalMillis; ) {
+            long offset = Math.floorMod(startMillis + shiftMillis, intervalMillis);
+            long conflictMillis = 0;
+            for (long reservedOffset : offsets.values()) {
+                long sinceReserved = Math.floorMod(offset - reservedOffset, intervalMillis);
+                long untilReserved = Math.floorMod(reservedOffset - offset, intervalMillis);
+                if (sinceReserved < spacingMillis) {
+                    conflictMillis = Math.max(conflictMillis, spacingMillis - sinceReserved);
+                } else if (untilReserved < spacingMillis) {
+                    conflictMillis = Math.max(conflictMillis, untilReserved + spacingMillis);
+                }
+            }
+            if (conflictMillis == 0) {
+                offsets.put(feedSourceId, offset);
+                return startMillis + shiftMillis;
+            }
+            shiftMillis += conflictMillis;
+        }
+        LOG.warn("Too many auto fetches to keep feed source {} apart from the others. Fetching at the requested time.",
+            feedSourceId);
+        offsets.put(feedSourceId, Math.floorMod(startMillis, intervalMillis));
+        return startMillis;
+    }
+
+    /** Release the feed source's reservation (e.g., when its fetches are cancelled). */
+    synchronized void release(String feedSourceId) {
+        for (Map<String, Long> offsets : offsetsByInterval.values()) offsets.remove(feedSourceId);
+    }
+}
@@ -9,9 +9,11 @@ import com.conveyal.datatools.manager.models.Project;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -25,8 +27,10 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static com.conveyal.datatools.common.utils.Utils.getTimezone;
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
 import static com.conveyal.datatools.manager.models.FeedRetrievalMethod.FETCHED_AUTOMATICALLY;
 import static com.google.common.collect.Multimaps.synchronizedListMultimap;
 
@@ -37,10 +41,28 @@ import static com.google.common.collect.Multimaps.synchronizedListMultimap;
  * auto feed fetch nightly at 2AM). The jobs are tracked in {@link #scheduledJobsForFeedSources} so that they can be
  * cancelled at a later point in time should the associated feeds/projects be deleted or if the user changes the fetch
  * behavior.
+ *
+ * Because many projects fetch at the same (default) time, auto fetches can be spread out to avoid a spike in load on the
+ * server and upstream hosts:
+ * - application.auto_fetch.spread_window_minutes (0): each feed source's fetch is delayed by a fixed amount within this
+ *   window (derived from its ID, so it stays the same across restarts and reschedules)
+ * - application.auto_fetch.max_fetches_per_minute (0, i.e., unlimited): fetches are scheduled to start at least
+ *   60 / max_fetches_per_minute seconds apart (on top of the delay above), so that they never wait on the scheduler
+ *   thread for their turn
  */
 public class Scheduler {
     private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
     private static final int DEFAULT_FETCH_INTERVAL_DAYS = 1;
+    private static final long AUTO_FETCH_SPREAD_WINDOW_MINUTES = Long.parseLong(
+        getConfigPropertyAsText("application.auto_fetch.spread_window_minutes", "0")
+    );
+    private static final double MAX_AUTO_FETCHES_PER_MINUTE = Double.parseDouble(
+        getConfigPropertyAsText("application.auto_fetch.max_fetches_per_minute", "0")
+    );
+    /** Keeps auto fetch start times apart to limit the rate of fetches (no spacing if unlimited). */
+    private static final AutoFetchStartTimes autoFetchStartTimes = new AutoFetchStartTimes(
+        MAX_AUTO_FETCHES_PER_MINUTE > 0 ? Math.round(TimeUnit.MINUTES.toMillis(1) / MAX_AUTO_FETCHES_PER_MINUTE) : 0
+    );
 
     // Scheduled executor that handles running scheduled jobs.
     public final static ScheduledExecutorService schedulerService = Executors.newScheduledThreadPool(1);
@@ -53,14 +75,13 @@ public class Scheduler {
      */
     public static void initialize() {
         LOG.info("Scheduling recurring feed auto fetches for all projects.");
-        for (Project project : Persistence.projects.getAll()) {
-            handleAutoFeedFetch(project);
+        try (Stream<Project> projects = Persistence.projects.streamAll()) {
+            projects.forEach(Scheduler::handleAutoFeedFetch);
         }
         LOG.info("Scheduling feed expiration notifications for all feed sources.");
-        // Get all active feed sources
-        for (FeedSource feedSource : Persistence.feedSources.getAll()) {
-            // Schedule expiration notification jobs for the latest feed version
-            scheduleExpirationNotifications(feedSource);
+        // Get all active feed sources and schedule expiration notification jobs for the latest feed version
+        try (Stream<FeedSource> feedSources = Persistence.feedSources.streamAll()) {
+            feedSources.forEach(Scheduler::scheduleExpirationNotifications);
         }
     }
 
@@ -75,18 +96,47 @@ public class Scheduler {
     }
 
     /**
-     * Convenience method for scheduling auto fetch job for a feed source. Expects delay/interval values in minutes.
+     * Convenience method for scheduling auto fetch job for a feed source. Expects delay/interval values in minutes. The
+     * delay is extended by the feed source's jitter and, if the rate of fetches is limited, by the time needed to start
+     * after the other fetches scheduled around then (see class doc).
      */
     public static ScheduledJob scheduleAutoFeedFetch(FeedSource feedSource, Runnable job, long delayMinutes, long intervalMinutes) {
-        long delayHours = TimeUnit.MINUTES.toHours(delayMinutes);
+        // Spread fetches over the window, but never by more than the interval (so that the fetch order is stable).
+        long jitterSeconds = getJitterSeconds(
+            feedSource.id,
+            TimeUnit.MINUTES.toSeconds(Math.min(AUTO_FETCH_SPREAD_WINDOW_MINUTES, intervalMinutes))
+        );
+        long intervalMillis = TimeUnit.MINUTES.toMillis(intervalMinutes);
+        long now = System.currentTimeMillis();
+        long requestedStartMillis = now + TimeUnit.MINUTES.toMillis(delayMinutes) + TimeUnit.SECONDS.toMillis(jitterSeconds);
+        long startMillis = autoFetchStartTimes.reserve(feedSource.id, requestedStartMillis, intervalMillis);
+        long delayMillis = startMillis - now;
+        long delayHours = TimeUnit.MILLISECONDS.toHours(delayMillis);
         long intervalHours = TimeUnit.MINUTES.toHours(intervalMinutes);
-        LOG.info("Auto fetch for feed {} runs every {} hours. Beginning in {} hours.", feedSource.id, intervalHours, delayHours);
-        ScheduledFuture<?> scheduledFuture = schedulerService.scheduleAtFixedRate(job, delayMinutes, intervalMinutes, TimeUnit.MINUTES);
+        LOG.info("Auto fetch for feed {} runs every {} hours. Beginning in {} hours (including jitter of {} seconds " +
+                "and spacing of {} seconds from other fetches).",
+            feedSource.id, intervalHours, delayHours, jitterSeconds,
+            TimeUnit.MILLISECONDS.toSeconds(startMillis - requestedStartMillis));
+        ScheduledFuture<?> scheduledFuture = schedulerService.scheduleAtFixedRate(
+            job,
+            delayMillis,
+            intervalMillis,
+            TimeUnit.MILLISECONDS
+        );
         ScheduledJob scheduledJob = new ScheduledJob(job, scheduledFuture);
         scheduledJobsForFeedSources.put(feedSource.id, scheduledJob);
         return scheduledJob;
     }
 
+    /**
+     * @return a delay in seconds within the window that is always the same for the ID, so that fetches scheduled for
+     * the same time are spread evenly across the window.
+     */
+    static long getJitterSeconds(String id, long windowSeconds) {
+        if (windowSeconds <= 0) return 0;
+        return Math.floorMod(Hashing.murmur3_128().hashString(id, StandardCharsets.UTF_8).asLong(), windowSeconds);
+    }
+
     /**
      * Cancels and removes all scheduled jobs for a given entity id and job class. NOTE: This is intended as an internal
      * method that should operate on one of the scheduledJobsForXYZ fields of this class. A wrapper method (such as
@@ -133,6 +183,7 @@ public class Scheduler {
      */
     public static void removeAllFeedSourceJobs(String id, boolean mayInterruptIfRunning) {
         int cancelled = removeAllJobs(scheduledJobsForFeedSources, id, mayInterruptIfRunning);
+        autoFetchStartTimes.release(id);
         if (cancelled > 0) LOG.info("Cancelled/removed {} jobs for feed source {}", cancelled, id);
     }
 
@@ -197,6 +248,7 @@ public class Scheduler {
         try {
             // First, remove any scheduled fetch jobs for the current feed source.
             removeFeedSourceJobsOfType(feedSource.id, FetchSingleFeedJob.class, true);
+            autoFetchStartTimes.release(feedSource.id);
             Project project = feedSource.retrieveProject();
             // Do not schedule fetch job if missing URL, not fetched automatically, or auto fetch disabled for project.
             if (feedSource.url == null || !FETCHED_AUTOMATICALLY.equals(feedSource.retrievalMethod) || !project.autoFetchFeeds) {
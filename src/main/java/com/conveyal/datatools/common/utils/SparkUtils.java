@@ -1,10 +1,12 @@
 package com.conveyal.datatools.common.utils;
 
 import com.amazonaws.AmazonServiceException;
+import com.conveyal.datatools.common.status.MonitorableJob;
 import com.conveyal.datatools.common.utils.aws.CheckedAWSException;
 import com.conveyal.datatools.common.utils.aws.S3Utils;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
 import com.conveyal.datatools.manager.utils.ErrorUtils;
+import com.conveyal.datatools.manager.utils.JobUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -110,6 +112,30 @@ public class SparkUtils {
         logMessageAndHalt(request, statusCode, message, null);
     }
 
+    /**
+     * Halt with 429 Too Many Requests if too many jobs like the given type are already queued, overall or for the
+     * requesting user (see {@link com.conveyal.datatools.common.status.JobScheduler#retrieveRetryAfterMillis}). The
+     * Retry-After header is set to the estimated number of seconds until the job would be accepted. Endpoints that
+     * queue heavy jobs should call this before doing any work for the job (e.g., storing an upload).
+     */
+    public static void haltIfJobQueueFull(Request request, Response response, MonitorableJob.JobType jobType)
+        throws HaltException {
+        Auth0UserProfile userProfile = request.attribute("user");
+        long retryAfterMillis = JobUtils.heavyExecutor.retrieveRetryAfterMillis(
+            userProfile.getUser_id(),
+            jobType.priority,
+            jobType.workload
+        );
+        if (retryAfterMillis <= 0) return;
+        long retryAfterSeconds = Math.max(1, (long) Math.ceil(retryAfterMillis / 1000D));
+        response.header("Retry-After", String.valueOf(retryAfterSeconds));
+        logMessageAndHalt(
+            request,
+            HttpStatus.TOO_MANY_REQUESTS_429,
+            String.format("Too many jobs are queued. Please try again in %d seconds.", retryAfterSeconds)
+        );
+    }
+
     /** Utility method to parse generic object from Spark request body. */
     public static <T> T getPOJOFromRequestBody(Request req, Class<T> clazz) throws IOException {
         try {
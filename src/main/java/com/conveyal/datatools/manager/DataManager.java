@@ -14,6 +14,7 @@ import com.conveyal.datatools.manager.controllers.api.DeploymentController;
 import com.conveyal.datatools.manager.controllers.api.FeedSourceController;
 import com.conveyal.datatools.manager.controllers.api.FeedVersionController;
 import com.conveyal.datatools.manager.controllers.api.GtfsPlusController;
+import com.conveyal.datatools.manager.controllers.api.JobStatusSocket;
 import com.conveyal.datatools.manager.controllers.api.LabelController;
 import com.conveyal.datatools.manager.controllers.api.NoteController;
 import com.conveyal.datatools.manager.controllers.api.OrganizationController;
@@ -26,8 +27,13 @@ import com.conveyal.datatools.manager.extensions.mtc.MtcFeedResource;
 import com.conveyal.datatools.manager.extensions.transitfeeds.TransitFeedsFeedResource;
 import com.conveyal.datatools.manager.extensions.transitland.TransitLandFeedResource;
 import com.conveyal.datatools.manager.jobs.FeedUpdater;
+import com.conveyal.datatools.manager.jobs.JobRecovery;
+import com.conveyal.datatools.manager.jobs.JobWorker;
+import com.conveyal.datatools.manager.jobs.OffloadedJobs;
+import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.conveyal.datatools.manager.utils.ErrorUtils;
+import com.conveyal.datatools.manager.utils.JobUtils;
 import com.conveyal.datatools.manager.utils.json.JsonUtil;
 import com.conveyal.gtfs.GTFS;
 import com.conveyal.gtfs.GraphQLController;
@@ -61,6 +67,7 @@ import static spark.Spark.before;
 import static spark.Spark.exception;
 import static spark.Spark.get;
 import static spark.Spark.port;
+import static spark.Spark.webSocket;
 
 /**
  * This is the singleton where the application is initialized. It currently stores a number of static fields which are
@@ -104,6 +111,13 @@ public class DataManager {
     public static void main(String[] args) throws IOException {
         long serverStartTime = System.currentTimeMillis();
         initializeApplication(args);
+        if (JobWorker.retrieveMode() == JobWorker.Mode.WORKER) {
+            // Workers only run jobs offloaded by API servers, so there are no routes to register.
+            JobWorker.start();
+            LOG.info("Data Tools worker start up completed in {} seconds.",
+                (System.currentTimeMillis() - serverStartTime) / 1000D);
+            return;
+        }
 
         registerRoutes();
 
@@ -140,9 +154,17 @@ public class DataManager {
 
         // Initialize MongoDB storage
         Persistence.initialize();
+        // Populate the denormalized version summaries for any feed sources stored before they existed.
+        FeedSource.rebuildVersionSummaries(true);
 
+        JobWorker.Mode jobMode = JobWorker.retrieveMode();
+        // Workers leave scheduled tasks and recovery of interrupted jobs to the API server (see JobWorker).
+        if (jobMode == JobWorker.Mode.WORKER) return;
+        if (jobMode == JobWorker.Mode.API) OffloadedJobs.initialize(JobUtils.heavyExecutor);
         // Initialize scheduled tasks
         Scheduler.initialize();
+        // Queue any jobs interrupted when the server last stopped (and keep recovering jobs of stopped servers).
+        JobRecovery.initialize();
     }
 
     /*
@@ -183,6 +205,8 @@ public class DataManager {
      * modules and sets other core routes (e.g., 404 response) and response headers (e.g., API content type is JSON).
      */
     static void registerRoutes() throws IOException {
+        // WebSocket endpoints must be registered before any other routes or filters.
+        webSocket(API_PREFIX + "status/stream", JobStatusSocket.class);
         CorsFilter.apply();
         // Initialize GTFS GraphQL API service
         // FIXME: Add user permissions check to ensure user has access to feeds.
@@ -79,9 +79,7 @@ public class Auth0Connection {
         // Validate the JWT and cast into the user profile, which will be attached as an attribute on the request object
         // for downstream controllers to check permissions.
         try {
-            Map<String, Object> jwt = verifier.verify(token);
-            remapTokenValues(jwt);
-            Auth0UserProfile profile = MAPPER.convertValue(jwt, Auth0UserProfile.class);
+            Auth0UserProfile profile = verifyToken(token);
             // The user attribute is used on the server side to check user permissions and does not have all of the
             // fields that the raw Auth0 profile string does.
             req.attribute("user", profile);
@@ -94,6 +92,26 @@ public class Auth0Connection {
         }
     }
 
+    /**
+     * Verify the token outside of a Spark request (e.g., for a WebSocket connection, where the browser cannot set the
+     * Authorization header). If authentication is disabled, the test user is returned for any token.
+     * @return the user profile for the token
+     * @throws Exception if the token is invalid or expired, or the verifier is not configured correctly
+     */
+    public static Auth0UserProfile getUserFromToken(String token) throws Exception {
+        if (isAuthDisabled() || inTestingEnvironment()) return getTestUser();
+        if (token == null) throw new IllegalArgumentException("Could not find authorization token");
+        if (verifier == null) verifier = createVerifier();
+        return verifyToken(token);
+    }
+
+    /** Validate the JWT and cast into the user profile. */
+    private static Auth0UserProfile verifyToken(String token) throws Exception {
+        Map<String, Object> jwt = verifier.verify(token);
+        remapTokenValues(jwt);
+        return MAPPER.convertValue(jwt, Auth0UserProfile.class);
+    }
+
     /**
      * @return the actively applied test user when running the application in a test environment.
      */
@@ -126,15 +144,7 @@ public class Auth0Connection {
     private static JWTVerifier getVerifier(Request req) {
         if (verifier == null) {
             try {
-                if (hasConfigProperty("AUTH0_SECRET")) {
-                    // Use HS256 algorithm to verify token (uses client secret).
-                    byte[] decodedSecret = new org.apache.commons.codec.binary.Base64().decode(getConfigPropertyAsText("AUTH0_SECRET"));
-                    verifier = new JWTVerifier(decodedSecret);
-                } else if (hasConfigProperty("AUTH0_PUBLIC_KEY")) {
-                    // Use RS256 algorithm to verify token (uses public key/.pem file).
-                    PublicKey publicKey = PemReader.readPublicKey(getConfigPropertyAsText("AUTH0_PUBLIC_KEY"));
-                    verifier = new JWTVerifier(publicKey);
-                } else throw new IllegalStateException("Auth0 public key or secret token must be defined in config (env.yml).");
+                verifier = createVerifier();
             } catch (IllegalStateException | NullPointerException | NoSuchAlgorithmException | IOException | NoSuchProviderException | InvalidKeySpecException e) {
                 LOG.error("Auth0 verifier configured incorrectly.");
                 logMessageAndHalt(req, 500, "Server authentication configured incorrectly.", e);
@@ -143,6 +153,19 @@ public class Auth0Connection {
         return verifier;
     }
 
+    private static JWTVerifier createVerifier()
+        throws NoSuchAlgorithmException, IOException, NoSuchProviderException, InvalidKeySpecException {
+        if (hasConfigProperty("AUTH0_SECRET")) {
+            // Use HS256 algorithm to verify token (uses client secret).
+            byte[] decodedSecret = new org.apache.commons.codec.binary.Base64().decode(getConfigPropertyAsText("AUTH0_SECRET"));
+            return new JWTVerifier(decodedSecret);
+        } else if (hasConfigProperty("AUTH0_PUBLIC_KEY")) {
+            // Use RS256 algorithm to verify token (uses public key/.pem file).
+            PublicKey publicKey = PemReader.readPublicKey(getConfigPropertyAsText("AUTH0_PUBLIC_KEY"));
+            return new JWTVerifier(publicKey);
+        } else throw new IllegalStateException("Auth0 public key or secret token must be defined in config (env.yml).");
+    }
+
     /**
      * Handle mapping token values to the expected keys. This accounts for app_metadata and user_metadata that have been
      * scoped to conform with OIDC (i.e., how newer Auth0 accounts structure the user profile) as well as the user_id ->
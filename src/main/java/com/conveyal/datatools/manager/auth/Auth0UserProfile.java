@@ -19,6 +19,9 @@ import java.util.List;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Auth0UserProfile {
+    /** User ID of the system user that owns jobs started by the server itself (see {@link #createSystemUser}). */
+    public static final String SYSTEM_USER_ID = "user_id:system";
+
     String email;
     String user_id;
     AppMetadata app_metadata;
@@ -66,7 +69,7 @@ public class Auth0UserProfile {
      * Utility method for creating a system user (for autonomous server jobs).
      */
     public static Auth0UserProfile createSystemUser() {
-        return createAdminUser("system", "user_id:system");
+        return createAdminUser("system", SYSTEM_USER_ID);
     }
 
     /**
@@ -3,6 +3,7 @@ package com.conveyal.datatools.manager.controllers;
 import com.conveyal.datatools.common.status.MonitorableJob;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
 import com.conveyal.datatools.manager.jobs.ProcessSingleFeedJob;
+import com.conveyal.datatools.manager.jobs.StoreValidationResultsJob;
 import com.conveyal.datatools.manager.jobs.ValidateFeedJob;
 import com.conveyal.datatools.manager.models.Deployment;
 import com.conveyal.datatools.manager.models.ExternalFeedSourceProperty;
@@ -10,21 +11,27 @@ import com.conveyal.datatools.manager.models.FeedRetrievalMethod;
 import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.models.FeedVersion;
 import com.conveyal.datatools.manager.models.JsonViews;
+import com.conveyal.datatools.manager.models.Model;
 import com.conveyal.datatools.manager.models.Note;
 import com.conveyal.datatools.manager.models.Project;
 import com.conveyal.datatools.manager.models.Snapshot;
+import com.conveyal.datatools.manager.persistence.BulkWriter;
 import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.persistence.TypedPersistence;
 import com.conveyal.datatools.manager.utils.JobUtils;
 import com.conveyal.datatools.manager.utils.json.JsonManager;
 import com.conveyal.gtfs.validator.ValidationResult;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -33,7 +40,9 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
+import static com.conveyal.datatools.common.utils.SparkUtils.formatJobMessage;
 import static com.conveyal.datatools.common.utils.SparkUtils.logMessageAndHalt;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
@@ -64,6 +73,8 @@ public class DumpController {
         public Collection<Deployment> deployments;
         public Collection<ExternalFeedSourceProperty> externalProperties;
         public Collection<Snapshot> snapshots;
+        /** Full validation results by feed version ID (the versions only embed a compact copy). */
+        public Map<String, ValidationResult> validationResults;
     }
 //
     private static JsonManager<DatabaseState> json =
@@ -83,23 +94,68 @@ public class DumpController {
     }
 
     /**
-     * Copies each table containing application data into the database state object and returns entire set of data. This,
+     * Streams each table containing application data to the response in the shape of {@link DatabaseState}. This,
      * along with the other methods in this class, should only be used in a controlled environment where no outside access
      * is permitted (e.g., using a cloned database on a local development machine). Otherwise, application data is
      * visible to the entire world.
+     *
+     * Documents are read from MongoDB with a cursor and written to the response one at a time, so memory use does not
+     * depend on the size of the database.
      */
-    public static DatabaseState dump (Request req, Response res) throws JsonProcessingException {
-//        // FIXME this appears to be capable of using unbounded amounts of memory (it copies an entire database into memory)
-        DatabaseState db = new DatabaseState();
-        db.projects = Persistence.projects.getAll();
-        db.feedSources = Persistence.feedSources.getAll();
-        db.feedVersions = Persistence.feedVersions.getAll();
-        db.notes = Persistence.notes.getAll();
-        db.deployments = Persistence.deployments.getAll();
-        db.externalProperties = Persistence.externalFeedSourceProperties.getAll();
-        db.snapshots = Persistence.snapshots.getAll();
-        return db;
+    public static HttpServletResponse dump (Request req, Response res) {
+        HttpServletResponse raw = res.raw();
+        raw.setContentType("application/json");
+        try (JsonGenerator generator = json.createGenerator(raw.getOutputStream())) {
+            generator.writeStartObject();
+            writeCollection(generator, "projects", Persistence.projects);
+            writeCollection(generator, "feedSources", Persistence.feedSources);
+            writeCollection(generator, "feedVersions", Persistence.feedVersions);
+            writeCollection(generator, "notes", Persistence.notes);
+            writeCollection(generator, "deployments", Persistence.deployments);
+            writeCollection(generator, "externalProperties", Persistence.externalFeedSourceProperties);
+            writeCollection(generator, "snapshots", Persistence.snapshots);
+            writeValidationResults(generator);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            logMessageAndHalt(req, 500, "Could not write database dump to output stream", e);
+        }
+        return raw;
+    }
+
+    /**
+     * Write the entire collection as a JSON array field, streaming documents from the database.
+     */
+    private static void writeCollection(
+        JsonGenerator generator,
+        String fieldName,
+        TypedPersistence<? extends Model> collection
+    ) throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        try (Stream<? extends Model> objects = collection.streamAll()) {
+            Iterator<? extends Model> iterator = objects.iterator();
+            while (iterator.hasNext()) {
+                json.write(generator, iterator.next());
+            }
+        }
+        generator.writeEndArray();
     }
+    /**
+     * Write the full validation results (see {@link Persistence#validationResults}) as a JSON object keyed by feed
+     * version ID, streaming them from the database.
+     */
+    private static void writeValidationResults(JsonGenerator generator) throws IOException {
+        generator.writeObjectFieldStart("validationResults");
+        try (Stream<Map.Entry<String, ValidationResult>> results = Persistence.validationResults.streamAll()) {
+            Iterator<Map.Entry<String, ValidationResult>> iterator = results.iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ValidationResult> entry = iterator.next();
+                generator.writeFieldName(entry.getKey());
+                json.write(generator, entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
     // FIXME: This can now be authenticated because users are stored in Auth0.
     // this is not authenticated, because it has to happen with a bare database (i.e. no users)
     // this method in particular is coded to allow up to 500MB of data to be posted
@@ -121,40 +177,27 @@ public class DumpController {
             LOG.error("data load error.  check json validity.");
             return false;
         }
-        for (Project project : db.projects) {
-            LOG.info("loading project {}", project.id);
-            Persistence.projects.create(project);
-        }
-
-        for (FeedSource feedSource : db.feedSources) {
-            LOG.info("loading feed source {}", feedSource.id);
-            Persistence.feedSources.create(feedSource);
-        }
-
-        for (FeedVersion feedVersion : db.feedVersions) {
-            LOG.info("loading version {}", feedVersion.id);
-            Persistence.feedVersions.create(feedVersion);
-        }
-
-        for (Note note : db.notes) {
-            LOG.info("loading note {}", note.id);
-            Persistence.notes.create(note);
-        }
-
-        for (Deployment deployment : db.deployments) {
-            LOG.info("loading deployment {}", deployment.id);
-            Persistence.deployments.create(deployment);
-        }
-
-        for (ExternalFeedSourceProperty externalFeedSourceProperty : db.externalProperties) {
-            LOG.info("loading external properties {}", externalFeedSourceProperty.id);
-            Persistence.externalFeedSourceProperties.create(externalFeedSourceProperty);
-        }
-
-        for (Snapshot snapshot : db.snapshots) {
-            LOG.info("loading snapshot {}", snapshot.id);
-            Persistence.snapshots.create(snapshot);
+        // Insert each collection with bulk writes rather than one round trip per document.
+        LOG.info("loaded {} projects", Persistence.projects.createMany(db.projects));
+        LOG.info("loaded {} feed sources", Persistence.feedSources.createMany(db.feedSources));
+        LOG.info("loaded {} versions", Persistence.feedVersions.createMany(db.feedVersions));
+        LOG.info("loaded {} notes", Persistence.notes.createMany(db.notes));
+        LOG.info("loaded {} deployments", Persistence.deployments.createMany(db.deployments));
+        // Deployment bounds are not included in the dump, so compute them from the loaded versions.
+        Deployment.storeBoundsCaches(new Document());
+        LOG.info("loaded {} external properties", Persistence.externalFeedSourceProperties.createMany(db.externalProperties));
+        LOG.info("loaded {} snapshots", Persistence.snapshots.createMany(db.snapshots));
+        if (db.validationResults != null) {
+            db.validationResults.forEach(Persistence.validationResults::store);
+            LOG.info("loaded {} validation results", db.validationResults.size());
+        } else {
+            // Dumps made before full validation results were stored separately embed them in the versions instead, so
+            // move them out of the loaded versions.
+            LOG.info("No validation results in dump, storing those embedded in versions");
+            JobUtils.heavyExecutor.execute(new StoreValidationResultsJob(Auth0UserProfile.createSystemUser()));
         }
+        // Version summaries are not included in the dump, so build them from the loaded versions.
+        FeedSource.rebuildVersionSummaries(true);
 
         LOG.info("load completed.");
         return true;
@@ -186,28 +229,30 @@ public class DumpController {
         }
         int updateCount = 0;
         int deleteCount = 0;
-        for (Snapshot snapshotFromJSON : db.snapshots) {
-            List<Snapshot> matchingSnapshots = Persistence.snapshots.getFiltered(and(
-                    eq("version", snapshotFromJSON.version),
-                    eq(Snapshot.FEED_SOURCE_REF, snapshotFromJSON.feedSourceId)));
+        try (BulkWriter<Snapshot> writer = Persistence.snapshots.bulkWriter()) {
+            for (Snapshot snapshotFromJSON : db.snapshots) {
+                List<Snapshot> matchingSnapshots = Persistence.snapshots.getFiltered(and(
+                        eq("version", snapshotFromJSON.version),
+                        eq(Snapshot.FEED_SOURCE_REF, snapshotFromJSON.feedSourceId)));
 
-            Iterator<Snapshot> snapshotIterator = matchingSnapshots.iterator();
-            while (snapshotIterator.hasNext()) {
-                Snapshot nextSnapshot = snapshotIterator.next();
-                if (snapshotIterator.hasNext()) {
-                    // Remove any duplicates that may have been created during import
-                    LOG.warn("Removing duplicate snapshot for {}.{}", snapshotFromJSON.feedSourceId, snapshotFromJSON.version);
-                    Persistence.snapshots.removeById(nextSnapshot.id);
-                    deleteCount++;
-                } else {
-                    // Update snapshot from JSON with single remaining snapshot's id, namespace, and feed load result
-                    LOG.info("updating snapshot {}.{}", snapshotFromJSON.feedSourceId, snapshotFromJSON.version);
-                    snapshotFromJSON.id = nextSnapshot.id;
-                    snapshotFromJSON.namespace = nextSnapshot.namespace;
-                    snapshotFromJSON.feedLoadResult = nextSnapshot.feedLoadResult;
-                    // Replace stored snapshot with snapshot from JSON.
-                    Persistence.snapshots.replace(nextSnapshot.id, snapshotFromJSON);
-                    updateCount++;
+                Iterator<Snapshot> snapshotIterator = matchingSnapshots.iterator();
+                while (snapshotIterator.hasNext()) {
+                    Snapshot nextSnapshot = snapshotIterator.next();
+                    if (snapshotIterator.hasNext()) {
+                        // Remove any duplicates that may have been created during import
+                        LOG.warn("Removing duplicate snapshot for {}.{}", snapshotFromJSON.feedSourceId, snapshotFromJSON.version);
+                        writer.removeById(nextSnapshot.id);
+                        deleteCount++;
+                    } else {
+                        // Update snapshot from JSON with single remaining snapshot's id, namespace, and feed load result
+                        LOG.info("updating snapshot {}.{}", snapshotFromJSON.feedSourceId, snapshotFromJSON.version);
+                        snapshotFromJSON.id = nextSnapshot.id;
+                        snapshotFromJSON.namespace = nextSnapshot.namespace;
+                        snapshotFromJSON.feedLoadResult = nextSnapshot.feedLoadResult;
+                        // Replace stored snapshot with snapshot from JSON.
+                        writer.replace(nextSnapshot.id, snapshotFromJSON);
+                        updateCount++;
+                    }
                 }
             }
         }
@@ -347,25 +392,27 @@ public class DumpController {
      */
     public static boolean validateAll (boolean load, boolean force, String filterFeedId) throws Exception {
         LOG.info("validating all feeds...");
-        Collection<FeedVersion> allVersions = Persistence.feedVersions.getAll();
-        for(FeedVersion version: allVersions) {
-            ValidationResult result = version.validationResult;
-            if(!force && result != null && result.fatalException != null) {
-                // If the force option is not true and the validation result did not fail, re-validate.
-                continue;
-            }
-            MonitorableJob job;
-            if (filterFeedId != null && !version.feedSourceId.equals(filterFeedId)) {
-                // Skip all feeds except Cortland for now.
-                continue;
-            }
-            Auth0UserProfile systemUser = Auth0UserProfile.createSystemUser();
-            if (load) {
-                job = new ProcessSingleFeedJob(version, systemUser, false);
-            } else {
-                job = new ValidateFeedJob(version, systemUser, false);
+        // Only fetch versions for the filtered feed source (if provided) and iterate with a cursor rather than loading
+        // every version into memory at once.
+        Bson filter = filterFeedId != null ? eq("feedSourceId", filterFeedId) : new Document();
+        try (Stream<FeedVersion> allVersions = Persistence.feedVersions.stream(filter)) {
+            Iterator<FeedVersion> iterator = allVersions.iterator();
+            while (iterator.hasNext()) {
+                FeedVersion version = iterator.next();
+                ValidationResult result = version.validationResult;
+                if(!force && result != null && result.fatalException != null) {
+                    // If the force option is not true and the validation result did not fail, re-validate.
+                    continue;
+                }
+                MonitorableJob job;
+                Auth0UserProfile systemUser = Auth0UserProfile.createSystemUser();
+                if (load) {
+                    job = new ProcessSingleFeedJob(version, systemUser, false);
+                } else {
+                    job = new ValidateFeedJob(version, systemUser, false);
+                }
+                JobUtils.heavyExecutor.execute(job);
             }
-            JobUtils.heavyExecutor.execute(job);
         }
         // ValidateAllFeedsJob validateAllFeedsJob = new ValidateAllFeedsJob("system", force, load);
         return true;
@@ -382,7 +429,19 @@ public class DumpController {
             boolean load = request.queryParams("load") != null && request.queryParams("load").equals("true");
             return validateAll(load, force, null);
         }, json::write);
-        get(apiPrefix + "dump", DumpController::dump, json::write);
+        get(apiPrefix + "dump", DumpController::dump);
+        // Repair the denormalized version summaries for all feed sources.
+        post(
+            apiPrefix + "rebuildVersionSummaries",
+            (request, response) -> FeedSource.rebuildVersionSummaries(false),
+            json::write
+        );
+        // Move full validation results embedded in existing feed versions to the validation result store.
+        post(apiPrefix + "storeValidationResults", (request, response) -> {
+            StoreValidationResultsJob job = new StoreValidationResultsJob(Auth0UserProfile.createSystemUser());
+            JobUtils.heavyExecutor.execute(job);
+            return formatJobMessage(job.jobId, "Moving validation results out of feed versions.");
+        });
         LOG.warn("registered dump w/ prefix " + apiPrefix);
     }
 }
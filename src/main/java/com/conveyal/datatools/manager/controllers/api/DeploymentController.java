@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+import static com.conveyal.datatools.common.utils.SparkUtils.haltIfJobQueueFull;
 import static com.conveyal.datatools.common.utils.SparkUtils.logMessageAndHalt;
 import static com.conveyal.datatools.manager.DataManager.isExtensionEnabled;
 import static com.conveyal.datatools.manager.jobs.DeployJob.bundlePrefix;
@@ -183,6 +184,7 @@ public class DeploymentController {
         String type = req.queryParams("type");
         Auth0UserProfile userProfile = req.attribute("user");
         Deployment deployment = getDeploymentWithPermissions(req, res);
+        haltIfJobQueueFull(req, res, MonitorableJob.JobType.EXPORT_DEPLOYMENT_GIS);
 
         GisExportJob.ExportType exportType = GisExportJob.ExportType.valueOf(type);
         String tempFileName = String.format("%s_%s", type, deployment.name); // e.g. ROUTES_DeploymentName
@@ -266,6 +268,7 @@ public class DeploymentController {
             // We do this because there is not currently apply JSON directly to an object (outside of Mongo codec
             // operations)
             Persistence.deployments.create(newDeployment);
+            newDeployment.storeBoundsCache();
             return Persistence.deployments.update(newDeployment.id, req.body());
         } else {
             logMessageAndHalt(req, 403, "Not authorized to create a deployment for project " + projectId);
@@ -299,6 +302,7 @@ public class DeploymentController {
         Deployment deployment = new Deployment(feedSource, useDefaultRouter);
         deployment.storeUser(userProfile);
         Persistence.deployments.create(deployment);
+        deployment.storeBoundsCache();
         return deployment;
     }
 
@@ -354,6 +358,8 @@ public class DeploymentController {
             // Update deployment feedVersionIds field.
             List<String> versionIds = versionsToInsert.stream().map(v -> v.id).collect(Collectors.toList());
             Persistence.deployments.updateField(deploymentToUpdate.id, "feedVersionIds", versionIds);
+            deploymentToUpdate.feedVersionIds = versionIds;
+            deploymentToUpdate.storeBoundsCache();
         }
 
         // If updatedDocument has deleted a CSV file, also delete that CSV file from S3
@@ -494,6 +500,7 @@ public class DeploymentController {
             logMessageAndHalt(req, 400, "Must provide valid OTP server target ID.");
             return null;
         }
+        haltIfJobQueueFull(req, res, MonitorableJob.JobType.DEPLOY_TO_OTP);
 
         // Check that permissions of user allow them to deploy to target.
         boolean isProjectAdmin = userProfile.canAdministerProject(deployment);
@@ -96,6 +96,9 @@ public class FeedSourceController {
                 feedSourcesToReturn.add(cleanFeedSourceForNonAdmins(source, isAdmin));
             }
         }
+        // Fetch latest/published version and external property data for all feed sources in bulk so that serializing
+        // the list does not trigger several queries per feed source.
+        FeedSource.prefetchListingData(feedSourcesToReturn);
         return feedSourcesToReturn;
     }
 
@@ -199,7 +202,10 @@ public class FeedSourceController {
             LOG.info("Feed source fetch URL has been modified. Resetting lastFetched value from {} to {}", formerFeedSource.lastFetched, null);
             updatedFeedSource.lastFetched = null;
         }
-        Persistence.feedSources.replace(feedSourceId, updatedFeedSource);
+        // The version summary is not included in the JSON body and is maintained as versions are stored and deleted
+        // (see FeedSource#updateVersionSummary), so leave it out of the write.
+        Persistence.feedSources.replaceExcept(feedSourceId, updatedFeedSource, "versionSummary");
+        updatedFeedSource.versionSummary = formerFeedSource.versionSummary;
 
         if (shouldNotifyUsersOnFeedUpdated(formerFeedSource, updatedFeedSource)) {
             return updatedFeedSource;
@@ -1,5 +1,6 @@
 package com.conveyal.datatools.manager.controllers.api;
 
+import com.conveyal.datatools.common.status.MonitorableJob.JobType;
 import com.conveyal.datatools.common.utils.SparkUtils;
 import com.conveyal.datatools.common.utils.aws.CheckedAWSException;
 import com.conveyal.datatools.common.utils.aws.S3Utils;
@@ -43,6 +44,7 @@ import java.util.stream.Collectors;
 import static com.conveyal.datatools.common.utils.SparkUtils.copyRequestStreamIntoFile;
 import static com.conveyal.datatools.common.utils.SparkUtils.downloadFile;
 import static com.conveyal.datatools.common.utils.SparkUtils.formatJobMessage;
+import static com.conveyal.datatools.common.utils.SparkUtils.haltIfJobQueueFull;
 import static com.conveyal.datatools.common.utils.SparkUtils.logMessageAndHalt;
 import static com.conveyal.datatools.manager.controllers.api.FeedSourceController.checkFeedSourcePermissions;
 import static com.mongodb.client.model.Filters.eq;
@@ -63,7 +65,12 @@ public class FeedVersionController  {
      * If you pass in ?summarized=true, don't include the full tree of validation results, only the counts.
      */
     private static FeedVersion getFeedVersion (Request req, Response res) {
-        return requestFeedVersion(req, Actions.VIEW);
+        FeedVersion version = requestFeedVersion(req, Actions.VIEW);
+        // The stored version only embeds a compact validation result, so load the full result unless not needed.
+        if (!"true".equals(req.queryParams("summarized"))) {
+            version.validationResult = version.retrieveFullValidationResult();
+        }
+        return version;
     }
 
     /**
@@ -114,6 +121,8 @@ public class FeedVersionController  {
 
         Auth0UserProfile userProfile = req.attribute("user");
         FeedSource feedSource = requestFeedSourceById(req, Actions.MANAGE);
+        // Turn the upload away before storing it if the job queue is full.
+        haltIfJobQueueFull(req, res, JobType.PROCESS_FEED);
         FeedVersion latestVersion = feedSource.retrieveLatest();
         FeedVersion newFeedVersion = new FeedVersion(feedSource, FeedRetrievalMethod.MANUALLY_UPLOADED);
         // Get path to GTFS file for storage.
@@ -306,6 +315,7 @@ public class FeedVersionController  {
         String type = req.queryParams("type");
         Auth0UserProfile userProfile = req.attribute("user");
         List<String> feedIds = Arrays.asList(req.queryParams("feedId").split(","));
+        haltIfJobQueueFull(req, res, JobType.EXPORT_GIS);
         File temp = File.createTempFile("gis_" + type, ".zip");
         // Create and run shapefile export.
         GisExportJob.ExportType exportType = GisExportJob.ExportType.valueOf(type);
@@ -382,6 +392,7 @@ public class FeedVersionController  {
             logMessageAndHalt(req, 400, "Merging more than two versions is not currently supported.");
         }
         // Kick off merge feeds job.
+        haltIfJobQueueFull(req, res, JobType.MERGE_FEED_VERSIONS);
         Auth0UserProfile userProfile = req.attribute("user");
         MergeFeedsJob mergeFeedsJob = new MergeFeedsJob(userProfile, versions, "merged", mergeType);
         JobUtils.heavyExecutor.execute(mergeFeedsJob);
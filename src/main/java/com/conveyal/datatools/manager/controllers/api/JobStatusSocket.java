@@ -0,0 +1,133 @@
+package com.conveyal.datatools.manager.controllers.api;
+
+import com.conveyal.datatools.common.status.JobStatusStream;
+import com.conveyal.datatools.manager.auth.Auth0Connection;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.utils.JobUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+
+/**
+ * WebSocket endpoint that pushes job status changes to the client, as an alternative to polling the jobs endpoint
+ * (/secure/status/jobs). Browsers cannot set the Authorization header on a WebSocket connection, so the token must be
+ * passed in the token query parameter (e.g., /api/manager/status/stream?token=...).
+ *
+ * Rather than sending a message for every status update (some jobs update their progress for every few rows
+ * processed), the jobs of each connected user are checked at a fixed interval and only the jobs that changed since the
+ * last message are sent (see {@link JobStatusStream}). The interval is set with
+ * application.jobs.status_push_interval_millis (default 1000).
+ *
+ * Note: clients should fall back to polling if the connection cannot be established or is closed. Jobs are not
+ * removed from the server once pushed in a finished state (unlike when fetched via the jobs endpoint), so the stream
+ * relies on the job registry's retention limits to clear them.
+ */
+@WebSocket
+public class JobStatusSocket {
+    private static final Logger LOG = LoggerFactory.getLogger(JobStatusSocket.class);
+    private static final long PUSH_INTERVAL_MILLIS = Long.parseLong(
+        getConfigPropertyAsText("application.jobs.status_push_interval_millis", "1000")
+    );
+
+    /** Connected sessions (and what each has been sent) by user ID. */
+    private static final Map<String, Map<Session, JobStatusStream>> streamsByUserId = new ConcurrentHashMap<>();
+    private static final Map<Session, String> userIdBySession = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService pushExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("job-status-push").setDaemon(true).build()
+    );
+
+    static {
+        pushExecutor.scheduleWithFixedDelay(
+            JobStatusSocket::pushUpdates,
+            PUSH_INTERVAL_MILLIS,
+            PUSH_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        List<String> tokens = session.getUpgradeRequest().getParameterMap().get("token");
+        Auth0UserProfile user;
+        try {
+            user = Auth0Connection.getUserFromToken(tokens != null && !tokens.isEmpty() ? tokens.get(0) : null);
+        } catch (Exception e) {
+            LOG.warn("Job status stream connection refused: {}", e.getMessage());
+            session.close(StatusCode.POLICY_VIOLATION, "Could not verify user's token");
+            return;
+        }
+        String userId = user.getUser_id();
+        userIdBySession.put(session, userId);
+        // Update the user's sessions atomically so that they are never added to a map being removed in removeSession.
+        streamsByUserId.compute(userId, (key, streams) -> {
+            if (streams == null) streams = new ConcurrentHashMap<>();
+            streams.put(session, new JobStatusStream());
+            return streams;
+        });
+        // Send the user's current jobs straight away, rather than waiting for the next push.
+        pushExecutor.execute(() -> pushUpdates(userId));
+    }
+
+    @OnWebSocketClose
+    public void onClose(Session session, int statusCode, String reason) {
+        removeSession(session);
+    }
+
+    @OnWebSocketError
+    public void onError(Session session, Throwable error) {
+        LOG.debug("Job status stream error", error);
+        removeSession(session);
+    }
+
+    /** @return the number of connected sessions. */
+    public static int countSessions() {
+        return streamsByUserId.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private static void removeSession(Session session) {
+        String userId = userIdBySession.remove(session);
+        if (userId == null) return;
+        streamsByUserId.computeIfPresent(userId, (key, streams) -> {
+            streams.remove(session);
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+
+    private static void pushUpdates() {
+        streamsByUserId.keySet().forEach(JobStatusSocket::pushUpdates);
+    }
+
+    /** Send any changes to the user's jobs to each of the user's sessions. */
+    private static void pushUpdates(String userId) {
+        Map<Session, JobStatusStream> streams = streamsByUserId.get(userId);
+        if (streams == null || streams.isEmpty()) return;
+        try {
+            Map<String, String> jobJsonById = JobStatusStream.serialize(JobUtils.jobRegistry.getJobsForUser(userId));
+            for (Map.Entry<Session, JobStatusStream> entry : streams.entrySet()) {
+                Session session = entry.getKey();
+                if (!session.isOpen()) continue;
+                String message = entry.getValue().nextMessage(jobJsonById);
+                // Send asynchronously so that a slow client does not hold up pushes to everyone else.
+                if (message != null) session.getRemote().sendStringByFuture(message);
+            }
+        } catch (Exception e) {
+            // Catch everything, otherwise the scheduled push would stop running.
+            LOG.error("Could not push job status for user {}", userId, e);
+        }
+    }
+}
@@ -8,10 +8,10 @@ import com.conveyal.datatools.manager.models.JsonViews;
 import com.conveyal.datatools.manager.models.Model;
 import com.conveyal.datatools.manager.models.Note;
 import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.persistence.TypedPersistence;
 import com.conveyal.datatools.manager.utils.json.JsonManager;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mongodb.client.MongoCollection;
 import org.eclipse.jetty.http.HttpStatus;
 import spark.Request;
 import spark.Response;
@@ -73,10 +73,11 @@ public class NoteController {
         }
         // Create note and update feed source or version with noteIds
         Persistence.notes.create(note);
-        MongoCollection collection = objectWithNote instanceof FeedSource
-            ? Persistence.feedSources.getMongoCollection()
-            : Persistence.feedVersions.getMongoCollection();
-        collection.updateOne(eq(objectWithNote.id), push("noteIds", note.id));
+        // Update via TypedPersistence (rather than the raw Mongo collection) so that any cached copy is invalidated.
+        TypedPersistence<? extends Model> collection = objectWithNote instanceof FeedSource
+            ? Persistence.feedSources
+            : Persistence.feedVersions;
+        collection.updateMany(eq(objectWithNote.id), push("noteIds", note.id));
         String message = String.format(
                 "%s commented on %s at %s:<blockquote>%s</blockquote>",
                 note.userEmail,
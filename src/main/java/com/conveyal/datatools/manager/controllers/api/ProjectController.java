@@ -1,5 +1,6 @@
 package com.conveyal.datatools.manager.controllers.api;
 
+import com.conveyal.datatools.common.status.MonitorableJob.JobType;
 import com.conveyal.datatools.common.utils.Scheduler;
 import com.conveyal.datatools.common.utils.SparkUtils;
 import com.conveyal.datatools.common.utils.aws.S3Utils;
@@ -29,9 +30,11 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.conveyal.datatools.common.utils.SparkUtils.downloadFile;
 import static com.conveyal.datatools.common.utils.SparkUtils.formatJobMessage;
+import static com.conveyal.datatools.common.utils.SparkUtils.haltIfJobQueueFull;
 import static com.conveyal.datatools.common.utils.SparkUtils.logMessageAndHalt;
 import static com.conveyal.datatools.manager.DataManager.publicPath;
 import static com.conveyal.datatools.manager.jobs.feedmerge.MergeFeedsType.REGIONAL;
@@ -55,10 +58,12 @@ public class ProjectController {
     private static Collection<Project> getAllProjects(Request req, Response res) {
         Auth0UserProfile userProfile = req.attribute("user");
         // TODO: move this filtering into database query to reduce traffic / memory
-        return Persistence.projects.getAll().stream()
+        try (Stream<Project> projects = Persistence.projects.streamAll()) {
+            return projects
                 .filter(p -> req.pathInfo().matches(publicPath) || userProfile.hasProject(p.id, p.organizationId))
                 .map(p -> checkProjectPermissions(req, p, "view"))
                 .collect(Collectors.toList());
+        }
     }
 
     /**
@@ -226,6 +231,7 @@ public class ProjectController {
         if (!userProfile.canAdministerProject(project.id)) {
             logMessageAndHalt(req, HttpStatus.UNAUTHORIZED_401, "Must be a project admin to merge project feeds.");
         }
+        haltIfJobQueueFull(req, res, JobType.MERGE_FEED_VERSIONS);
         Set<FeedVersion> feedVersions = new HashSet<>();
         // Get latest version for each feed source in project
         Collection<FeedSource> feedSources = project.retrieveProjectFeedSources();
@@ -5,6 +5,7 @@ import com.conveyal.datatools.common.utils.RequestSummary;
 import com.conveyal.datatools.manager.DataManager;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
 import com.conveyal.datatools.manager.models.JsonViews;
+import com.conveyal.datatools.manager.persistence.Persistence;
 import com.conveyal.datatools.manager.utils.JobUtils;
 import com.conveyal.datatools.manager.utils.json.JsonManager;
 import org.slf4j.Logger;
@@ -14,10 +15,12 @@ import spark.Response;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.conveyal.datatools.common.utils.SparkUtils.logMessageAndHalt;
+import static spark.Spark.delete;
 import static spark.Spark.get;
 
 /**
@@ -51,6 +54,58 @@ public class StatusController {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Admin API route to return hit/miss counters for MongoDB collections with caching enabled.
+     */
+    private static Map<String, Map<String, Object>> getCacheStatsRoute(Request req, Response res) {
+        Auth0UserProfile userProfile = req.attribute("user");
+        if (!userProfile.canAdministerApplication()) {
+            logMessageAndHalt(req, 401, "User not authorized to view cache stats");
+        }
+        return Persistence.getCacheStats();
+    }
+
+    /**
+     * Admin API route to compare declared and existing MongoDB indexes (and index usage) for each collection.
+     */
+    private static Map<String, Map<String, Object>> getIndexReportRoute(Request req, Response res) {
+        Auth0UserProfile userProfile = req.attribute("user");
+        if (!userProfile.canAdministerApplication()) {
+            logMessageAndHalt(req, 401, "User not authorized to view index report");
+        }
+        return Persistence.getIndexReport();
+    }
+
+    /**
+     * API route to return queued and running job counts. Admins see counts (and average queue wait times) by priority
+     * class and by user, along with the results of recovering interrupted jobs on startup; other users see the counts
+     * for their own jobs.
+     */
+    private static Map<String, ?> getJobQueueStatsRoute(Request req, Response res) {
+        Auth0UserProfile userProfile = req.attribute("user");
+        if (!userProfile.canAdministerApplication()) {
+            // Other users can only see how many of their own jobs are queued/running.
+            return JobUtils.heavyExecutor.getStats(userProfile.getUser_id());
+        }
+        Map<String, Object> stats = JobUtils.heavyExecutor.getStats();
+        stats.put("durableQueue", Persistence.jobQueue.getStats());
+        return stats;
+    }
+
+    /**
+     * Admin API route to return the number of jobs retained by the server (by state) along with heap usage and the
+     * number of clients connected to the job status stream.
+     */
+    private static Map<String, Object> getJobRegistryStatsRoute(Request req, Response res) {
+        Auth0UserProfile userProfile = req.attribute("user");
+        if (!userProfile.canAdministerApplication()) {
+            logMessageAndHalt(req, 401, "User not authorized to view job registry");
+        }
+        Map<String, Object> stats = JobUtils.jobRegistry.getStats();
+        stats.put("statusStreamSessions", JobStatusSocket.countSessions());
+        return stats;
+    }
+
     /**
      * API route that returns single job by ID from among the jobs for the currently authenticated user.
      */
@@ -63,18 +118,26 @@ public class StatusController {
     }
 
     /**
-     * API route that cancels a single job by ID.
+     * API route that requests cancellation of a single job by ID (see {@link MonitorableJob#requestCancellation}). Users
+     * can cancel their own jobs and application admins can cancel any job. The job is returned with its current status,
+     * which may not reflect the cancellation until the job reaches its next cancellation checkpoint.
      */
-    // TODO Add ability to cancel job. This requires some changes to how these jobs are executed. It appears that
-    //  only scheduled jobs can be canceled.
-//    private static MonitorableJob cancelJob(Request req, Response res) {
-//        String jobId = req.params("jobId");
-//        Auth0UserProfile userProfile = req.attribute("user");
-//        // FIXME: refactor underscore in user_id methods
-//        String userId = userProfile.getUser_id();
-//        MonitorableJob job = getJobById(userId, jobId, true);
-//        return job;
-//    }
+    private static MonitorableJob cancelJobRoute(Request req, Response res) {
+        String jobId = req.params("jobId");
+        Auth0UserProfile userProfile = req.attribute("user");
+        MonitorableJob job = JobUtils.getJobByJobId(jobId);
+        if (job == null) {
+            logMessageAndHalt(req, 404, "Job not found");
+        }
+        if (!job.retrieveUserId().equals(userProfile.getUser_id()) && !userProfile.canAdministerApplication()) {
+            logMessageAndHalt(req, 403, "User not authorized to cancel job");
+        }
+        if (job.status.completed) {
+            logMessageAndHalt(req, 400, "Job has already completed");
+        }
+        job.requestCancellation();
+        return job;
+    }
 
     /**
      * API route that returns a set of active jobs for the currently authenticated user.
@@ -90,12 +153,15 @@ public class StatusController {
     public static void register (String apiPrefix) {
 
         get(apiPrefix + "secure/status/requests", StatusController::getAllRequestsRoute, json::write);
+        get(apiPrefix + "secure/status/cache", StatusController::getCacheStatsRoute, json::write);
+        get(apiPrefix + "secure/status/indexes", StatusController::getIndexReportRoute, json::write);
+        get(apiPrefix + "secure/status/queue", StatusController::getJobQueueStatsRoute, json::write);
+        get(apiPrefix + "secure/status/registry", StatusController::getJobRegistryStatsRoute, json::write);
         // These endpoints return all jobs for the current user, all application jobs, or a specific job
         get(apiPrefix + "secure/status/jobs", StatusController::getUserJobsRoute, json::write);
         // FIXME Change endpoint for all jobs (to avoid overlap with jobId param)?
         get(apiPrefix + "secure/status/jobs/all", StatusController::getAllJobsRoute, json::write);
         get(apiPrefix + "secure/status/jobs/:jobId", StatusController::getOneJobRoute, json::write);
-        // TODO Add ability to cancel job
-//        delete(apiPrefix + "secure/status/jobs/:jobId", StatusController::cancelJob, json::write);
+        delete(apiPrefix + "secure/status/jobs/:jobId", StatusController::cancelJobRoute, json::write);
     }
 }
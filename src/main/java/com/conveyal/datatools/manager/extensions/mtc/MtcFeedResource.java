@@ -10,6 +10,7 @@ import com.conveyal.datatools.manager.models.ExternalFeedSourceProperty;
 import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.models.FeedVersion;
 import com.conveyal.datatools.manager.models.Project;
+import com.conveyal.datatools.manager.persistence.BulkWriter;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -29,6 +30,8 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.conveyal.datatools.manager.models.ExternalFeedSourceProperty.constructId;
 import static com.mongodb.client.model.Filters.eq;
@@ -292,40 +295,41 @@ public class MtcFeedResource implements ExternalFeedResource {
         String resourceType = this.getResourceType();
         Iterator<Map.Entry<String, JsonNode>> fieldsIterator = rtdResponse.fields();
         List<String> rtdKeys = new ArrayList<>();
+        // Fetch the stored properties once and send all creates, updates and deletes in a single bulk write.
+        List<ExternalFeedSourceProperty> existingProperties = Persistence.externalFeedSourceProperties.getFiltered(
+            eq("feedSourceId", source.id)
+        );
+        Set<String> existingPropertyIds = existingProperties.stream()
+            .map(property -> property.id)
+            .collect(Collectors.toSet());
+
+        try (BulkWriter<ExternalFeedSourceProperty> writer = Persistence.externalFeedSourceProperties.bulkWriter()) {
+            // Iterate over fields found in body and update external properties accordingly.
+            while (fieldsIterator.hasNext()) {
+                Map.Entry<String, JsonNode> entry = fieldsIterator.next();
+                ExternalFeedSourceProperty property = new ExternalFeedSourceProperty(
+                    source,
+                    resourceType,
+                    entry.getKey(),
+                    convertRtdString(entry.getValue().asText())
+                );
 
-        // Iterate over fields found in body and update external properties accordingly.
-        while (fieldsIterator.hasNext()) {
-            Map.Entry<String, JsonNode> entry = fieldsIterator.next();
-            ExternalFeedSourceProperty property = new ExternalFeedSourceProperty(
-                source,
-                resourceType,
-                entry.getKey(),
-                convertRtdString(entry.getValue().asText())
-            );
+                // Update the attributes in Mongo.
+                if (existingPropertyIds.contains(property.id)) {
+                    writer.updateField(property.id, "value", property.value);
+                } else {
+                    writer.create(property);
+                }
 
-            // Update the attributes in Mongo.
-            ExternalFeedSourceProperty existingProperty = Persistence.externalFeedSourceProperties.getById(
-                property.id
-            );
-            if (existingProperty != null) {
-                Persistence.externalFeedSourceProperties.updateField(
-                    property.id,
-                    "value",
-                    property.value
-                );
-            } else {
-                Persistence.externalFeedSourceProperties.create(property);
+                // Hold the received attribute keys to delete the extra ones from Mongo that are assumed not used.
+                rtdKeys.add(property.name);
             }
 
-            // Hold the received attribute keys to delete the extra ones from Mongo that are assumed not used.
-            rtdKeys.add(property.name);
+            // Remove the stored attributes not in the RTD response.
+            existingProperties.stream()
+                .filter(property -> !rtdKeys.contains(property.name))
+                .forEach(property -> writer.removeById(property.id));
         }
-
-        // Get the attributes stored in Mongo, remove those not in the RTD response.
-        Persistence.externalFeedSourceProperties.getFiltered(eq("feedSourceId", source.id))
-            .stream()
-            .filter(property -> !rtdKeys.contains(property.name))
-            .forEach(property -> Persistence.externalFeedSourceProperties.removeById(property.id));
     }
 
     /**
@@ -2,14 +2,19 @@ package com.conveyal.datatools.manager.extensions.mtc;
 
 import com.conveyal.datatools.manager.models.ExternalFeedSourceProperty;
 import com.conveyal.datatools.manager.models.FeedSource;
+import com.conveyal.datatools.manager.persistence.BulkWriter;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.lang.reflect.Field;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.conveyal.datatools.manager.models.ExternalFeedSourceProperty.constructId;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Projections.include;
 
 /**
  * Represents all of the properties persisted on a carrier record by the external MTC database known as RTD.
@@ -117,22 +122,31 @@ public class RtdCarrier {
      * TODO: Perhaps we should not be using reflection, but it works pretty well here.
      */
     public void updateFields(FeedSource feedSource) throws IllegalAccessException {
-        // Using reflection, iterate over every field in the class.
-        for (Field carrierField : this.getClass().getDeclaredFields()) {
-            String fieldName = carrierField.getName();
-            String fieldValue = carrierField.get(this) != null ? carrierField.get(this).toString() : null;
-            // Construct external feed source property for field with value from carrier.
-            ExternalFeedSourceProperty prop = new ExternalFeedSourceProperty(
-                feedSource,
-                MtcFeedResource.RESOURCE_TYPE,
-                fieldName,
-                fieldValue
-            );
-            // If field does not exist, create it. Otherwise, update value.
-            if (Persistence.externalFeedSourceProperties.getById(prop.id) == null) {
-                Persistence.externalFeedSourceProperties.create(prop);
-            } else {
-                Persistence.externalFeedSourceProperties.updateField(prop.id, fieldName, fieldValue);
+        // Fetch the IDs of all existing properties for the feed source up front so that the creates/updates below can
+        // be sent in a single bulk write.
+        Set<String> existingPropertyIds = Persistence.externalFeedSourceProperties
+            .getFiltered(eq("feedSourceId", feedSource.id), include("_id"))
+            .stream()
+            .map(property -> property.id)
+            .collect(Collectors.toSet());
+        try (BulkWriter<ExternalFeedSourceProperty> writer = Persistence.externalFeedSourceProperties.bulkWriter()) {
+            // Using reflection, iterate over every field in the class.
+            for (Field carrierField : this.getClass().getDeclaredFields()) {
+                String fieldName = carrierField.getName();
+                String fieldValue = carrierField.get(this) != null ? carrierField.get(this).toString() : null;
+                // Construct external feed source property for field with value from carrier.
+                ExternalFeedSourceProperty prop = new ExternalFeedSourceProperty(
+                    feedSource,
+                    MtcFeedResource.RESOURCE_TYPE,
+                    fieldName,
+                    fieldValue
+                );
+                // If field does not exist, create it. Otherwise, update value.
+                if (!existingPropertyIds.contains(prop.id)) {
+                    writer.create(prop);
+                } else {
+                    writer.updateField(prop.id, fieldName, fieldValue);
+                }
             }
         }
     }
@@ -222,6 +222,8 @@ public class AutoDeployJob extends MonitorableJobWithResourceLock<Project> {
             return;
         }
 
+        // Make sure that another server has not taken over the lock before starting the deployment.
+        checkLockHeld();
         // Queue up the deploy job.
         if (JobUtils.queueDeployJob(deployment, owner, server) != null) {
             LOG.info("Last auto deploy date updated for project {}.", project.name);
@@ -229,6 +231,7 @@ public class AutoDeployJob extends MonitorableJobWithResourceLock<Project> {
             deployment.feedVersionIds = updatedFeedVersionIds;
             project.lastAutoDeploy = new Date();
             Persistence.deployments.replace(deployment.id, deployment);
+            deployment.storeBoundsCache();
             Persistence.projects.replace(project.id, project);
             status.completeSuccessfully("Auto deploy started new deploy job.");
         } else {
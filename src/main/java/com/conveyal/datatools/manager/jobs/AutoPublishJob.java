@@ -56,6 +56,7 @@ public class AutoPublishJob extends MonitorableJobWithResourceLock<FeedSource> {
 
         // If validation successful, just execute the feed updating process.
         if (!status.error) {
+            checkLockHeld();
             FeedVersionController.publishToExternalResource(latestFeedVersion);
             LOG.info("Auto-published feed source {} to external resource.", feedSource.id);
         }
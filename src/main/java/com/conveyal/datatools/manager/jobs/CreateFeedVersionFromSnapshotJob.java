@@ -10,6 +10,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Create (i.e., publish) a new feed version in the manager derived from an editor snapshot. NOTE: This could just
  * create a new snapshot, and then validate those tables. However, we want to verify that we're exporting correctly to
@@ -20,7 +23,8 @@ import org.slf4j.LoggerFactory;
 public class CreateFeedVersionFromSnapshotJob extends FeedSourceJob {
     public static final Logger LOG = LoggerFactory.getLogger(CreateFeedVersionFromSnapshotJob.class);
 
-    private final FeedVersion feedVersion;
+    /** The version to create (package-private so that {@link JobRecovery} can recreate the same version). */
+    final FeedVersion feedVersion;
     private final Snapshot snapshot;
 
     public CreateFeedVersionFromSnapshotJob(FeedSource feedSource, Snapshot snapshot, Auth0UserProfile owner) {
@@ -48,4 +52,13 @@ public class CreateFeedVersionFromSnapshotJob extends FeedSourceJob {
     public String getFeedSourceId () {
         return snapshot.feedSourceId;
     }
+
+    @Override
+    public Map<String, String> retrieveRecoveryParameters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("snapshotId", snapshot.id);
+        // Needed to check whether the version was already stored before the job was interrupted.
+        parameters.put("feedVersionId", feedVersion.id);
+        return parameters;
+    }
 }
\ No newline at end of file
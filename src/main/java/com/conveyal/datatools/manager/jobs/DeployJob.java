@@ -621,6 +621,16 @@ public class DeployJob extends MonitorableJob {
         return String.format("%s/%s/%s-latest.zip", bundlePrefix, deployment.projectId, name);
     }
 
+    /**
+     * Delete the bundle temp file if the deployment is cancelled (jobFinished is not called for cancelled jobs).
+     */
+    @Override
+    protected void cleanUpAfterCancellation() {
+        if (deploymentTempFile != null && deploymentTempFile.exists() && !deploymentTempFile.delete()) {
+            LOG.error("Deployment {} temp file not deleted after cancellation.", deployment.id);
+        }
+    }
+
     @Override
     public void jobFinished () {
         // Delete temp file containing OTP deployment (OSM extract and GTFS files) so that the server's disk storage
@@ -906,6 +916,7 @@ public class DeployJob extends MonitorableJob {
                 String previousMessage = status.message;
                 status.update("Waiting for recreate graph building image job to complete", 95);
                 while (!recreateBuildImageJob.status.completed) {
+                    if (isCancellationRequested()) recreateBuildImageJob.requestCancellation();
                     try {
                         // wait 1 second
                         Thread.sleep(1000);
@@ -1086,6 +1097,10 @@ public class DeployJob extends MonitorableJob {
                 }
             }
 
+            if (isCancellationRequested()) {
+                status.fail("Deployment cancelled while waiting for public IP address(es).");
+                return updatedInstances;
+            }
             try {
                 int sleepTimeMillis = 10000;
                 LOG.info("Waiting {} seconds to perform another public IP address check...", sleepTimeMillis / 1000);
@@ -10,9 +10,11 @@ import com.conveyal.datatools.manager.models.ExternalFeedSourceProperty;
 import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.models.FeedVersion;
 import com.conveyal.datatools.manager.persistence.FeedStore;
+import com.conveyal.datatools.manager.persistence.BulkWriter;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.conveyal.datatools.manager.utils.HashUtils;
 import com.google.common.io.ByteStreams;
+import com.mongodb.MongoException;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -153,45 +155,60 @@ public class FeedUpdater {
         }
 
         LOG.debug(eTagForFeed.toString());
-        for (S3ObjectSummary objSummary : objectSummaries) {
-            String eTag = objSummary.getETag();
-            String keyName = objSummary.getKey();
-            LOG.debug("{} etag = {}", keyName, eTag);
+        // Writes for all updated feeds are queued and sent in bulk once all objects have been checked.
+        try (
+            BulkWriter<FeedVersion> feedVersionWriter = Persistence.feedVersions.bulkWriter();
+            BulkWriter<FeedSource> feedSourceWriter = Persistence.feedSources.bulkWriter()
+        ) {
+            for (S3ObjectSummary objSummary : objectSummaries) {
+                String eTag = objSummary.getETag();
+                String keyName = objSummary.getKey();
+                LOG.debug("{} etag = {}", keyName, eTag);
 
-            // Don't add object if it is a dir
-            if (keyName.equals(bucketFolder)) continue;
-            String filename = keyName.split("/")[1];
-            String feedId = filename.replace(".zip", "");
-            FeedSource feedSource = getFeedSource(feedId);
-            if (feedSource == null) {
-                LOG.error("No feed source found for feed ID {}", feedId);
-                continue;
-            }
-            // Skip object if the filename is null
-            if ("null".equals(feedId)) continue;
+                // Don't add object if it is a dir
+                if (keyName.equals(bucketFolder)) continue;
+                String filename = keyName.split("/")[1];
+                String feedId = filename.replace(".zip", "");
+                FeedSource feedSource = getFeedSource(feedId);
+                if (feedSource == null) {
+                    LOG.error("No feed source found for feed ID {}", feedId);
+                    continue;
+                }
+                // Skip object if the filename is null
+                if ("null".equals(feedId)) continue;
 
-            FeedVersion latestVersionSentForPublishing = getLatestVersionSentForPublishing(feedId, feedSource);
-            if (shouldMarkFeedAsProcessed(eTag, latestVersionSentForPublishing)) {
-                try {
-                    // Don't mark a feed version as published if previous published version is before sentToExternalPublisher.
-                    if (!objSummary.getLastModified().before(latestVersionSentForPublishing.sentToExternalPublisher)) {
-                        LOG.info("New version found for {} at s3://{}/{}. ETag = {}.", feedId, feedBucket, keyName, eTag);
-                        updatePublishedFeedVersion(feedId, latestVersionSentForPublishing);
-                        // TODO: Explore if MD5 checksum can be used to find matching feed version.
-                        // findMatchingFeedVersion(md5, feedId, feedSource);
-                    }
+                FeedVersion latestVersionSentForPublishing = getLatestVersionSentForPublishing(feedId, feedSource);
+                if (shouldMarkFeedAsProcessed(eTag, latestVersionSentForPublishing)) {
+                    try {
+                        // Don't mark a feed version as published if previous published version is before sentToExternalPublisher.
+                        if (!objSummary.getLastModified().before(latestVersionSentForPublishing.sentToExternalPublisher)) {
+                            LOG.info("New version found for {} at s3://{}/{}. ETag = {}.", feedId, feedBucket, keyName, eTag);
+                            updatePublishedFeedVersion(
+                                feedId,
+                                latestVersionSentForPublishing,
+                                feedVersionWriter,
+                                feedSourceWriter
+                            );
+                            // TODO: Explore if MD5 checksum can be used to find matching feed version.
+                            // findMatchingFeedVersion(md5, feedId, feedSource);
+                        }
 
-                } catch (Exception e) {
-                    LOG.warn("Could not load feed " + keyName, e);
-                } finally {
-                    // Add new tag to map used for tracking updates. NOTE: this is in a finally block because we still
-                    // need to track the eTags even for feed sources that were not found. Otherwise, the feeds will be
-                    // re-downloaded each time the update task is run, which could cause many unnecessary S3 operations.
-                    newTags.put(feedId, eTag);
+                    } catch (Exception e) {
+                        LOG.warn("Could not load feed " + keyName, e);
+                    } finally {
+                        // Add new tag to map used for tracking updates. NOTE: this is in a finally block because we still
+                        // need to track the eTags even for feed sources that were not found. Otherwise, the feeds will be
+                        // re-downloaded each time the update task is run, which could cause many unnecessary S3 operations.
+                        newTags.put(feedId, eTag);
+                    }
+                } else {
+                    LOG.debug("Etag {} already exists in map", eTag);
                 }
-            } else {
-                LOG.debug("Etag {} already exists in map", eTag);
             }
+        } catch (MongoException e) {
+            // The queued writes are flushed when the writers are closed. As when updating a single feed failed, log the
+            // failure (which lists the failed writes) rather than fail the whole update, so that the eTags are tracked.
+            LOG.warn("Could not write updates for published feeds", e);
         }
         return newTags;
     }
@@ -232,8 +249,15 @@ public class FeedUpdater {
      * Update the published feed version for the feed source.
      * @param feedId the unique ID used by MTC to identify a feed source
      * @param publishedVersion the feed version to be registered
+     * @param feedVersionWriter queues the update marking the version as processed
+     * @param feedSourceWriter queues the update to the feed source's published version
      */
-    private void updatePublishedFeedVersion(String feedId, FeedVersion publishedVersion) {
+    private void updatePublishedFeedVersion(
+        String feedId,
+        FeedVersion publishedVersion,
+        BulkWriter<FeedVersion> feedVersionWriter,
+        BulkWriter<FeedSource> feedSourceWriter
+    ) {
         try {
             if (publishedVersion != null) {
                 if (publishedVersion.sentToExternalPublisher == null) {
@@ -242,8 +266,8 @@ public class FeedUpdater {
                 }
                 // Set published namespace to the feed version and set the processedByExternalPublisher timestamp.
                 LOG.info("Latest published version (sent at {}) for {} is {}", publishedVersion.sentToExternalPublisher, feedId, publishedVersion.id);
-                Persistence.feedVersions.updateField(publishedVersion.id, PROCESSED_BY_EXTERNAL_PUBLISHER_FIELD, new Date());
-                Persistence.feedSources.updateField(publishedVersion.feedSourceId, "publishedVersionId", publishedVersion.namespace);
+                feedVersionWriter.updateField(publishedVersion.id, PROCESSED_BY_EXTERNAL_PUBLISHER_FIELD, new Date());
+                feedSourceWriter.updateField(publishedVersion.feedSourceId, "publishedVersionId", publishedVersion.namespace);
             } else {
                 LOG.error(
                     "No published versions found for {} ({} id={})",
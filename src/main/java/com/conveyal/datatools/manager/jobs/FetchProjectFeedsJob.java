@@ -13,6 +13,8 @@ import org.slf4j.LoggerFactory;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * Created by landon on 3/25/16.
@@ -60,4 +62,18 @@ public class FetchProjectFeedsJob extends MonitorableJob {
         }
     }
 
-}
\ No newline at end of file
+    @Override
+    public Map<String, String> retrieveRecoveryParameters() {
+        return Collections.singletonMap("projectId", projectId);
+    }
+
+    @Override
+    public String retrieveDeduplicationKey() {
+        return String.join(":", type.name(), projectId);
+    }
+
+    @Override
+    protected String retrieveProjectId() {
+        return projectId;
+    }
+}
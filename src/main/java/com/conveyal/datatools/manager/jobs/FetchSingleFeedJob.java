@@ -11,10 +11,16 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 public class FetchSingleFeedJob extends FeedVersionJob {
     public static final Logger LOG = LoggerFactory.getLogger(FetchSingleFeedJob.class);
     private FeedSource feedSource;
     private FeedVersion result;
+    /** The ID of the version fetched by another copy of this job (see {@link #applyResults}). */
+    private String reportedFeedVersionId;
     private final boolean continueThread;
 
     /**
@@ -45,7 +51,48 @@ public class FetchSingleFeedJob extends FeedVersionJob {
     @JsonProperty
     public String getFeedVersionId () {
         // Feed version result is null unless (and until) fetch is successful.
-        return result != null ? result.id : null;
+        return result != null ? result.id : reportedFeedVersionId;
+    }
+
+    @Override
+    public Map<String, String> retrieveResults() {
+        String feedVersionId = getFeedVersionId();
+        return feedVersionId != null ? Collections.singletonMap("feedVersionId", feedVersionId) : null;
+    }
+
+    @Override
+    public void applyResults(Map<String, String> results) {
+        reportedFeedVersionId = results.get("feedVersionId");
+    }
+
+    @Override
+    public Map<String, String> retrieveRecoveryParameters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("feedSourceId", getFeedSourceId());
+        parameters.put("continueThread", String.valueOf(continueThread));
+        return parameters;
+    }
+
+    @Override
+    public String retrieveDeduplicationKey() {
+        return String.join(":", type.name(), getFeedSourceId());
+    }
+
+    /** When continuing the thread, the fetched version is processed (a CPU-heavy sub-job) in the same thread. */
+    @Override
+    public JobWorkload retrieveWorkload() {
+        return continueThread ? JobWorkload.CPU : JobWorkload.IO;
+    }
+
+    /**
+     * When continuing the thread, the fetched version is processed by this job, but it is not known until the job runs,
+     * so assume it is similar to the latest version. Otherwise, the job is only a download.
+     */
+    @Override
+    public long retrieveMemoryEstimate() {
+        if (!continueThread) return 0;
+        FeedVersion latest = feedSource.retrieveLatest();
+        return latest != null ? latest.retrieveMemoryEstimate() : 0;
     }
 
     @Override
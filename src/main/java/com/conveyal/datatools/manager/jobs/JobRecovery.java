@@ -0,0 +1,217 @@
+package com.conveyal.datatools.manager.jobs;
+
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.jobs.feedmerge.MergeFeedsType;
+import com.conveyal.datatools.manager.models.FeedProcessingCheckpoint;
+import com.conveyal.datatools.manager.models.FeedSource;
+import com.conveyal.datatools.manager.models.FeedVersion;
+import com.conveyal.datatools.manager.models.JobRecord;
+import com.conveyal.datatools.manager.models.Project;
+import com.conveyal.datatools.manager.models.Snapshot;
+import com.conveyal.datatools.manager.persistence.JobQueueStore;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.utils.JobUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+
+/**
+ * Recreates jobs that were queued or running when their server stopped (see {@link JobQueueStore}) and queues them
+ * again. This happens on startup (for jobs of a previous run of this server) and periodically (for jobs of other
+ * servers sharing the database that have stopped renewing their records' heartbeats). Jobs that were running start
+ * again from the beginning (except for processing a feed, which resumes from its last checkpoint), so only jobs that
+ * are safe to re-run provide the parameters needed to recreate them (see
+ * {@link MonitorableJob#retrieveRecoveryParameters}). Records for other jobs are removed and reported as lost. Jobs
+ * that create a feed version are not recreated if the version they were creating has already been stored.
+ *
+ * The time without a heartbeat after which a record is treated as interrupted is set in server.yml with
+ * application.jobs.stale_seconds (60).
+ *
+ * Recovery is idempotent: identical records (e.g., left over from a restart during a previous recovery) are only
+ * recreated once, and a job is dropped once it has been recreated {@link #MAX_ATTEMPTS} times, in case the job itself
+ * is what is bringing the server down.
+ */
+public class JobRecovery {
+    private static final Logger LOG = LoggerFactory.getLogger(JobRecovery.class);
+    static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Queue the interrupted jobs again and start renewing the heartbeats of this server's job records (and recovering
+     * jobs of servers that have stopped). This should be called once on startup, after {@link Persistence#initialize}.
+     */
+    public static void initialize() {
+        long staleMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(
+            getConfigPropertyAsText("application.jobs.stale_seconds", "60")
+        ));
+        JobQueueStore store = Persistence.jobQueue;
+        recover(store.retrieveInterruptedJobs(staleMillis));
+        long heartbeatMillis = staleMillis / 4;
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("job-recovery").setDaemon(true).build()
+        );
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                store.renewHeartbeats();
+                List<JobRecord> records = store.retrieveInterruptedJobs(staleMillis);
+                if (!records.isEmpty()) recover(records);
+            } catch (Exception e) {
+                LOG.error("Could not renew heartbeats or recover interrupted jobs", e);
+            }
+        }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Recreate and queue the jobs for the records (in order), removing the records.
+     * @return counts of the jobs requeued, restarted (i.e., those that were running), lost and dropped along with the
+     * time taken in milliseconds
+     */
+    static Map<String, Object> recover(List<JobRecord> records) {
+        long startTime = System.currentTimeMillis();
+        JobQueueStore store = Persistence.jobQueue;
+        Set<String> recoveredKeys = new HashSet<>();
+        int requeued = 0;
+        int restarted = 0;
+        int duplicates = 0;
+        int lost = 0;
+        int dropped = 0;
+        for (JobRecord record : records) {
+            MonitorableJob job = null;
+            if (!recoveredKeys.add(record.retrieveRecoveryKey())) {
+                duplicates++;
+            } else if (record.parameters == null) {
+                LOG.warn("Job {} ({}) was interrupted by restart and cannot be recovered", record.id, record.type);
+                lost++;
+            } else if (record.attempts >= MAX_ATTEMPTS) {
+                LOG.error("Job {} ({}) was interrupted {} times and will not be recovered again", record.id,
+                    record.type, record.attempts + 1);
+                dropped++;
+            } else {
+                try {
+                    job = recreate(record);
+                } catch (Exception e) {
+                    LOG.error("Could not recreate job {} ({})", record.id, record.type, e);
+                }
+                if (job == null) dropped++;
+            }
+            if (job != null) {
+                // Record the new job before removing the old record, so that the job is not lost if the server stops
+                // again in between (if both records remain, only one is recreated next time).
+                store.recordQueued(job, record.attempts + 1);
+                store.removeRecord(record.id);
+                JobUtils.heavyExecutor.execute(job);
+                if (record.state == JobRecord.State.RUNNING) restarted++;
+                else requeued++;
+            } else {
+                store.removeRecord(record.id);
+                discardRecoveryState(record);
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requeued", requeued);
+        stats.put("restarted", restarted);
+        stats.put("duplicates", duplicates);
+        stats.put("lost", lost);
+        stats.put("dropped", dropped);
+        stats.put("durationMillis", System.currentTimeMillis() - startTime);
+        stats.put("completedAt", System.currentTimeMillis());
+        store.setLastRecoveryStats(stats);
+        LOG.info("Recovered interrupted jobs in {} ms: {}", stats.get("durationMillis"), stats);
+        return stats;
+    }
+
+    /**
+     * Remove the state saved for the recorded job (see {@link MonitorableJob#saveRecoveryState}) once it will not be
+     * recreated.
+     */
+    static void discardRecoveryState(JobRecord record) {
+        if (record.type == MonitorableJob.JobType.PROCESS_FEED && record.parameters != null) {
+            // Processing will not be resumed.
+            FeedProcessingCheckpoint.remove(record.parameters.get("feedVersionId"));
+        }
+    }
+
+    /**
+     * @return a new job equivalent to the recorded job, or null if the job's inputs no longer exist (e.g., the feed
+     * source has since been deleted) or the job type cannot be recovered.
+     */
+    static MonitorableJob recreate(JobRecord record) {
+        Auth0UserProfile owner = Auth0UserProfile.SYSTEM_USER_ID.equals(record.userId)
+            ? Auth0UserProfile.createSystemUser()
+            : new Auth0UserProfile(record.userEmail, record.userId);
+        Map<String, String> parameters = record.parameters;
+        switch (record.type) {
+            case FETCH_SINGLE_FEED:
+                FeedSource feedSource = Persistence.feedSources.getById(parameters.get("feedSourceId"));
+                if (feedSource == null) return null;
+                return new FetchSingleFeedJob(
+                    feedSource,
+                    owner,
+                    Boolean.parseBoolean(parameters.get("continueThread"))
+                );
+            case FETCH_PROJECT_FEEDS:
+                Project project = Persistence.projects.getById(parameters.get("projectId"));
+                return project != null ? new FetchProjectFeedsJob(project, owner) : null;
+            case CREATE_FEEDVERSION_FROM_SNAPSHOT:
+                if (isVersionStored(parameters.get("feedVersionId"))) return null;
+                Snapshot snapshot = Persistence.snapshots.getById(parameters.get("snapshotId"));
+                if (snapshot == null) return null;
+                FeedSource snapshotFeedSource = Persistence.feedSources.getById(snapshot.feedSourceId);
+                if (snapshotFeedSource == null) return null;
+                CreateFeedVersionFromSnapshotJob snapshotJob =
+                    new CreateFeedVersionFromSnapshotJob(snapshotFeedSource, snapshot, owner);
+                // Create the same version, so that it is not created twice if the server stops again.
+                if (parameters.get("feedVersionId") != null) snapshotJob.feedVersion.id = parameters.get("feedVersionId");
+                return snapshotJob;
+            case MERGE_FEED_VERSIONS:
+                List<String> feedVersionIds = Arrays.asList(parameters.get("feedVersionIds").split(","));
+                Set<FeedVersion> feedVersions = new HashSet<>(Persistence.feedVersions.getByIds(feedVersionIds));
+                // Do not merge a subset of the versions if any have since been deleted.
+                if (feedVersions.size() != feedVersionIds.size()) return null;
+                if (isVersionStored(parameters.get("mergedVersionId"))) return null;
+                MergeFeedsJob mergeFeedsJob = new MergeFeedsJob(
+                    owner,
+                    feedVersions,
+                    parameters.get("file"),
+                    MergeFeedsType.valueOf(parameters.get("mergeType"))
+                );
+                // Create the same version, so that it is not created twice if the server stops again.
+                if (mergeFeedsJob.mergedVersion != null && parameters.get("mergedVersionId") != null) {
+                    mergeFeedsJob.mergedVersion.id = parameters.get("mergedVersionId");
+                }
+                return mergeFeedsJob;
+            case PROCESS_FEED:
+                // Processing resumes from the last completed stage (see FeedProcessingCheckpoint). Unlike the jobs above,
+                // it is recreated even if the version was already stored, so that the sub-jobs that follow still run.
+                FeedProcessingCheckpoint checkpoint = FeedProcessingCheckpoint.retrieve(parameters.get("feedVersionId"));
+                if (checkpoint == null || checkpoint.feedVersion.parentFeedSource() == null) return null;
+                return new ProcessSingleFeedJob(checkpoint.feedVersion, owner, checkpoint.isNewVersion);
+            case STORE_VALIDATION_RESULTS:
+                return new StoreValidationResultsJob(owner);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return whether the feed version created by an interrupted job has already been stored, in which case the job
+     * got far enough that running it again would create a duplicate version
+     */
+    private static boolean isVersionStored(String feedVersionId) {
+        if (feedVersionId == null || Persistence.feedVersions.getById(feedVersionId) == null) return false;
+        LOG.info("Version {} was already stored by the interrupted job, which will not be recreated", feedVersionId);
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+package com.conveyal.datatools.manager.jobs;
+
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.manager.models.JobRecord;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.utils.JobUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+
+/**
+ * Runs heavy jobs offloaded by API servers (see {@link OffloadedJobs}) in a separate, headless process, so that
+ * loading, validating and merging feeds does not compete with API requests for CPU and heap (and a job that runs out of
+ * memory does not take the API server down with it). Several workers can run on the same host or on other hosts, as
+ * long as they share the application database and data directories (or S3) with the API server.
+ *
+ * The queue of offloaded jobs is the job record collection in MongoDB (see
+ * {@link com.conveyal.datatools.manager.persistence.JobQueueStore}). Each worker claims jobs while it is running fewer
+ * than its limit, recreates them from their recovery parameters and runs them in its own
+ * {@link JobUtils#heavyExecutor} (so its scheduling limits and memory budget apply). While a job runs, the worker
+ * reports its status every few seconds, which also serves as a heartbeat: if a worker stops reporting, another worker
+ * releases its claims and starts the jobs again (up to {@link JobRecovery#MAX_ATTEMPTS} times).
+ *
+ * The mode is chosen in server.yml with application.jobs.mode (defaults in parentheses):
+ * - all (default): the server runs every job itself
+ * - api: the server offloads heavy jobs to workers
+ * - worker: the server only runs offloaded jobs (no API routes or scheduled tasks). Start it with the same jar and
+ *   config files as the API server.
+ * Workers are configured with:
+ * - application.jobs.worker.max_concurrent_jobs (application.jobs.max_concurrent_jobs or 4): offloaded jobs run at once
+ * - application.jobs.worker.stale_seconds (application.jobs.stale_seconds or 60): time without a heartbeat after which
+ *   a claim is released
+ *
+ * Note: sub-jobs and any follow-on jobs queued by an offloaded job (e.g., processing a fetched feed) run on the worker
+ * and are not visible to the API server.
+ */
+public class JobWorker {
+    private static final Logger LOG = LoggerFactory.getLogger(JobWorker.class);
+    private static final String CONFIG_PREFIX = "application.jobs";
+    private static final long POLL_INTERVAL_MILLIS = OffloadedJobs.SYNC_INTERVAL_MILLIS;
+
+    public enum Mode {
+        ALL,
+        API,
+        WORKER
+    }
+
+    private final String workerId;
+    private final int maxConcurrentJobs;
+    private final long staleMillis;
+    /** Jobs claimed by this worker by record (i.e., the offloaded job's) ID. */
+    private final Map<String, MonitorableJob> claimedJobs = new ConcurrentHashMap<>();
+
+    JobWorker(String workerId, int maxConcurrentJobs, long staleMillis) {
+        this.workerId = workerId;
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.staleMillis = staleMillis;
+    }
+
+    /** @return the mode set in application.jobs.mode (see class doc). */
+    public static Mode retrieveMode() {
+        return Mode.valueOf(getConfigPropertyAsText(CONFIG_PREFIX + ".mode", "all").toUpperCase());
+    }
+
+    /**
+     * Start claiming and running offloaded jobs. This should be called once on startup of a worker, after
+     * {@link Persistence#initialize}.
+     */
+    public static JobWorker start() {
+        int maxConcurrentJobs = Integer.parseInt(getConfigPropertyAsText(
+            CONFIG_PREFIX + ".worker.max_concurrent_jobs",
+            getConfigPropertyAsText(CONFIG_PREFIX + ".max_concurrent_jobs", "4")
+        ));
+        long staleMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(
+            getConfigPropertyAsText(
+                CONFIG_PREFIX + ".worker.stale_seconds",
+                getConfigPropertyAsText(CONFIG_PREFIX + ".stale_seconds", "60")
+            )
+        ));
+        JobWorker worker = new JobWorker(Persistence.jobQueue.retrieveServerId(), maxConcurrentJobs, staleMillis);
+        // The offloaded records already track the jobs this worker runs.
+        Persistence.jobQueue.setRecording(false);
+        // Not a daemon thread, because this keeps the worker process running.
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("job-worker").build()
+        );
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                worker.poll();
+            } catch (Exception e) {
+                LOG.error("Could not poll for offloaded jobs", e);
+            }
+        }, 0, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        LOG.info("Worker {} running up to {} offloaded jobs", worker.workerId, maxConcurrentJobs);
+        return worker;
+    }
+
+    /**
+     * Report the status of claimed jobs, release claims of stopped workers and claim new jobs up to the limit.
+     */
+    void poll() {
+        reportStatus();
+        Persistence.jobQueue.releaseStaleClaims(staleMillis, JobRecovery.MAX_ATTEMPTS);
+        while (claimedJobs.size() < maxConcurrentJobs) {
+            JobRecord record = Persistence.jobQueue.claimOffloadedJob(workerId);
+            if (record == null) break;
+            MonitorableJob job = null;
+            try {
+                job = JobRecovery.recreate(record);
+            } catch (Exception e) {
+                LOG.error("Could not recreate offloaded job {} ({})", record.id, record.type, e);
+            }
+            if (job == null) {
+                MonitorableJob.Status status = record.status != null ? record.status : new MonitorableJob.Status();
+                status.fail("Job could not be started because its inputs no longer exist.");
+                Persistence.jobQueue.reportStatus(record.id, workerId, status, null);
+                JobRecovery.discardRecoveryState(record);
+                continue;
+            }
+            LOG.info("Worker {} claimed {} (jobId={})", workerId, record.type, record.id);
+            claimedJobs.put(record.id, job);
+            JobUtils.heavyExecutor.execute(job);
+        }
+    }
+
+    /**
+     * Report the status (and results) of each claimed job, passing on cancellations and forgetting finished jobs.
+     */
+    private void reportStatus() {
+        Iterator<Map.Entry<String, MonitorableJob>> iterator = claimedJobs.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, MonitorableJob> entry = iterator.next();
+            MonitorableJob job = entry.getValue();
+            JobRecord record = Persistence.jobQueue.reportStatus(
+                entry.getKey(),
+                workerId,
+                job.status,
+                job.retrieveResults()
+            );
+            if (record == null) {
+                // Another worker released the claim (e.g., after a long GC pause), so it may run the job again.
+                LOG.warn("Worker {} lost its claim on job {}, cancelling it", workerId, entry.getKey());
+                job.requestCancellation();
+                iterator.remove();
+            } else if (record.state == JobRecord.State.FINISHED) {
+                iterator.remove();
+            } else if (record.cancellationRequested && !job.isCancellationRequested()) {
+                job.requestCancellation();
+            }
+        }
+    }
+}
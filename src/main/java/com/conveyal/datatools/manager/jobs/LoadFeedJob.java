@@ -1,8 +1,11 @@
 package com.conveyal.datatools.manager.jobs;
 
 import com.conveyal.datatools.common.status.FeedVersionJob;
+import com.conveyal.datatools.manager.DataManager;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.FeedProcessingCheckpoint;
 import com.conveyal.datatools.manager.models.FeedVersion;
+import com.conveyal.gtfs.GTFS;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +14,9 @@ import org.slf4j.LoggerFactory;
  * Performs the load GTFS into SQL task for a given feed version. If feed version is not new (and using S3 for storage),
  * the load step will skip uploading the feed to S3 to avoid overwriting the existing files there (this shouldn't be
  * harmful, but it is a waste of time/bandwidth and will overwrite the timestamp on the file which could cause confusion).
+ *
+ * If processing of the version is being resumed and the feed was already loaded (see
+ * {@link FeedProcessingCheckpoint}), the load is skipped.
  */
 public class LoadFeedJob extends FeedVersionJob {
     public static final Logger LOG = LoggerFactory.getLogger(LoadFeedJob.class);
@@ -40,10 +46,28 @@ public class LoadFeedJob extends FeedVersionJob {
         return feedVersion.feedSourceId;
     }
 
+    @Override
+    public long retrieveMemoryEstimate() {
+        return feedVersion.retrieveMemoryEstimate();
+    }
+
     @Override
     public void jobLogic () {
         LOG.info("Running LoadFeedJob for {}", feedVersion.id);
+        FeedProcessingCheckpoint checkpoint = FeedProcessingCheckpoint.retrieve(feedVersion.id);
+        if (checkpoint != null && checkpoint.isValidationInterrupted()) {
+            // The namespace holds partial validation results, so load the feed again from scratch.
+            String namespace = checkpoint.feedVersion.namespace;
+            LOG.info("Validation of version {} was interrupted, dropping namespace {}", feedVersion.id, namespace);
+            GTFS.delete(namespace, DataManager.GTFS_DATA_SOURCE);
+        } else if (checkpoint != null && checkpoint.isLoaded()) {
+            LOG.info("Version {} was already loaded, skipping load", feedVersion.id);
+            feedVersion.namespace = checkpoint.feedVersion.namespace;
+            feedVersion.feedLoadResult = checkpoint.feedVersion.feedLoadResult;
+            return;
+        }
         feedVersion.load(status, isNewVersion);
+        if (checkpoint != null && !status.error) checkpoint.recordLoaded(feedVersion);
     }
 
     @Override
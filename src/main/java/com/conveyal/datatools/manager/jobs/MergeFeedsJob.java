@@ -21,6 +21,7 @@ import com.conveyal.gtfs.loader.Feed;
 import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.StopTime;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
@@ -34,8 +35,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.zip.ZipOutputStream;
@@ -142,6 +146,46 @@ public class MergeFeedsJob extends FeedSourceJob {
         return this.feedVersions;
     }
 
+    @Override
+    public Map<String, String> retrieveRecoveryParameters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("feedVersionIds", feedVersions.stream().map(version -> version.id).sorted()
+            .collect(Collectors.joining(",")));
+        // Strip the extension added in the constructor.
+        parameters.put("file", filename.substring(0, filename.length() - ".zip".length()));
+        parameters.put("mergeType", mergeType.name());
+        // Needed to check whether the merged version was already stored before the job was interrupted.
+        if (mergedVersion != null) parameters.put("mergedVersionId", mergedVersion.id);
+        return parameters;
+    }
+
+    @Override
+    public Map<String, String> retrieveResults() {
+        try {
+            return Collections.singletonMap("mergeFeedsResult", mapper.writeValueAsString(mergeFeedsResult));
+        } catch (JsonProcessingException e) {
+            LOG.warn("Could not serialize merge result of job {}", jobId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void applyResults(Map<String, String> results) {
+        String mergeFeedsResultJson = results.get("mergeFeedsResult");
+        if (mergeFeedsResultJson == null) return;
+        try {
+            mapper.readerForUpdating(mergeFeedsResult).readValue(mergeFeedsResultJson);
+        } catch (IOException e) {
+            LOG.warn("Could not read merge result reported for job {}", jobId, e);
+        }
+    }
+
+    /** The merge holds the IDs (and some other values) of every input feed in memory at once. */
+    @Override
+    public long retrieveMemoryEstimate() {
+        return feedVersions.stream().mapToLong(FeedVersion::retrieveMemoryEstimate).sum();
+    }
+
     /**
      * The final stage handles clean up (deleting temp file) and adding the next job to process the
      * new merged version (assuming the merge did not fail).
@@ -161,6 +205,19 @@ public class MergeFeedsJob extends FeedSourceJob {
         }
     }
 
+    /**
+     * Delete the temp file if the merge is cancelled (jobFinished is not called for cancelled jobs).
+     */
+    @Override
+    protected void cleanUpAfterCancellation() {
+        if (mergedTempFile == null) return;
+        try {
+            Files.deleteIfExists(mergedTempFile.toPath());
+        } catch (IOException e) {
+            LOG.error("Merged feed file {} not deleted after cancellation.", mergedTempFile.getAbsolutePath(), e);
+        }
+    }
+
     /**
      * Primary job logic handles collecting and sorting versions, creating a merged table for all versions, and writing
      * the resulting zip file to storage.
@@ -206,6 +263,7 @@ public class MergeFeedsJob extends FeedSourceJob {
 
             // Loop over GTFS tables and merge each feed one table at a time.
             for (int i = 0; i < numberOfTables; i++) {
+                checkCancelled();
                 Table table = tablesToMerge.get(i);
                 if (shouldSkipTable(table.name)) continue;
                 double percentComplete = Math.round((double) i / numberOfTables * 10000d) / 100d;
@@ -240,6 +240,9 @@ public class MonitorServerStatusJob extends MonitorableJob {
      */
     private void waitAndCheckInstanceHealth(String waitingFor) throws InstanceHealthException, InterruptedException {
         LOG.info("Waiting {} seconds for {}", DELAY_SECONDS, waitingFor);
+        // Stop monitoring if this job or the deploy job that started it has been cancelled.
+        if (deployJob.isCancellationRequested()) requestCancellation();
+        checkCancelled();
         Thread.sleep(1000 * DELAY_SECONDS);
         checkInstanceHealth(1);
     }
@@ -3,30 +3,43 @@ package com.conveyal.datatools.manager.jobs;
 import com.conveyal.datatools.common.status.MonitorableJob;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
 import com.conveyal.datatools.manager.models.Model;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.persistence.ResourceLockStore;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Contains logic to lock/release feeds and other objects to ensure
  * that jobs on such resources are not executed concurrently.
+ *
+ * Locks are held in MongoDB (see {@link ResourceLockStore}), so they also prevent jobs on other servers sharing the
+ * database from running on the same resource. The lock's lease is renewed in the background while the job runs. If the
+ * lease is lost anyway (e.g., the database was unreachable for longer than the lease), another server may take over the
+ * lock, so subclasses should call {@link #checkLockHeld} before writing their results.
  */
 public abstract class MonitorableJobWithResourceLock<T extends Model> extends MonitorableJob {
     public static final Logger LOG = LoggerFactory.getLogger(MonitorableJobWithResourceLock.class);
 
+    /** Identifies this server in lock holders (in the form pid@hostname). */
+    private static final String SERVER_NAME = ManagementFactory.getRuntimeMXBean().getName();
+    private static final ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("resource-lock-renewal").setDaemon(true).build()
+    );
+
     protected final T resource;
     private final String resourceName;
     private final String resourceClass;
     private final String jobClass;
-
-    /**
-     * A set of resources (ids) which have been locked by a instance of {@link MonitorableJobWithResourceLock}
-     * to prevent repeat auto-deploy, auto-publishing, etc.
-     */
-    private static final Set<String> lockedResources = Collections.synchronizedSet(new HashSet<>());
+    private transient ResourceLockStore.Lease lease;
+    /** Set if the lease could not be renewed because another holder has acquired the lock. */
+    private volatile boolean lockLost = false;
 
     protected MonitorableJobWithResourceLock(
         Auth0UserProfile owner,
@@ -46,10 +59,15 @@ public abstract class MonitorableJobWithResourceLock<T extends Model> extends Mo
 
     @Override
     public void jobLogic() {
+        ResourceLockStore locks = Persistence.resourceLocks;
+        try {
+            lease = locks.acquire(resource.id, String.join(":", SERVER_NAME, jobClass, jobId));
+        } catch (Exception e) {
+            status.fail(String.format("Unable to acquire lock for %s '%s'", resourceClass, resourceName), e);
+            return;
+        }
         // Determine if the resource is not locked for this job.
-        if (
-            lockedResources.contains(resource.id)
-        ) {
+        if (lease == null) {
             String message = String.format(
                 "%s '%s' skipped for %s execution (another such job is in progress)",
                 resourceClass,
@@ -60,18 +78,16 @@ public abstract class MonitorableJobWithResourceLock<T extends Model> extends Mo
             status.fail(message);
             return;
         }
-
+        LOG.info("{} lock added for {} id '{}' (fencing token {})", jobClass, resourceClass, resource.id,
+            lease.fencingToken);
+        long renewalMillis = Math.max(1, locks.getLeaseMillis() / 3);
+        ScheduledFuture<?> renewal = leaseRenewer.scheduleWithFixedDelay(
+            this::renewLease,
+            renewalMillis,
+            renewalMillis,
+            TimeUnit.MILLISECONDS
+        );
         try {
-            synchronized (lockedResources) {
-                if (!lockedResources.contains(resource.id)) {
-                    lockedResources.add(resource.id);
-                    LOG.info("{} lock added for {} id '{}'", jobClass, resourceClass, resource.id);
-                } else {
-                    LOG.warn("Unable to acquire lock for {} '{}'", resourceClass, resourceName);
-                    status.fail(String.format("%s '%s' is locked for %s.", resourceClass, resourceName, jobClass));
-                    return;
-                }
-            }
             innerJobLogic();
         } catch (Exception e) {
             status.fail(
@@ -79,8 +95,41 @@ public abstract class MonitorableJobWithResourceLock<T extends Model> extends Mo
                 e
             );
         } finally {
-            lockedResources.remove(resource.id);
-            LOG.info("{} lock removed for {} id: '{}'", jobClass, resourceClass, resource.id);
+            renewal.cancel(false);
+            try {
+                locks.release(lease);
+                LOG.info("{} lock removed for {} id: '{}'", jobClass, resourceClass, resource.id);
+            } catch (Exception e) {
+                // The lock is freed once its lease expires.
+                LOG.warn("Unable to release lock for {} id '{}'", resourceClass, resource.id, e);
+            }
+        }
+    }
+
+    private void renewLease() {
+        try {
+            if (!lockLost && !Persistence.resourceLocks.renew(lease)) {
+                lockLost = true;
+                LOG.error("{} lost lock for {} id '{}' to another holder", jobClass, resourceClass, resource.id);
+            }
+        } catch (Exception e) {
+            // Keep trying: the lease remains valid until it expires.
+            LOG.warn("Unable to renew lock for {} id '{}'", resourceClass, resource.id, e);
+        }
+    }
+
+    /**
+     * Fencing check to call before writing the results of the job (e.g., starting a deployment).
+     * @throws IllegalStateException if the lock is no longer held by this job
+     */
+    protected void checkLockHeld() {
+        if (lockLost || !Persistence.resourceLocks.isCurrent(lease)) {
+            lockLost = true;
+            throw new IllegalStateException(String.format(
+                "Lock for %s '%s' expired and may have been acquired by another job.",
+                resourceClass,
+                resourceName
+            ));
         }
     }
 }
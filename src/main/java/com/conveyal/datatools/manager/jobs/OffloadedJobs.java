@@ -0,0 +1,122 @@
+package com.conveyal.datatools.manager.jobs;
+
+import com.conveyal.datatools.common.status.JobScheduler;
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.manager.models.JobRecord;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.utils.JobUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands heavy jobs queued on the API server to worker processes (see {@link JobWorker}) and keeps the status and
+ * results (see {@link MonitorableJob#retrieveResults}) of the API server's copy of each job in step with those reported
+ * by the worker, so that clients polling the job see its progress as if it ran on the API server. The API server's copy
+ * is marked as active (and indexed by feed source) while offloaded, so that checks for jobs in progress (e.g.,
+ * {@link com.conveyal.datatools.manager.models.FeedSource#hasJobsInProgress}) include it.
+ *
+ * Only top-level, CPU-bound jobs that can be recreated from their recovery parameters (see
+ * {@link MonitorableJob#retrieveRecoveryParameters}) are offloaded, because the worker recreates the job from the
+ * record. Other jobs still run on the API server. Note: processing a feed (e.g., an upload) is offloaded too, so
+ * workers must share the GTFS data directory (or S3) where uploaded feeds are stored.
+ */
+public class OffloadedJobs implements JobScheduler.Offloader {
+    private static final Logger LOG = LoggerFactory.getLogger(OffloadedJobs.class);
+    static final long SYNC_INTERVAL_MILLIS = 2000;
+    /** Finished records not picked up within this time (e.g., because the API server restarted) are removed. */
+    private static final long FINISHED_RECORD_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /** Offloaded jobs by job ID. */
+    private final Map<String, MonitorableJob> jobsById = new ConcurrentHashMap<>();
+    /** The scheduler offloading the jobs, which is told when they finish. */
+    private final JobScheduler scheduler;
+
+    OffloadedJobs(JobScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Offload heavy jobs queued in {@link com.conveyal.datatools.manager.utils.JobUtils#heavyExecutor} and start
+     * syncing their status. This should be called once on startup of an API server, after
+     * {@link Persistence#initialize}.
+     */
+    public static OffloadedJobs initialize(JobScheduler scheduler) {
+        OffloadedJobs offloadedJobs = new OffloadedJobs(scheduler);
+        scheduler.setOffloader(offloadedJobs);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("offloaded-job-sync").setDaemon(true).build()
+        );
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                offloadedJobs.sync();
+            } catch (Exception e) {
+                LOG.error("Could not sync status of offloaded jobs", e);
+            }
+        }, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        LOG.info("Offloading heavy jobs to workers");
+        return offloadedJobs;
+    }
+
+    @Override
+    public boolean offload(MonitorableJob job) {
+        if (job.parentJobId != null || job.retrieveWorkload() != MonitorableJob.JobWorkload.CPU) return false;
+        if (!Persistence.jobQueue.offload(job)) return false;
+        jobsById.put(job.jobId, job);
+        job.active = true;
+        JobUtils.jobRegistry.onJobStarted(job);
+        return true;
+    }
+
+    /**
+     * Cancel the offloaded job. If a worker is already running it, the worker is asked to cancel it instead and the
+     * cancellation shows up in the job's status once the worker reports it.
+     */
+    @Override
+    public boolean remove(MonitorableJob job) {
+        if (!jobsById.containsKey(job.jobId) || !Persistence.jobQueue.cancelOffloadedJob(job.jobId)) return false;
+        jobsById.remove(job.jobId);
+        job.active = false;
+        job.discardRecoveryState();
+        return true;
+    }
+
+    /**
+     * Copy the latest status and results reported by workers to the offloaded jobs, forgetting jobs that have finished.
+     */
+    void sync() {
+        if (!jobsById.isEmpty()) {
+            Map<String, JobRecord> records = Persistence.jobQueue.retrieveRecords(jobsById.keySet());
+            for (MonitorableJob job : jobsById.values()) {
+                JobRecord record = records.get(job.jobId);
+                if (record == null) {
+                    // Unless the job was just cancelled (see remove), something else (e.g., a manual clean-up) removed
+                    // the record.
+                    if (jobsById.remove(job.jobId) != null) {
+                        job.status.fail("Job was lost by the worker running it.");
+                        job.active = false;
+                        job.discardRecoveryState();
+                        scheduler.finishOffloadedJob(job);
+                    }
+                    continue;
+                }
+                if (record.results != null) job.applyResults(record.results);
+                if (record.status != null) job.status.updateFrom(record.status);
+                if (record.state == JobRecord.State.FINISHED) {
+                    LOG.info("{} (jobId={}) finished by worker {}", job.type, job.jobId, record.workerId);
+                    jobsById.remove(job.jobId);
+                    job.active = false;
+                    Persistence.jobQueue.removeRecord(job.jobId);
+                    scheduler.finishOffloadedJob(job);
+                }
+            }
+        }
+        Persistence.jobQueue.removeFinishedRecords(FINISHED_RECORD_MAX_AGE_MILLIS);
+    }
+}
@@ -1,9 +1,11 @@
 package com.conveyal.datatools.manager.jobs;
 
 import com.conveyal.datatools.common.status.FeedVersionJob;
+import com.conveyal.datatools.common.status.MonitorableJob;
 import com.conveyal.datatools.editor.jobs.CreateSnapshotJob;
 import com.conveyal.datatools.manager.DataManager;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.FeedProcessingCheckpoint;
 import com.conveyal.datatools.manager.models.FeedRetrievalMethod;
 import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.models.FeedVersion;
@@ -13,12 +15,16 @@ import com.conveyal.datatools.manager.models.transform.FeedTransformDbTarget;
 import com.conveyal.datatools.manager.models.transform.FeedTransformRules;
 import com.conveyal.datatools.manager.models.transform.FeedTransformZipTarget;
 import com.conveyal.datatools.manager.models.transform.ZipTransformation;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.gtfs.GTFS;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -27,6 +33,9 @@ import java.util.Set;
  * the feed and validating the feed are a part of this chain unconditionally. However, depending on which modules are
  * enabled, other jobs may be included here if desired.
  *
+ * Processing that is recorded for recovery after a restart (see {@link #retrieveRecoveryParameters}) resumes from the
+ * last stage (load or validation) that completed before the restart (see {@link FeedProcessingCheckpoint}).
+ *
  * @author mattwigway
  */
 public class ProcessSingleFeedJob extends FeedVersionJob {
@@ -62,6 +71,36 @@ public class ProcessSingleFeedJob extends FeedVersionJob {
         return feedSource.id;
     }
 
+    /** Reprocessing an existing version (e.g., from validateAll) is deduplicated; new versions are always unique. */
+    @Override
+    public String retrieveDeduplicationKey() {
+        return isNewVersion ? null : String.join(":", type.name(), feedVersion.id);
+    }
+
+    @Override
+    public long retrieveMemoryEstimate() {
+        return feedVersion.retrieveMemoryEstimate();
+    }
+
+    @Override
+    public Map<String, String> retrieveRecoveryParameters() {
+        return Collections.singletonMap("feedVersionId", feedVersion.id);
+    }
+
+    /**
+     * Because the feed version is only stored once it has been validated, record a checkpoint holding the version so
+     * that the job can be recreated (and resumed).
+     */
+    @Override
+    public boolean saveRecoveryState() {
+        return FeedProcessingCheckpoint.start(feedVersion, isNewVersion) != null;
+    }
+
+    @Override
+    public void discardRecoveryState() {
+        FeedProcessingCheckpoint.remove(feedVersion.id);
+    }
+
     /**
      * The primary logic in this job handles loading (into Postgres) and validating the incoming GTFS file. However,
      * there are important secondary functions that run {@link ArbitraryTransformJob} to modify either the input GTFS
@@ -88,7 +127,10 @@ public class ProcessSingleFeedJob extends FeedVersionJob {
         LOG.info("Processing feed for {}", feedVersion.id);
         FeedTransformRules rules = feedSource.getRulesForRetrievalMethod(feedVersion.retrievalMethod);
         boolean shouldTransform = rules != null;
-        if (shouldTransform) {
+        // If the feed was loaded before processing was interrupted, the zip transformations have already been applied.
+        FeedProcessingCheckpoint checkpoint = FeedProcessingCheckpoint.retrieve(feedVersion.id);
+        boolean alreadyLoaded = checkpoint != null && checkpoint.loadedAt != null;
+        if (shouldTransform && !alreadyLoaded) {
             // Run zip transformations before load to handle any operations that must be applied directly to the zip file.
             List<ZipTransformation> zipTransformations = rules.getActiveTransformations(feedVersion, ZipTransformation.class);
             FeedTransformZipTarget zipTarget = new FeedTransformZipTarget(feedVersion.retrieveGtfsFile());
@@ -107,7 +149,12 @@ public class ProcessSingleFeedJob extends FeedVersionJob {
         addNextJob(new LoadFeedJob(feedVersion, owner, isNewVersion));
 
         // Next, validate the feed.
-        addNextJob(new ValidateFeedJob(feedVersion, owner, isNewVersion));
+        ValidateFeedJob validateFeedJob = new ValidateFeedJob(feedVersion, owner, isNewVersion);
+        addNextJob(validateFeedJob);
+        // The jobs below need the validated version to have been stored and, if they act on the feed source's latest
+        // version (auto-deploy and auto-publish), any version created from the snapshot chain too. Those that do not
+        // depend on each other (e.g., auto-deploy and auto-publish) may run at the same time.
+        MonitorableJob lastVersionJob = validateFeedJob;
 
         // We only need to snapshot the feed if there are transformations at the database level. In the case that there
         // are, the snapshot namespace will be the target of these modifications. If we were to apply the modifications
@@ -117,19 +164,26 @@ public class ProcessSingleFeedJob extends FeedVersionJob {
         boolean shouldSnapshot = shouldTransform && rules.hasTransformationsOfType(feedVersion, DbTransformation.class);
         if (shouldSnapshot) {
             Snapshot snapshot = new Snapshot("Transform of " + feedVersion.name, feedVersion);
-            addNextJob(new CreateSnapshotJob(owner, snapshot));
+            // Note: the snapshot job reads the stored version to find its namespace, so it must follow validation.
+            MonitorableJob snapshotChainJob = new CreateSnapshotJob(owner, snapshot);
+            addSubJob(snapshotChainJob, validateFeedJob);
             // Apply post-load transformations to snapshotted feed version. Post-load transformations will modify only the
             // snapshot (not the original feed version's namespace), so the snapshot must be published (or loaded into the
             // editor) in order to see the results.
             FeedTransformDbTarget dbTarget = new FeedTransformDbTarget(snapshot.id);
             for (DbTransformation transformation : rules.getActiveTransformations(feedVersion, DbTransformation.class)) {
-                addNextJob(new ArbitraryTransformJob(owner, dbTarget, transformation));
+                MonitorableJob transformJob = new ArbitraryTransformJob(owner, dbTarget, transformation);
+                addSubJob(transformJob, snapshotChainJob);
+                snapshotChainJob = transformJob;
             }
             // Assign transform result from db target.
             snapshot.feedTransformResult = dbTarget.feedTransformResult;
             // If the user has selected to create a new version from the resulting snapshot, do so here.
             if (rules.createNewVersion) {
-                addNextJob(new CreateFeedVersionFromSnapshotJob(feedSource, snapshot, owner));
+                MonitorableJob createVersionJob = new CreateFeedVersionFromSnapshotJob(feedSource, snapshot, owner);
+                addSubJob(createVersionJob, snapshotChainJob);
+                // Auto-deploy should pick up the new version.
+                lastVersionJob = createVersionJob;
             }
         }
 
@@ -148,7 +202,7 @@ public class ProcessSingleFeedJob extends FeedVersionJob {
                         )
                 )
         ) {
-            addNextJob(new AutoDeployJob(feedSource.retrieveProject(), owner));
+            addSubJob(new AutoDeployJob(feedSource.retrieveProject(), owner), lastVersionJob);
         }
 
         // If auto-publish is enabled for a feed source and not disabled (it should be disabled on developer machines),
@@ -159,8 +213,36 @@ public class ProcessSingleFeedJob extends FeedVersionJob {
                 feedSource.autoPublish &&
                 feedVersion.retrievalMethod == FeedRetrievalMethod.FETCHED_AUTOMATICALLY
         ) {
-            addNextJob(new AutoPublishJob(feedSource, owner));
+            // Auto-publish publishes the feed source's latest version, so (like auto-deploy) it must wait for any version
+            // created from the snapshot chain.
+            addSubJob(new AutoPublishJob(feedSource, owner), lastVersionJob);
+        }
+    }
+
+    /**
+     * If processing is cancelled before the new version has been stored, remove the loaded namespace and the GTFS file
+     * (a version that has already been stored is left as is). Note: only what this job created is removed, because
+     * {@link FeedVersion#delete} also updates the feed source and deployments, which are unaware of the version.
+     */
+    @Override
+    protected void cleanUpAfterCancellation() {
+        if (isNewVersion && Persistence.feedVersions.getById(feedVersion.id) == null) {
+            LOG.info("Removing partially processed version {} after cancellation.", feedVersion.id);
+            if (feedVersion.namespace != null) {
+                try {
+                    GTFS.delete(feedVersion.namespace, DataManager.GTFS_DATA_SOURCE);
+                } catch (Exception e) {
+                    LOG.error("Could not drop namespace {} of cancelled version", feedVersion.namespace, e);
+                }
+            }
+            try {
+                FeedVersion.feedStore.deleteFeed(feedVersion.id);
+            } catch (Exception e) {
+                LOG.error("Could not delete GTFS file of cancelled version {}", feedVersion.id, e);
+            }
+            Persistence.validationResults.delete(feedVersion.id);
         }
+        FeedProcessingCheckpoint.remove(feedVersion.id);
     }
 
     /**
@@ -168,6 +250,7 @@ public class ProcessSingleFeedJob extends FeedVersionJob {
      */
     @Override
     public void jobFinished() {
+        FeedProcessingCheckpoint.remove(feedVersion.id);
         if (!status.error) {
             status.completeSuccessfully("New version saved.");
         } else {
@@ -0,0 +1,114 @@
+package com.conveyal.datatools.manager.jobs;
+
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.FeedVersion;
+import com.conveyal.datatools.manager.persistence.BulkWriter;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.persistence.ValidationResultStore;
+import com.conveyal.gtfs.validator.ValidationResult;
+import org.apache.commons.io.FileUtils;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Updates.set;
+
+/**
+ * Migrates feed versions validated before validation results were stored separately (see
+ * {@link ValidationResultStore}): the full result embedded in each version is copied to the validation result store
+ * and replaced with a compact copy. Versions that are already compact are skipped, so this can safely be run again
+ * (e.g., if it was interrupted).
+ *
+ * The space reclaimed from the feed version documents is reported in the job status. Note: MongoDB reuses the freed
+ * space for new documents but only returns it to the operating system once the collection is compacted.
+ */
+public class StoreValidationResultsJob extends MonitorableJob {
+    private static final Logger LOG = LoggerFactory.getLogger(StoreValidationResultsJob.class);
+
+    public int migratedCount;
+    public int skippedCount;
+    /** Total size in bytes of the migrated results when they were embedded in the feed versions. */
+    public long embeddedBytesBefore;
+    /** Total size in bytes of the compact results now embedded in the feed versions. */
+    public long embeddedBytesAfter;
+    /** Total compressed size in bytes of the migrated results in the validation result store. */
+    public long storedBytes;
+
+    public StoreValidationResultsJob(Auth0UserProfile owner) {
+        super(owner, "Moving validation results out of feed versions", JobType.STORE_VALIDATION_RESULTS);
+    }
+
+    @Override
+    public void jobLogic() {
+        ValidationResultStore store = Persistence.validationResults;
+        Bson filter = exists("validationResult");
+        long total = Persistence.feedVersions.count(filter);
+        int processed = 0;
+        try (
+            Stream<FeedVersion> versions = Persistence.feedVersions.stream(filter);
+            BulkWriter<FeedVersion> writer = Persistence.feedVersions.bulkWriter()
+        ) {
+            Iterator<FeedVersion> iterator = versions.iterator();
+            while (iterator.hasNext()) {
+                FeedVersion version = iterator.next();
+                processed++;
+                ValidationResult result = version.validationResult;
+                if (result == null || store.isCompact(result)) {
+                    skippedCount++;
+                    continue;
+                }
+                // Store the full result before removing it from the version, so that nothing is lost if the job is
+                // interrupted in between.
+                storedBytes += store.store(version.id, result);
+                ValidationResult compactResult = store.compact(result);
+                embeddedBytesBefore += store.encodedSize(result);
+                embeddedBytesAfter += store.encodedSize(compactResult);
+                // Only update the validation result field to avoid overwriting concurrent changes to the version.
+                writer.updateOne(version.id, set("validationResult", compactResult));
+                migratedCount++;
+                if (processed % 100 == 0) {
+                    status.update(
+                        String.format("Moved %d of %d validation results", migratedCount, total),
+                        processed * 100.0 / total
+                    );
+                }
+            }
+        }
+        LOG.info(
+            "Moved {} validation results ({} skipped). Embedded size reduced from {} to {} bytes ({} bytes compressed in store).",
+            migratedCount,
+            skippedCount,
+            embeddedBytesBefore,
+            embeddedBytesAfter,
+            storedBytes
+        );
+        status.completeSuccessfully(String.format(
+            "Moved %d validation results, reclaiming %s from feed versions.",
+            migratedCount,
+            FileUtils.byteCountToDisplaySize(getReclaimedBytes())
+        ));
+    }
+
+    /** The job skips versions that have already been migrated, so it can simply be run again after a restart. */
+    @Override
+    public Map<String, String> retrieveRecoveryParameters() {
+        return Collections.emptyMap();
+    }
+
+    /** @return the reduction in size of the feed version documents. */
+    public long getReclaimedBytes() {
+        return embeddedBytesBefore - embeddedBytesAfter;
+    }
+
+    /** @return the overall reduction in storage, accounting for the compressed results added to the store. */
+    public long getNetReclaimedBytes() {
+        return embeddedBytesBefore - embeddedBytesAfter - storedBytes;
+    }
+}
@@ -3,6 +3,9 @@ package com.conveyal.datatools.manager.jobs;
 import com.conveyal.datatools.common.status.FeedVersionJob;
 import com.conveyal.datatools.common.utils.Scheduler;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.Deployment;
+import com.conveyal.datatools.manager.models.FeedProcessingCheckpoint;
+import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.models.FeedVersion;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.conveyal.gtfs.validator.ValidationResult;
@@ -13,12 +16,18 @@ import org.slf4j.LoggerFactory;
 /**
  * This job handles the validation of a given feed version. If the version is not new, it will simply replace the
  * existing version with the version object that has updated validation info.
+ *
+ * If processing of the version is being resumed and the feed was already validated (see
+ * {@link FeedProcessingCheckpoint}), the stored validation result is used rather than validating again. If the new
+ * version was already stored before processing was interrupted, it is updated rather than created (and numbered) again.
  */
 public class ValidateFeedJob extends FeedVersionJob {
     public static final Logger LOG = LoggerFactory.getLogger(ValidateFeedJob.class);
 
     private FeedVersion feedVersion;
     private final boolean isNewVersion;
+    /** Whether processing of the version is being resumed from a checkpoint. */
+    private boolean isResumed;
 
     public ValidateFeedJob(FeedVersion version, Auth0UserProfile owner, boolean isNewVersion) {
         super(owner, "Validating Feed", JobType.VALIDATE_FEED);
@@ -30,7 +39,22 @@ public class ValidateFeedJob extends FeedVersionJob {
     @Override
     public void jobLogic () {
         LOG.info("Running ValidateFeedJob for {}", feedVersion.id);
+        // Only processing of a feed (see ProcessSingleFeedJob) records checkpoints.
+        FeedProcessingCheckpoint checkpoint = JobType.PROCESS_FEED.equals(parentJobType)
+            ? FeedProcessingCheckpoint.retrieve(feedVersion.id)
+            : null;
+        isResumed = checkpoint != null;
+        if (checkpoint != null) {
+            ValidationResult validationResult = checkpoint.retrieveValidationResult();
+            if (validationResult != null) {
+                LOG.info("Version {} was already validated, skipping validation", feedVersion.id);
+                feedVersion.validationResult = validationResult;
+                return;
+            }
+            checkpoint.recordValidationStarted();
+        }
         feedVersion.validate(status);
+        if (checkpoint != null && !status.error) checkpoint.recordValidated(feedVersion);
     }
 
     @Override
@@ -44,13 +68,25 @@ public class ValidateFeedJob extends FeedVersionJob {
                 // such as BuildTransportNetwork, to finish. If those subsequent jobs fail,
                 // the version won't get loaded into MongoDB (even though it exists in postgres).
                 feedVersion.storeUser(owner);
-                if (isNewVersion) {
+                feedVersion.storeValidationResult();
+                FeedVersion storedVersion = isNewVersion && isResumed
+                    ? Persistence.feedVersions.getById(feedVersion.id)
+                    : null;
+                if (storedVersion != null) {
+                    // The version was stored before processing was interrupted (e.g., during the sub-jobs that follow).
+                    LOG.info("Version {} was already stored, updating it", feedVersion.id);
+                    feedVersion.version = storedVersion.version;
+                    Persistence.feedVersions.replace(feedVersion.id, feedVersion);
+                } else if (isNewVersion) {
                     int count = feedVersion.parentFeedSource().feedVersionCount();
                     feedVersion.version = count + 1;
                     Persistence.feedVersions.create(feedVersion);
                 } else {
                     Persistence.feedVersions.replace(feedVersion.id, feedVersion);
+                    // The version's bounds may have changed, so deployments containing it must recompute theirs.
+                    Deployment.clearBoundsCache(feedVersion.id);
                 }
+                FeedSource.updateVersionSummary(feedVersion.feedSourceId);
                 // Schedule expiration notification jobs.
                 Scheduler.scheduleExpirationNotifications(feedVersion.parentFeedSource());
             }
@@ -80,6 +116,16 @@ public class ValidateFeedJob extends FeedVersionJob {
         return feedVersion.parentFeedSource().id;
     }
 
+    @Override
+    public String retrieveDeduplicationKey() {
+        return String.join(":", type.name(), feedVersion.id);
+    }
+
+    @Override
+    public long retrieveMemoryEstimate() {
+        return feedVersion.retrieveMemoryEstimate();
+    }
+
     /**
      * Getter that returns the validationResult so that once the job finishes, the client can optionally provide
      * directions to users based on the success of the validation or other validation data (e.g., "The feed you have
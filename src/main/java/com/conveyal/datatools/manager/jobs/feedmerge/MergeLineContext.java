@@ -42,6 +42,8 @@ public class MergeLineContext {
     protected static final String ROUTE_ID = "route_id";
     protected static final String ROUTE_SHORT_NAME = "route_short_name";
     private static final Logger LOG = LoggerFactory.getLogger(MergeLineContext.class);
+    /** Number of rows between cancellation checks (see {@link #iterateOverRows}). */
+    private static final int CANCELLATION_CHECK_INTERVAL = 10000;
     protected final MergeFeedsJob job;
     private final ZipOutputStream out;
     private final Set<Field> allFields;
@@ -202,6 +204,8 @@ public class MergeLineContext {
     public boolean iterateOverRows() throws IOException {
         // Iterate over rows in table, writing them to the out file.
         while (csvReader.readRecord()) {
+            // Check for cancellation periodically, since large tables (e.g., stop_times) can take a long time to merge.
+            if (lineNumber % CANCELLATION_CHECK_INTERVAL == 0) job.checkCancelled();
             startNewRow();
 
             if (!shouldProcessRows()) {
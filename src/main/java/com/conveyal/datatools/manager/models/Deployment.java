@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.io.ByteStreams;
 import com.mongodb.client.FindIterable;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,13 +42,25 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.unset;
 
 /**
  * A deployment of (a given version of) OTP on a given set of feeds.
@@ -91,19 +104,50 @@ public class Deployment extends Model implements Serializable {
     /** Feed versions that are production ready and should not be replaced by newer versions. */
     public List<String> pinnedfeedVersionIds = new ArrayList<>();
 
+    /**
+     * Union of the bounds of the feed versions in this deployment, stored so that {@link #retrieveProjectBounds} does
+     * not need to load every version each time the deployment is serialized (see {@link #retrieveFeedVersionBounds}).
+     */
+    @JsonIgnore
+    public BoundsCache boundsCache;
+
     /** All of the feed versions used in this deployment */
     public List<FeedVersion> retrieveFullFeedVersions() {
-        ArrayList<FeedVersion> ret = new ArrayList<>(feedVersionIds.size());
-
-        for (String id : feedVersionIds) {
-            FeedVersion v = Persistence.feedVersions.getById(id);
-            if (v != null)
-                ret.add(v);
-            else
-                LOG.error("Reference integrity error for deployment {} ({}), feed version {} does not exist", this.name, this.id, id);
-        }
+        return resolveFeedVersions(feedVersionIds, null);
+    }
 
-        return ret;
+    /**
+     * Load the feed versions for the IDs with a single $in query (rather than one query per ID) and return them in the
+     * same order as the IDs. IDs that do not match a stored version are logged as reference integrity errors and
+     * skipped.
+     * @param projection the fields to load (see {@link FeedVersion#SUMMARY_PROJECTION}) or null to load full versions
+     */
+    private List<FeedVersion> resolveFeedVersions(Collection<String> ids, Bson projection) {
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<FeedVersion> foundVersions = projection != null
+            ? Persistence.feedVersions.getByIds(distinctIds, projection)
+            : Persistence.feedVersions.getByIds(distinctIds);
+        Map<String, FeedVersion> versionsById = new HashMap<>();
+        foundVersions.forEach(version -> versionsById.put(version.id, version));
+
+        List<FeedVersion> versions = new ArrayList<>(ids.size());
+        List<String> missingIds = new ArrayList<>();
+        for (String id : ids) {
+            FeedVersion version = versionsById.get(id);
+            if (version != null) versions.add(version);
+            else missingIds.add(id);
+        }
+        if (!missingIds.isEmpty()) {
+            // should never happen but can if someone monkeyed around with dump/restore
+            LOG.error(
+                "Reference integrity error for deployment {} ({}), feed versions {} do not exist",
+                this.name,
+                this.id,
+                missingIds
+            );
+        }
+        return versions;
     }
 
     /** Retrieve all of the pinned feed versions used in this deployment. */
@@ -119,22 +163,8 @@ public class Deployment extends Model implements Serializable {
 
     /** Retrieve all of the summarized feed versions used in this deployment. */
     private List<SummarizedFeedVersion> retrieveSummarizedFeedVersions(Collection<String> feedVersionIds) {
-        // return empty array if feedVersionIds is null
-        if (feedVersionIds == null) return new ArrayList<>();
-
-        ArrayList<SummarizedFeedVersion> ret = new ArrayList<>(feedVersionIds.size());
-
-        for (String id : feedVersionIds) {
-            FeedVersion v = Persistence.feedVersions.getById(id);
-
-            // should never happen but can if someone monkeyed around with dump/restore
-            if (v != null)
-                ret.add(new SummarizedFeedVersion(Persistence.feedVersions.getById(id)));
-            else
-                LOG.error("Reference integrity error for deployment {} ({}), feed version {} does not exist", this.name, this.id, id);
-        }
-
-        return ret;
+        // Only the summary fields are needed, so avoid loading the full validation result.
+        return SummarizedFeedVersion.summarize(resolveFeedVersions(feedVersionIds, FeedVersion.SUMMARY_PROJECTION));
     }
 
     /** Fetch ec2 instances tagged with this deployment's ID. */
@@ -517,31 +547,9 @@ public class Deployment extends Model implements Serializable {
             return project.bounds.toRectangle2D();
         }
 
-        List<SummarizedFeedVersion> versions = retrieveFeedVersions();
-
-        if (versions.size() == 0)
-            return null;
-
-        Rectangle2D bounds = new Rectangle2D.Double();
-        boolean boundsSet = false;
-
-        // i = 1 because we've already included bounds 0
-        for (int i = 0; i < versions.size(); i++) {
-            SummarizedFeedVersion version = versions.get(i);
-
-            // set version bounds from validation result
-            if (version.boundsAreValid()) {
-                if (!boundsSet) {
-                    // set the bounds, don't expand the null bounds
-                    bounds.setRect(versions.get(0).validationResult.bounds.toRectangle2D());
-                    boundsSet = true;
-                } else {
-                    bounds.add(version.validationResult.bounds.toRectangle2D());
-                }
-            } else {
-                LOG.warn("Feed version {} has no bounds", version.id);
-            }
-        }
+        Bounds feedVersionBounds = retrieveFeedVersionBounds();
+        if (feedVersionBounds == null) return null;
+        Rectangle2D bounds = feedVersionBounds.toRectangle2D();
 
         // expand the bounds by (about) 10 km in every direction
         double degreesPerKmLat = 360D / 40008;
@@ -573,6 +581,83 @@ public class Deployment extends Model implements Serializable {
         return bounds;
     }
 
+    /**
+     * Get the union of the bounds of the feed versions in this deployment (or null if none of the versions have valid
+     * bounds). This is read from {@link #boundsCache}, which is stored whenever the deployment's versions are written
+     * (see {@link #storeBoundsCache}). If the stored bounds are out of date (e.g., for deployments stored before the
+     * bounds were), they are computed without being stored, because this is called while serializing the deployment.
+     */
+    public Bounds retrieveFeedVersionBounds() {
+        return boundsCacheIsCurrent() ? boundsCache.bounds : computeBoundsCache().bounds;
+    }
+
+    private Set<String> currentFeedVersionIds() {
+        return feedVersionIds != null ? new HashSet<>(feedVersionIds) : new HashSet<>();
+    }
+
+    private boolean boundsCacheIsCurrent() {
+        return boundsCache != null && currentFeedVersionIds().equals(boundsCache.feedVersionIds);
+    }
+
+    /**
+     * Compute the union of the bounds of the feed versions in this deployment. If versions have only been added since
+     * the bounds were stored, just the added versions are loaded and merged into the stored bounds.
+     */
+    private BoundsCache computeBoundsCache() {
+        Set<String> currentIds = currentFeedVersionIds();
+        Rectangle2D bounds = null;
+        Set<String> idsToLoad = currentIds;
+        if (boundsCache != null && currentIds.containsAll(boundsCache.feedVersionIds)) {
+            // Versions have only been added, so start from the stored bounds.
+            if (boundsCache.bounds != null) bounds = boundsCache.bounds.toRectangle2D();
+            idsToLoad = new HashSet<>(currentIds);
+            idsToLoad.removeAll(boundsCache.feedVersionIds);
+        }
+        List<FeedVersion> versions = idsToLoad.isEmpty()
+            ? new ArrayList<>()
+            : Persistence.feedVersions.getByIds(new ArrayList<>(idsToLoad), FeedVersion.SUMMARY_PROJECTION);
+        for (FeedVersion version : versions) {
+            Bounds versionBounds = version.validationResult != null && version.validationResult.fullBounds != null
+                ? version.validationSummary().bounds
+                : null;
+            if (versionBounds != null && versionBounds.areValid()) {
+                if (bounds == null) bounds = versionBounds.toRectangle2D();
+                else bounds.add(versionBounds.toRectangle2D());
+            } else {
+                LOG.warn("Feed version {} has no bounds", version.id);
+            }
+        }
+
+        return new BoundsCache(bounds != null ? new Bounds(bounds) : null, currentIds);
+    }
+
+    /**
+     * Store the union of the bounds of this deployment's feed versions in {@link #boundsCache}, unless it is already
+     * up to date. This should be called whenever the deployment's feed version IDs are written.
+     */
+    public void storeBoundsCache() {
+        if (boundsCacheIsCurrent()) return;
+        boundsCache = computeBoundsCache();
+        // Set the field directly so that the deployment's lastUpdated timestamp is not modified.
+        Persistence.deployments.updateMany(eq(this.id), set("boundsCache", boundsCache));
+    }
+
+    /** Store the bounds (see {@link #storeBoundsCache}) of each deployment matching the filter. */
+    public static void storeBoundsCaches(Bson filter) {
+        try (Stream<Deployment> deployments = Persistence.deployments.stream(filter)) {
+            deployments.forEach(Deployment::storeBoundsCache);
+        }
+    }
+
+    /**
+     * Recompute the stored bounds for all deployments that contain the feed version. This should be called when the
+     * version's validation result (and therefore its bounds) changes.
+     */
+    public static void clearBoundsCache(String feedVersionId) {
+        Persistence.deployments.updateMany(eq("feedVersionIds", feedVersionId), unset("boundsCache"));
+        storeBoundsCaches(eq("feedVersionIds", feedVersionId));
+    }
+
     /**
      * Get the deployments currently deployed to a particular server and router combination.
      */
@@ -609,15 +694,60 @@ public class Deployment extends Model implements Serializable {
         public SummarizedFeedVersion() { }
 
         public SummarizedFeedVersion (FeedVersion version) {
+            this(version, version.parentFeedSource(), version.previousVersionId(), version.nextVersionId());
+        }
+
+        private SummarizedFeedVersion (
+            FeedVersion version,
+            FeedSource feedSource,
+            String previousVersionId,
+            String nextVersionId
+        ) {
             this.validationResult = new FeedValidationResultSummary(version);
-            this.feedSource = version.parentFeedSource();
+            this.feedSource = feedSource;
             this.updated = version.updated;
             this.id = version.id;
-            this.nextVersionId = version.nextVersionId();
-            this.previousVersionId = version.previousVersionId();
+            this.nextVersionId = nextVersionId;
+            this.previousVersionId = previousVersionId;
             this.version = version.version;
         }
 
+        /**
+         * Summarize the feed versions using two queries in total (one for the parent feed sources and one for the IDs
+         * of the previous/next versions), rather than three queries per version.
+         */
+        public static List<SummarizedFeedVersion> summarize(List<FeedVersion> versions) {
+            if (versions.isEmpty()) return new ArrayList<>();
+            List<String> feedSourceIds = versions.stream()
+                .map(v -> v.feedSourceId)
+                .distinct()
+                .collect(Collectors.toList());
+            Map<String, FeedSource> feedSourcesById = new HashMap<>();
+            Persistence.feedSources.getByIds(feedSourceIds).forEach(fs -> feedSourcesById.put(fs.id, fs));
+
+            // Find the IDs of the adjacent versions, keyed on feed source ID and version number.
+            List<Bson> adjacentVersionFilters = versions.stream()
+                .map(v -> and(eq("feedSourceId", v.feedSourceId), in("version", v.version - 1, v.version + 1)))
+                .collect(Collectors.toList());
+            Map<String, String> versionIdsByNumber = new HashMap<>();
+            Persistence.feedVersions
+                .getFiltered(or(adjacentVersionFilters), include("feedSourceId", "version"))
+                .forEach(v -> versionIdsByNumber.put(versionKey(v.feedSourceId, v.version), v.id));
+
+            return versions.stream()
+                .map(v -> new SummarizedFeedVersion(
+                    v,
+                    feedSourcesById.get(v.feedSourceId),
+                    versionIdsByNumber.get(versionKey(v.feedSourceId, v.version - 1)),
+                    versionIdsByNumber.get(versionKey(v.feedSourceId, v.version + 1))
+                ))
+                .collect(Collectors.toList());
+        }
+
+        private static String versionKey(String feedSourceId, int version) {
+            return feedSourceId + ":" + version;
+        }
+
         /**
          * Determine if the bounds for the summary version exist and are valid.
          */
@@ -626,6 +756,25 @@ public class Deployment extends Model implements Serializable {
         }
     }
 
+    /**
+     * Stored union of feed version bounds (see {@link #retrieveFeedVersionBounds}).
+     */
+    public static class BoundsCache implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /** Null if none of the versions have valid bounds. */
+        public Bounds bounds;
+        /** The feed versions the bounds were computed from. */
+        public Set<String> feedVersionIds = new HashSet<>();
+
+        /** No-arg constructor for de-/serialization. */
+        public BoundsCache() { }
+
+        BoundsCache(Bounds bounds, Set<String> feedVersionIds) {
+            this.bounds = bounds;
+            this.feedVersionIds = feedVersionIds;
+        }
+    }
+
     public enum TripPlannerVersion {
         OTP_1, OTP_2
     }
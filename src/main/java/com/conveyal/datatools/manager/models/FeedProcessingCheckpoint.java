@@ -0,0 +1,172 @@
+package com.conveyal.datatools.manager.models;
+
+import com.conveyal.datatools.manager.DataManager;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.gtfs.validator.ValidationResult;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.mongodb.MongoException;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.set;
+
+/**
+ * Progress of processing a feed version (see {@link com.conveyal.datatools.manager.jobs.ProcessSingleFeedJob}),
+ * recorded in MongoDB so that processing interrupted by a restart can be resumed rather than started over. The ID is
+ * the feed version ID.
+ *
+ * The checkpoint holds a copy of the feed version, because a new version is only stored once it has been validated,
+ * and records when each stage finished:
+ * - load: the version's namespace was fully loaded into the GTFS database. When resumed, the load is skipped as long as
+ *   the namespace still exists.
+ * - validation: the full validation result was stored (see {@link Persistence#validationResults}). When resumed, the
+ *   stored result is used instead of validating again.
+ * Validation writes its errors into the namespace, so if validation was interrupted partway the namespace is dropped
+ * and the feed is loaded again from scratch. A new version that was already stored before processing was interrupted
+ * (e.g., during the sub-jobs that follow validation) is updated rather than created again (see
+ * {@link com.conveyal.datatools.manager.jobs.ValidateFeedJob}).
+ *
+ * The checkpoint is created when the job is recorded for recovery or offloaded to a worker (see
+ * {@link com.conveyal.datatools.common.status.MonitorableJob#saveRecoveryState}) and is removed once the version has
+ * been stored, processing has failed or been cancelled, or the job will not be run (again).
+ */
+public class FeedProcessingCheckpoint extends Model {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = LoggerFactory.getLogger(FeedProcessingCheckpoint.class);
+
+    /** The feed version as of the last finished stage. */
+    public FeedVersion feedVersion;
+    public boolean isNewVersion;
+    public Date loadedAt;
+    public Date validationStartedAt;
+    public Date validatedAt;
+
+    /** Used by the MongoDB codec. */
+    public FeedProcessingCheckpoint() { }
+
+    private FeedProcessingCheckpoint(FeedVersion feedVersion, boolean isNewVersion) {
+        this.id = feedVersion.id;
+        this.feedVersion = feedVersion;
+        this.isNewVersion = isNewVersion;
+    }
+
+    /**
+     * Record the start of processing for the version, unless processing has already started (e.g., it is being
+     * resumed).
+     * @return the checkpoint, or null if it could not be recorded (in which case processing cannot be resumed)
+     */
+    public static FeedProcessingCheckpoint start(FeedVersion feedVersion, boolean isNewVersion) {
+        try {
+            FeedProcessingCheckpoint checkpoint = Persistence.feedProcessingCheckpoints.getById(feedVersion.id);
+            if (checkpoint == null) {
+                checkpoint = new FeedProcessingCheckpoint(feedVersion, isNewVersion);
+                Persistence.feedProcessingCheckpoints.create(checkpoint);
+            }
+            return checkpoint;
+        } catch (MongoException e) {
+            LOG.warn("Could not record checkpoint for version {} (processing will not be resumable)", feedVersion.id, e);
+            return null;
+        }
+    }
+
+    /** @return the checkpoint for the version, or null if processing has not started or is no longer resumable. */
+    public static FeedProcessingCheckpoint retrieve(String feedVersionId) {
+        return Persistence.feedProcessingCheckpoints.getById(feedVersionId);
+    }
+
+    /** Remove the checkpoint (if any) once processing has finished, failed or been cancelled. */
+    public static void remove(String feedVersionId) {
+        try {
+            if (retrieve(feedVersionId) != null) Persistence.feedProcessingCheckpoints.removeById(feedVersionId);
+        } catch (MongoException e) {
+            LOG.warn("Could not remove checkpoint for version {}", feedVersionId, e);
+        }
+    }
+
+    /**
+     * @return whether validation of the loaded namespace started but did not finish, in which case the namespace holds
+     * partial validation results and must be loaded again (see {@link com.conveyal.datatools.manager.jobs.LoadFeedJob})
+     */
+    @JsonIgnore @BsonIgnore
+    public boolean isValidationInterrupted() {
+        return loadedAt != null && validationStartedAt != null && validatedAt == null;
+    }
+
+    /** @return whether the version's namespace was fully loaded (and not partially validated) and still exists. */
+    @JsonIgnore @BsonIgnore
+    public boolean isLoaded() {
+        return loadedAt != null &&
+            !isValidationInterrupted() &&
+            feedVersion.namespace != null &&
+            namespaceExists(feedVersion.namespace);
+    }
+
+    /** Record that the version's namespace has been loaded (see {@link FeedVersion#load}). */
+    public void recordLoaded(FeedVersion version) {
+        feedVersion = version;
+        loadedAt = new Date();
+        validationStartedAt = null;
+        validatedAt = null;
+        try {
+            Persistence.feedProcessingCheckpoints.replace(id, this);
+        } catch (MongoException e) {
+            LOG.warn("Could not update checkpoint for version {}", id, e);
+        }
+    }
+
+    public void recordValidationStarted() {
+        validationStartedAt = new Date();
+        update(set("validationStartedAt", validationStartedAt));
+    }
+
+    /** Record that the version has been validated, storing the full validation result. */
+    public void recordValidated(FeedVersion version) {
+        Persistence.validationResults.store(id, version.validationResult);
+        validatedAt = new Date();
+        update(set("validatedAt", validatedAt));
+    }
+
+    /**
+     * @return the stored validation result if the version was validated (and its namespace is still loaded), or null
+     * if it must be validated.
+     */
+    public ValidationResult retrieveValidationResult() {
+        if (validatedAt == null || !isLoaded()) return null;
+        return Persistence.validationResults.retrieve(id);
+    }
+
+    /** Failures to record a checkpoint are logged rather than thrown, because they only affect resuming. */
+    private void update(Bson update) {
+        try {
+            Persistence.feedProcessingCheckpoints.updateMany(eq(id), update);
+        } catch (MongoException e) {
+            LOG.warn("Could not update checkpoint for version {}", id, e);
+        }
+    }
+
+    private static boolean namespaceExists(String namespace) {
+        try (
+            Connection connection = DataManager.GTFS_DATA_SOURCE.getConnection();
+            PreparedStatement statement = connection.prepareStatement(
+                "select schema_name from information_schema.schemata where schema_name = ?"
+            )
+        ) {
+            statement.setString(1, namespace);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            LOG.warn("Could not check whether namespace {} exists", namespace, e);
+            return false;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.conveyal.datatools.common.status.FeedSourceJob;
 import com.conveyal.datatools.common.status.MonitorableJob;
 import com.conveyal.datatools.common.utils.Scheduler;
 import com.conveyal.datatools.common.utils.aws.CheckedAWSException;
@@ -16,6 +15,7 @@ import com.conveyal.datatools.manager.jobs.MergeFeedsJob;
 import com.conveyal.datatools.manager.jobs.ProcessSingleFeedJob;
 import com.conveyal.datatools.manager.models.transform.FeedTransformRules;
 import com.conveyal.datatools.manager.models.transform.FeedTransformation;
+import com.conveyal.datatools.manager.persistence.BulkWriter;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.conveyal.datatools.manager.utils.JobUtils;
 import com.conveyal.datatools.manager.utils.connections.ConnectionResponse;
@@ -28,6 +28,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.model.Sorts;
+import org.bson.Document;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
@@ -35,24 +36,35 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.conveyal.datatools.manager.models.FeedRetrievalMethod.FETCHED_AUTOMATICALLY;
 import static com.conveyal.datatools.manager.utils.StringUtils.getCleanName;
+import static com.mongodb.client.model.Accumulators.first;
+import static com.mongodb.client.model.Accumulators.sum;
+import static com.mongodb.client.model.Aggregates.group;
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Aggregates.project;
+import static com.mongodb.client.model.Aggregates.sort;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.include;
 import static com.mongodb.client.model.Updates.pull;
+import static com.mongodb.client.model.Updates.set;
 
 /**
  * Created by demory on 3/22/16.
@@ -135,10 +147,14 @@ public class FeedSource extends Model implements Cloneable {
     public Date lastFetched;
 
     /**
-     * When was this feed last updated?
-     * FIXME: this is currently dynamically determined by lastUpdated() with calls retrieveLatest().
+     * Summary of this feed source's versions (count, latest version, last updated), denormalized onto the feed source
+     * so that the JSON getters below do not need to query the versions. This is maintained by
+     * {@link #updateVersionSummary} whenever a version is created, re-validated or deleted and can be rebuilt for all
+     * feed sources with {@link #rebuildVersionSummaries}. If null (e.g., for a feed source stored before this field
+     * existed), the values are computed from the versions instead.
      */
-//    public transient Date lastUpdated;
+    @JsonIgnore
+    public VersionSummary versionSummary;
 
     /**
      * From whence is this feed fetched?
@@ -175,6 +191,27 @@ public class FeedSource extends Model implements Cloneable {
 
     public String editorNamespace;
 
+    /**
+     * Whether the latest version, published version and external properties have been pre-fetched in bulk via
+     * {@link #prefetchListingData}. When true, the JSON getters below use the pre-fetched values rather than querying
+     * MongoDB for each feed source. These values are never persisted.
+     */
+    @JsonIgnore
+    @BsonIgnore
+    private transient boolean listingDataPrefetched;
+
+    @JsonIgnore
+    @BsonIgnore
+    private transient FeedVersion prefetchedLatestVersion;
+
+    @JsonIgnore
+    @BsonIgnore
+    private transient FeedVersion prefetchedPublishedVersion;
+
+    @JsonIgnore
+    @BsonIgnore
+    private transient Map<String, Map<String, String>> prefetchedExternalProperties;
+
     /**
      * Create a new feed.
      */
@@ -445,11 +482,26 @@ public class FeedSource extends Model implements Cloneable {
         return publishedVersion;
     }
 
+    /**
+     * Latest version for use in JSON getters. This uses the pre-fetched value if {@link #prefetchListingData} has been
+     * called for this feed source, which avoids repeating the same sorted query for each getter.
+     */
+    private FeedVersion latestVersionForListing() {
+        return listingDataPrefetched ? prefetchedLatestVersion : retrieveLatest();
+    }
+
+    /**
+     * Published version for use in JSON getters (see {@link #latestVersionForListing}).
+     */
+    private FeedVersion publishedVersionForListing() {
+        return listingDataPrefetched ? prefetchedPublishedVersion : retrievePublishedVersion();
+    }
+
     @JsonInclude(JsonInclude.Include.NON_NULL)
     @JsonView(JsonViews.UserInterface.class)
     @JsonProperty("publishedValidationSummary")
     private FeedValidationResultSummary publishedValidationSummary() {
-        FeedVersion publishedVersion = retrievePublishedVersion();
+        FeedVersion publishedVersion = publishedVersionForListing();
         return publishedVersion != null ? new FeedValidationResultSummary(publishedVersion) : null;
     }
 
@@ -457,7 +509,8 @@ public class FeedSource extends Model implements Cloneable {
     @JsonView(JsonViews.UserInterface.class)
     @JsonProperty("latestVersionId")
     public String latestVersionId() {
-        FeedVersion latest = retrieveLatest();
+        if (versionSummary != null) return versionSummary.latestVersionId;
+        FeedVersion latest = latestVersionForListing();
         return latest != null ? latest.id : null;
     }
 
@@ -466,6 +519,7 @@ public class FeedSource extends Model implements Cloneable {
      */
     @BsonIgnore
     public long getVersionCount() {
+        if (versionSummary != null) return versionSummary.versionCount;
         return Persistence.feedVersions.count(eq("feedSourceId", this.id));
     }
 
@@ -479,7 +533,8 @@ public class FeedSource extends Model implements Cloneable {
     @JsonView(JsonViews.UserInterface.class)
     @JsonProperty("lastUpdated")
     public Date lastUpdated() {
-        FeedVersion latest = retrieveLatest();
+        if (versionSummary != null) return versionSummary.lastUpdated;
+        FeedVersion latest = latestVersionForListing();
         return latest != null ? latest.updated : null;
     }
 
@@ -488,7 +543,8 @@ public class FeedSource extends Model implements Cloneable {
     @JsonView(JsonViews.UserInterface.class)
     @JsonProperty("latestValidation")
     public FeedValidationResultSummary latestValidation() {
-        FeedVersion latest = retrieveLatest();
+        if (versionSummary != null) return versionSummary.latestValidation;
+        FeedVersion latest = latestVersionForListing();
         return latest != null ? new FeedValidationResultSummary(latest) : null;
     }
 
@@ -510,6 +566,7 @@ public class FeedSource extends Model implements Cloneable {
     @JsonView(JsonViews.UserInterface.class)
     @JsonProperty("externalProperties")
     public Map<String, Map<String, String>> externalProperties() {
+        if (listingDataPrefetched) return prefetchedExternalProperties;
 
         Map<String, Map<String, String>> resourceTable = new HashMap<>();
 
@@ -526,6 +583,166 @@ public class FeedSource extends Model implements Cloneable {
         return resourceTable;
     }
 
+    /**
+     * Pre-fetch the latest version, published version and external properties for a collection of feed sources (e.g.,
+     * all feed sources in a project) using a constant number of queries, rather than the several queries per feed
+     * source that would otherwise be issued while serializing each feed source to JSON. The fetched values are attached
+     * to each feed source and used by {@link #latestVersionId}, {@link #lastUpdated}, {@link #latestValidation},
+     * {@link #publishedValidationSummary} and {@link #externalProperties}.
+     */
+    public static void prefetchListingData(Collection<FeedSource> feedSources) {
+        if (feedSources.isEmpty()) return;
+        List<String> feedSourceIds = feedSources.stream().map(fs -> fs.id).collect(Collectors.toList());
+
+        // 1. Find the latest version for each feed source that does not have a denormalized version summary (those
+        // that do never need the latest version in the getters).
+        List<String> unsummarizedFeedSourceIds = feedSources.stream()
+            .filter(fs -> fs.versionSummary == null)
+            .map(fs -> fs.id)
+            .collect(Collectors.toList());
+        Map<String, FeedVersion> latestVersionByFeedSourceId = new HashMap<>();
+        if (!unsummarizedFeedSourceIds.isEmpty()) {
+            List<String> latestVersionIds = aggregateVersionsByFeedSource(in("feedSourceId", unsummarizedFeedSourceIds))
+                .values()
+                .stream()
+                .map(result -> result.getString("latestVersionId"))
+                .collect(Collectors.toList());
+            // Listings only need the summary fields of each version.
+            List<FeedVersion> latestVersions = Persistence.feedVersions.getByIds(
+                latestVersionIds,
+                FeedVersion.SUMMARY_PROJECTION
+            );
+            for (FeedVersion version : latestVersions) {
+                latestVersionByFeedSourceId.put(version.feedSourceId, version);
+            }
+        }
+
+        // 2. Fetch all published versions (publishedVersionId maps to the version's namespace).
+        List<String> publishedNamespaces = feedSources.stream()
+            .map(fs -> fs.publishedVersionId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        Map<String, FeedVersion> publishedVersionByNamespace = new HashMap<>();
+        if (!publishedNamespaces.isEmpty()) {
+            for (FeedVersion version : Persistence.feedVersions.getFiltered(
+                in("namespace", publishedNamespaces),
+                FeedVersion.SUMMARY_PROJECTION
+            )) {
+                publishedVersionByNamespace.put(version.namespace, version);
+            }
+        }
+
+        // 3. Fetch external properties for all feed sources and group by feed source and resource type.
+        Map<String, Map<String, Map<String, String>>> externalPropertiesByFeedSourceId = new HashMap<>();
+        if (!DataManager.feedResources.isEmpty()) {
+            Persistence.externalFeedSourceProperties
+                .getFiltered(and(
+                    in("feedSourceId", feedSourceIds),
+                    in("resourceType", DataManager.feedResources.keySet())
+                ))
+                .forEach(prop -> externalPropertiesByFeedSourceId
+                    .computeIfAbsent(prop.feedSourceId, id -> new HashMap<>())
+                    .computeIfAbsent(prop.resourceType, type -> new HashMap<>())
+                    .put(prop.name, prop.value)
+                );
+        }
+
+        // Attach pre-fetched values to each feed source.
+        for (FeedSource feedSource : feedSources) {
+            feedSource.prefetchedLatestVersion = latestVersionByFeedSourceId.get(feedSource.id);
+            feedSource.prefetchedPublishedVersion = feedSource.publishedVersionId != null
+                ? publishedVersionByNamespace.get(feedSource.publishedVersionId)
+                : null;
+            // Match the shape of the un-prefetched externalProperties (an entry for every registered resource type).
+            Map<String, Map<String, String>> resourceTable = new HashMap<>();
+            Map<String, Map<String, String>> foundProperties =
+                externalPropertiesByFeedSourceId.getOrDefault(feedSource.id, new HashMap<>());
+            for (String resourceType : DataManager.feedResources.keySet()) {
+                resourceTable.put(resourceType, foundProperties.getOrDefault(resourceType, new HashMap<>()));
+            }
+            feedSource.prefetchedExternalProperties = resourceTable;
+            feedSource.listingDataPrefetched = true;
+        }
+    }
+
+    /**
+     * Find the latest version ID and number of versions for each feed source with versions matching the filter using a
+     * single aggregation. Only the fields needed for sorting/grouping are passed through the pipeline so that large
+     * validation results do not count against the aggregation memory limit.
+     * @return results (with latestVersionId and versionCount fields) keyed on feed source ID
+     */
+    private static Map<String, Document> aggregateVersionsByFeedSource(Bson versionFilter) {
+        Map<String, Document> resultsByFeedSourceId = new HashMap<>();
+        Persistence.feedVersions.getMongoCollection()
+            .aggregate(Arrays.asList(
+                match(versionFilter),
+                project(include("feedSourceId", "version")),
+                sort(Sorts.descending("version")),
+                group("$feedSourceId", first("latestVersionId", "$_id"), sum("versionCount", 1))
+            ), Document.class)
+            .forEach((Consumer<Document>) doc -> resultsByFeedSourceId.put(doc.getString("_id"), doc));
+        return resultsByFeedSourceId;
+    }
+
+    /**
+     * Recompute the denormalized {@link #versionSummary} for the feed source from its versions and store it. This
+     * must be called whenever a version is created, re-validated or deleted. The summary is always rebuilt from the
+     * versions (rather than, e.g., incrementing the count) so that a missed or concurrent update is corrected by the
+     * next one.
+     */
+    public static void updateVersionSummary(String feedSourceId) {
+        FeedVersion latest = Persistence.feedVersions.getOneFiltered(
+            eq("feedSourceId", feedSourceId),
+            Sorts.descending("version"),
+            FeedVersion.SUMMARY_PROJECTION
+        );
+        long versionCount = Persistence.feedVersions.count(eq("feedSourceId", feedSourceId));
+        // Set the field directly (rather than with TypedPersistence#updateField) so that the feed source's own
+        // lastUpdated timestamp is not modified.
+        Persistence.feedSources.updateMany(
+            eq(feedSourceId),
+            set("versionSummary", new VersionSummary(versionCount, latest))
+        );
+    }
+
+    /**
+     * Rebuild the denormalized {@link #versionSummary} for all feed sources (or only those that do not have one yet)
+     * using one aggregation over the versions and bulk writes. This repairs any summaries that have drifted and
+     * populates summaries for feed sources created before they existed.
+     * @return the number of feed sources updated
+     */
+    public static int rebuildVersionSummaries(boolean onlyMissing) {
+        List<String> feedSourceIds = Persistence.feedSources.getMongoCollection()
+            .find(onlyMissing ? eq("versionSummary", null) : new Document())
+            .projection(include("_id"))
+            .map(feedSource -> feedSource.id)
+            .into(new ArrayList<>());
+        if (feedSourceIds.isEmpty()) return 0;
+        LOG.info("Rebuilding version summaries for {} feed sources", feedSourceIds.size());
+        Map<String, Document> versionsByFeedSourceId = aggregateVersionsByFeedSource(
+            onlyMissing ? in("feedSourceId", feedSourceIds) : new Document()
+        );
+        Map<String, FeedVersion> latestVersionsById = new HashMap<>();
+        List<String> latestVersionIds = versionsByFeedSourceId.values().stream()
+            .map(result -> result.getString("latestVersionId"))
+            .collect(Collectors.toList());
+        Persistence.feedVersions.getByIds(latestVersionIds, FeedVersion.SUMMARY_PROJECTION)
+            .forEach(version -> latestVersionsById.put(version.id, version));
+        try (BulkWriter<FeedSource> writer = Persistence.feedSources.bulkWriter()) {
+            for (String feedSourceId : feedSourceIds) {
+                Document versions = versionsByFeedSourceId.get(feedSourceId);
+                VersionSummary summary = versions == null
+                    ? new VersionSummary(0, null)
+                    : new VersionSummary(
+                        versions.getInteger("versionCount"),
+                        latestVersionsById.get(versions.getString("latestVersionId"))
+                    );
+                writer.updateOne(feedSourceId, set("versionSummary", summary));
+            }
+        }
+        return feedSourceIds.size();
+    }
+
     /**
      * Find all project feed sources that contain the label and remove label from list.
      */
@@ -549,7 +766,7 @@ public class FeedSource extends Model implements Cloneable {
      */
     @JsonIgnore
     public Collection<FeedVersionSummary> retrieveFeedVersionSummaries() {
-        return Persistence.feedVersionSummaries.getFiltered(eq("feedSourceId", this.id));
+        return Persistence.feedVersionSummaries.getFiltered(eq("feedSourceId", this.id), FeedVersionSummary.PROJECTION);
     }
 
     /**
@@ -571,7 +788,7 @@ public class FeedSource extends Model implements Cloneable {
     }
 
     public int feedVersionCount() {
-        return retrieveFeedVersions().size();
+        return (int) getVersionCount();
     }
 
     @JsonView(JsonViews.UserInterface.class)
@@ -648,11 +865,13 @@ public class FeedSource extends Model implements Cloneable {
         int i = 1;
         FindIterable<FeedVersion> orderedFeedVersions = Persistence.feedVersions.getMongoCollection()
                 .find(eq("feedSourceId", this.id))
+                .projection(include("_id"))
                 .sort(Sorts.ascending("updated"));
-        for (FeedVersion feedVersion : orderedFeedVersions) {
-            // Yes it's ugly to pass in a string, but we need to change the parameter type of update to take a Document.
-            Persistence.feedVersions.update(feedVersion.id, String.format("{version:%d}", i));
-            i += 1;
+        try (BulkWriter<FeedVersion> writer = Persistence.feedVersions.bulkWriter()) {
+            for (FeedVersion feedVersion : orderedFeedVersions) {
+                writer.updateField(feedVersion.id, "version", i);
+                i += 1;
+            }
         }
     }
 
@@ -662,11 +881,13 @@ public class FeedSource extends Model implements Cloneable {
         int i = 1;
         FindIterable<Snapshot> orderedSnapshots = Persistence.snapshots.getMongoCollection()
                 .find(eq(Snapshot.FEED_SOURCE_REF, this.id))
+                .projection(include("_id"))
                 .sort(Sorts.ascending("snapshotTime"));
-        for (Snapshot snapshot : orderedSnapshots) {
-            // Yes it's ugly to pass in a string, but we need to change the parameter type of update to take a Document.
-            Persistence.snapshots.updateField(snapshot.id, "version", i);
-            i += 1;
+        try (BulkWriter<Snapshot> writer = Persistence.snapshots.bulkWriter()) {
+            for (Snapshot snapshot : orderedSnapshots) {
+                writer.updateField(snapshot.id, "version", i);
+                i += 1;
+            }
         }
     }
 
@@ -709,6 +930,30 @@ public class FeedSource extends Model implements Cloneable {
         }
     }
 
+    /**
+     * Denormalized summary of a feed source's versions (see {@link #versionSummary}).
+     */
+    public static class VersionSummary implements Serializable {
+        private static final long serialVersionUID = 1L;
+        public long versionCount;
+        public String latestVersionId;
+        /** When the latest version was uploaded/fetched. */
+        public Date lastUpdated;
+        public FeedValidationResultSummary latestValidation;
+
+        /** No-arg constructor for de-/serialization. */
+        public VersionSummary() { }
+
+        public VersionSummary(long versionCount, FeedVersion latest) {
+            this.versionCount = versionCount;
+            if (latest != null) {
+                this.latestVersionId = latest.id;
+                this.lastUpdated = latest.updated;
+                this.latestValidation = new FeedValidationResultSummary(latest);
+            }
+        }
+    }
+
     public FeedSource clone () throws CloneNotSupportedException {
         return (FeedSource) super.clone();
     }
@@ -720,18 +965,12 @@ public class FeedSource extends Model implements Cloneable {
      * occurring at the same time).
      */
     public boolean hasJobsInProgress() {
-        return JobUtils.getAllActiveJobs().stream().anyMatch(job -> {
-            String jobFeedSourceId = null;
-            if (
-                job instanceof FetchSingleFeedJob ||
-                job instanceof ProcessSingleFeedJob ||
-                job instanceof CreateFeedVersionFromSnapshotJob ||
-                job instanceof MergeFeedsJob
-            ) {
-                jobFeedSourceId = ((FeedSourceJob) job).getFeedSourceId();
-            }
-            return this.id.equals(jobFeedSourceId);
-        });
+        return JobUtils.getActiveJobsForFeedSource(this.id).stream().anyMatch(job ->
+            job instanceof FetchSingleFeedJob ||
+            job instanceof ProcessSingleFeedJob ||
+            job instanceof CreateFeedVersionFromSnapshotJob ||
+            job instanceof MergeFeedsJob
+        );
     }
 
     public <T extends FeedTransformation> boolean hasTransformationsOfType(FeedVersion target, Class<T> clazz) {
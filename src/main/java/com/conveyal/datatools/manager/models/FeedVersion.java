@@ -12,6 +12,7 @@ import com.conveyal.gtfs.GTFS;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.loader.Feed;
 import com.conveyal.gtfs.loader.FeedLoadResult;
+import com.conveyal.gtfs.loader.TableLoadResult;
 import com.conveyal.gtfs.validator.MTCValidator;
 import com.conveyal.gtfs.validator.ValidationResult;
 import com.conveyal.gtfs.validator.model.Priority;
@@ -21,6 +22,7 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import org.bson.codecs.pojo.annotations.BsonProperty;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +48,7 @@ import static com.conveyal.datatools.manager.DataManager.isExtensionEnabled;
 import static com.conveyal.datatools.manager.utils.StringUtils.getCleanName;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Projections.include;
 import static com.mongodb.client.model.Updates.pull;
 
 /**
@@ -62,6 +65,31 @@ public class FeedVersion extends Model implements Serializable {
     private static final Logger LOG = LoggerFactory.getLogger(FeedVersion.class);
     // FIXME: move this out of FeedVersion (also, it should probably not be public)?
     public static FeedStore feedStore = new FeedStore();
+    /**
+     * Projection of the fields needed to construct a {@link FeedValidationResultSummary} (plus basic identifying
+     * fields). Use this with the projected {@link com.conveyal.datatools.manager.persistence.TypedPersistence} methods
+     * when only summary info is needed (e.g., for deployments or feed source listings) to avoid transferring and
+     * decoding the full validation result (which holds per-day service arrays) and per-table load results.
+     */
+    public static final Bson SUMMARY_PROJECTION = include(
+        "feedSourceId",
+        "version",
+        "name",
+        "namespace",
+        "updated",
+        "feedLoadResult.agency.rowCount",
+        "feedLoadResult.routes.rowCount",
+        "feedLoadResult.stops.rowCount",
+        "feedLoadResult.trips.rowCount",
+        "feedLoadResult.stopTimes.rowCount",
+        "validationResult.fatalException",
+        "validationResult.errorCount",
+        "validationResult.firstCalendarDate",
+        "validationResult.lastCalendarDate",
+        "validationResult.fullBounds"
+    );
+    /** Projection used when only the ID of a version is needed. */
+    private static final Bson ID_PROJECTION = include("_id");
     /**
      * Input feed versions used to create a merged version.
      */
@@ -145,7 +173,8 @@ public class FeedVersion extends Model implements Serializable {
     @JsonView(JsonViews.UserInterface.class)
     @JsonProperty("previousVersionId")
     public String previousVersionId() {
-        FeedVersion p = previousVersion();
+        FeedVersion p = Persistence.feedVersions.getOneFiltered(and(
+                eq("version", this.version - 1), eq("feedSourceId", this.feedSourceId)), null, ID_PROJECTION);
         return p != null ? p.id : null;
     }
 
@@ -164,7 +193,8 @@ public class FeedVersion extends Model implements Serializable {
     @JsonView(JsonViews.UserInterface.class)
     @JsonProperty("nextVersionId")
     public String nextVersionId() {
-        FeedVersion p = nextVersion();
+        FeedVersion p = Persistence.feedVersions.getOneFiltered(and(
+                eq("version", this.version + 1), eq("feedSourceId", this.feedSourceId)), null, ID_PROJECTION);
         return p != null ? p.id : null;
     }
 
@@ -174,6 +204,11 @@ public class FeedVersion extends Model implements Serializable {
     @JsonView(JsonViews.DataDump.class)
     public String hash;
 
+    /** Approximate heap used while processing each row of the largest GTFS tables (see {@link #retrieveMemoryEstimate}). */
+    private static final long MEMORY_BYTES_PER_ROW = 200;
+    /** Approximate heap used while processing each byte of a zipped GTFS file (whose contents are not yet loaded). */
+    private static final long MEMORY_BYTES_PER_ZIP_BYTE = 20;
+
     public File retrieveGtfsFile() {
         return feedStore.getFeed(id);
     }
@@ -199,7 +234,28 @@ public class FeedVersion extends Model implements Serializable {
         }
     }
 
-    /** The results of validating this feed */
+    /**
+     * @return a rough estimate of the heap (in bytes) needed to load, validate or merge this version (see
+     * {@link com.conveyal.datatools.common.status.JobScheduler}). This is based on the row counts of the largest tables
+     * if the version has been loaded, otherwise on the size of its GTFS file, or is 0 if neither is known.
+     */
+    public long retrieveMemoryEstimate() {
+        if (feedLoadResult != null) {
+            long rows = 0;
+            for (TableLoadResult table : new TableLoadResult[] {
+                feedLoadResult.stopTimes, feedLoadResult.trips, feedLoadResult.shapes, feedLoadResult.stops
+            }) {
+                if (table != null) rows += table.rowCount;
+            }
+            if (rows > 0) return rows * MEMORY_BYTES_PER_ROW;
+        }
+        return fileSize != null ? fileSize * MEMORY_BYTES_PER_ZIP_BYTE : 0;
+    }
+
+    /**
+     * The results of validating this feed. Once stored (see {@link #storeValidationResult}), this only holds a compact
+     * copy without the per-day service arrays. Use {@link #retrieveFullValidationResult} to get the full result.
+     */
     public ValidationResult validationResult;
 
     /** The results of loading this feed into the GTFS database */
@@ -374,6 +430,27 @@ public class FeedVersion extends Model implements Serializable {
         validate(null);
     }
 
+    /**
+     * Store the full validation result outside of this feed version's document (see
+     * {@link com.conveyal.datatools.manager.persistence.ValidationResultStore}) and replace the embedded result with a
+     * compact copy. This should be called before the feed version is created or replaced in MongoDB.
+     */
+    public void storeValidationResult() {
+        if (validationResult == null) return;
+        Persistence.validationResults.store(id, validationResult);
+        validationResult = Persistence.validationResults.compact(validationResult);
+    }
+
+    /**
+     * @return the full validation result, which is loaded from the validation result store. Versions validated before
+     * results were stored separately (and not yet migrated) still have the full result embedded, so that is returned
+     * if nothing has been stored.
+     */
+    public ValidationResult retrieveFullValidationResult() {
+        ValidationResult fullResult = Persistence.validationResults.retrieve(id);
+        return fullResult != null ? fullResult : validationResult;
+    }
+
     /**
      * Does this feed version have any critical errors that would prevent it being loaded to OTP?
      * @return whether the feed version has any critical errors
@@ -496,10 +573,13 @@ public class FeedVersion extends Model implements Serializable {
             // Remove this FeedVersion from all Deployments associated with this FeedVersion's FeedSource's Project
             // TODO TEST THOROUGHLY THAT THIS UPDATE EXPRESSION IS CORRECT
             // Although outright deleting the feedVersion from deployments could be surprising and shouldn't be done anyway.
-            Persistence.deployments.getMongoCollection().updateMany(eq("projectId", this.parentFeedSource().projectId),
+            Persistence.deployments.updateMany(eq("projectId", this.parentFeedSource().projectId),
                     pull("feedVersionIds", this.id));
+            Deployment.storeBoundsCaches(eq("boundsCache.feedVersionIds", this.id));
             Persistence.feedVersions.removeById(this.id);
+            Persistence.validationResults.delete(this.id);
             this.parentFeedSource().renumberFeedVersions();
+            FeedSource.updateVersionSummary(this.feedSourceId);
 
             // recalculate feed expiration notifications in case the latest version has changed
             Scheduler.scheduleExpirationNotifications(fs);
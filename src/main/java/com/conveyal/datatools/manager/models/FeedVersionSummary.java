@@ -5,16 +5,40 @@ import com.conveyal.gtfs.validator.ValidationResult;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.bson.conversions.Bson;
 
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.Date;
 
+import static com.mongodb.client.model.Projections.include;
+
 /**
  * Includes summary data (a subset of fields) for a feed version.
  */
 public class FeedVersionSummary extends Model implements Serializable {
     private static final long serialVersionUID = 1L;
+    /**
+     * The fields of a feed version document that make up a summary. Without this projection, the full validation result
+     * would be read and decoded for every version even though only its calendar dates are used.
+     */
+    public static final Bson PROJECTION = include(
+        "lastUpdated",
+        "dateCreated",
+        "userId",
+        "userEmail",
+        "noteIds",
+        "retrievalMethod",
+        "version",
+        "feedSourceId",
+        "name",
+        "namespace",
+        "originNamespace",
+        "fileSize",
+        "updated",
+        "validationResult.firstCalendarDate",
+        "validationResult.lastCalendarDate"
+    );
 
     public FeedRetrievalMethod retrievalMethod;
     public int version;
@@ -0,0 +1,87 @@
+package com.conveyal.datatools.manager.models;
+
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.common.status.MonitorableJob.JobType;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A queued or running job, recorded in MongoDB so that it can be recreated if the server restarts before the job
+ * finishes (see {@link com.conveyal.datatools.manager.persistence.JobQueueStore}). The ID is the job ID.
+ *
+ * Records are also the queue for jobs offloaded to worker processes (see
+ * {@link com.conveyal.datatools.manager.jobs.JobWorker}), in which case the worker reports the job's status here.
+ */
+public class JobRecord extends Model {
+    private static final long serialVersionUID = 1L;
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        /** Waiting for a worker to claim it. */
+        OFFLOADED,
+        /** Finished by a worker, waiting for the server that offloaded it to pick up the final status. */
+        FINISHED
+    }
+
+    public JobType type;
+    public String name;
+    public State state;
+    /**
+     * Parameters needed to recreate the job (see {@link MonitorableJob#retrieveRecoveryParameters}), or null if the
+     * job cannot be recreated.
+     */
+    public Map<String, String> parameters;
+    public Date startedAt;
+    /** The number of times the job has been recreated after a restart (or after its worker stopped). */
+    public int attempts;
+    /** The server that recorded (and runs) the job, or null if the job is offloaded. */
+    public String serverId;
+    /** The worker running an offloaded job, or null if the job is not offloaded or not yet claimed. */
+    public String workerId;
+    /**
+     * The last time the server running the job renewed its record (or the worker reported the job's status). Records
+     * without recent heartbeats are recovered by another server (or released to another worker).
+     */
+    public Date heartbeatAt;
+    public Date finishedAt;
+    /** The status of an offloaded job, as last reported by the worker. */
+    public MonitorableJob.Status status;
+    /** The results of an offloaded job (see {@link MonitorableJob#retrieveResults}), as last reported by the worker. */
+    public Map<String, String> results;
+    /** Whether the user has asked to cancel the offloaded job (the worker cancels it on its next report). */
+    public boolean cancellationRequested;
+
+    /** Used by the MongoDB codec. */
+    public JobRecord() { }
+
+    public JobRecord(MonitorableJob job, int attempts) {
+        this.id = job.jobId;
+        this.userId = job.retrieveUserId();
+        this.userEmail = job.retrieveEmail();
+        this.type = job.type;
+        this.name = job.name;
+        this.state = State.QUEUED;
+        this.parameters = job.retrieveRecoveryParameters();
+        this.attempts = attempts;
+    }
+
+    /** @return whether the record is for a job offloaded to a worker (rather than one run by the server itself). */
+    @JsonIgnore @BsonIgnore
+    public boolean isOffloaded() {
+        return state == State.OFFLOADED || state == State.FINISHED || workerId != null;
+    }
+
+    /**
+     * @return a key that is the same for records that would recreate identical jobs (e.g., fetching the same feed
+     * source), so that only one of them is recreated. Records that cannot be recreated (i.e., without parameters) are
+     * never identical.
+     */
+    public String retrieveRecoveryKey() {
+        return String.join(":", type.name(), parameters != null ? new TreeMap<>(parameters).toString() : id);
+    }
+}
@@ -0,0 +1,119 @@
+package com.conveyal.datatools.manager.persistence;
+
+import com.conveyal.datatools.manager.models.Model;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Queues inserts, updates and deletes for a single collection and sends them to MongoDB as unordered bulk writes of up
+ * to batchSize operations (see {@link TypedPersistence#bulkWriter}). This replaces a round trip per document (and, for
+ * updates, the return of the full updated document) with a single round trip per batch.
+ *
+ * Because the bulk writes are unordered, operations within a batch may be applied in any order, so a writer should not
+ * be used to queue more than one operation for the same document. Any queued operations are sent when the batch fills
+ * up or on {@link #flush}/{@link #close}, so this is best used with try-with-resources.
+ */
+public class BulkWriter<T extends Model> implements AutoCloseable {
+    private final TypedPersistence<T> persistence;
+    private final int batchSize;
+    private final List<WriteModel<T>> pendingOperations = new ArrayList<>();
+    private int insertedCount;
+    private int modifiedCount;
+    private int deletedCount;
+
+    BulkWriter(TypedPersistence<T> persistence, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive.");
+        this.persistence = persistence;
+        this.batchSize = batchSize;
+    }
+
+    /** Queue the insertion of a new object (equivalent to {@link TypedPersistence#create(Model)}). */
+    public BulkWriter<T> create(T newObject) {
+        return add(new InsertOneModel<>(newObject));
+    }
+
+    /** Queue the replacement of an object (equivalent to {@link TypedPersistence#replace}). */
+    public BulkWriter<T> replace(String id, T replaceObject) {
+        return add(new ReplaceOneModel<>(eq(id), replaceObject));
+    }
+
+    /**
+     * Queue an update of the object with the provided document (equivalent to
+     * {@link TypedPersistence#update(String, Document)}, including setting the lastUpdated field).
+     */
+    public BulkWriter<T> update(String id, Document updateDocument) {
+        updateDocument.put("lastUpdated", new Date());
+        return add(new UpdateOneModel<>(eq(id), new Document("$set", updateDocument)));
+    }
+
+    /** Queue an update of a single field (equivalent to {@link TypedPersistence#updateField}). */
+    public BulkWriter<T> updateField(String id, String fieldName, Object value) {
+        return update(id, new Document(fieldName, value));
+    }
+
+    /**
+     * Queue an arbitrary update (see {@link com.mongodb.client.model.Updates}) of the object. Unlike {@link #update},
+     * this does not set the lastUpdated field.
+     */
+    public BulkWriter<T> updateOne(String id, Bson update) {
+        return add(new UpdateOneModel<>(eq(id), update));
+    }
+
+    /** Queue the removal of an object (equivalent to {@link TypedPersistence#removeById}). */
+    public BulkWriter<T> removeById(String id) {
+        return add(new DeleteOneModel<>(eq(id)));
+    }
+
+    private BulkWriter<T> add(WriteModel<T> operation) {
+        pendingOperations.add(operation);
+        if (pendingOperations.size() >= batchSize) flush();
+        return this;
+    }
+
+    /**
+     * Send any queued operations to MongoDB. If some operations in the batch fail, the others are still applied and a
+     * {@link com.mongodb.MongoBulkWriteException} describing the failures is thrown.
+     */
+    public void flush() {
+        if (pendingOperations.isEmpty()) return;
+        // Clear the queue before writing so that failed operations are not retried on the next flush.
+        List<WriteModel<T>> operations = new ArrayList<>(pendingOperations);
+        pendingOperations.clear();
+        BulkWriteResult result = persistence.bulkWrite(operations);
+        insertedCount += result.getInsertedCount();
+        modifiedCount += result.getModifiedCount();
+        deletedCount += result.getDeletedCount();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /** @return the number of documents inserted by flushed operations. */
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    /** @return the number of documents modified (by update or replace) by flushed operations. */
+    public int getModifiedCount() {
+        return modifiedCount;
+    }
+
+    /** @return the number of documents deleted by flushed operations. */
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+}
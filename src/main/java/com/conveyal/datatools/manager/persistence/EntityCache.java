@@ -0,0 +1,106 @@
+package com.conveyal.datatools.manager.persistence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.bson.RawBsonDocument;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process, read-through cache for a single Mongo collection (see {@link TypedPersistence#enableCache}).
+ *
+ * Entries are held as raw BSON documents rather than decoded POJOs. Callers frequently modify the objects they get
+ * back from {@link TypedPersistence} (e.g., removing labels a user cannot see before serializing a feed source), so
+ * every cache hit is decoded into a fresh instance. This still saves the round trip to MongoDB, which is the dominant
+ * cost for the small documents (projects, organizations, labels, feed sources) this cache is intended for.
+ *
+ * Entries cached by ID are invalidated individually whenever the corresponding document is written through
+ * {@link TypedPersistence}. Because it is not possible to tell which filters a written document matches, all cached
+ * filter results are dropped on any write. Writes made directly against {@link TypedPersistence#getMongoCollection}
+ * or by other server instances are not seen by the cache, so the time-to-live bounds how stale an entry can get.
+ */
+public class EntityCache {
+    private final Cache<String, RawBsonDocument> byId;
+    private final Cache<String, List<RawBsonDocument>> byFilter;
+
+    public EntityCache(long maxSize, long ttlSeconds) {
+        byId = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+        byFilter = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Get the document for the ID from the cache or, if not present, from the supplier. Documents that do not exist
+     * (null) are not cached.
+     */
+    public RawBsonDocument getById(String id, Supplier<RawBsonDocument> supplier) {
+        RawBsonDocument document = byId.getIfPresent(id);
+        if (document == null) {
+            document = supplier.get();
+            if (document != null) byId.put(id, document);
+        }
+        return document;
+    }
+
+    /**
+     * Get the documents matching the filter (keyed on its JSON representation) from the cache or, if not present,
+     * from the supplier.
+     */
+    public List<RawBsonDocument> getFiltered(String filterKey, Supplier<List<RawBsonDocument>> supplier) {
+        List<RawBsonDocument> documents = byFilter.getIfPresent(filterKey);
+        if (documents == null) {
+            documents = supplier.get();
+            byFilter.put(filterKey, documents);
+        }
+        return documents;
+    }
+
+    /**
+     * Invalidate the entry for a single document. Filter results are dropped too since the document could have
+     * entered or left any of them.
+     */
+    public void invalidate(String id) {
+        byId.invalidate(id);
+        byFilter.invalidateAll();
+    }
+
+    /**
+     * Invalidate all entries (used after writes that may affect any number of documents).
+     */
+    public void invalidateAll() {
+        byId.invalidateAll();
+        byFilter.invalidateAll();
+    }
+
+    /**
+     * @return hit/miss counters and current size for lookups by ID and by filter.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("byId", statsToMap(byId.stats(), byId.size()));
+        stats.put("byFilter", statsToMap(byFilter.stats(), byFilter.size()));
+        return stats;
+    }
+
+    private static Map<String, Object> statsToMap(CacheStats cacheStats, long size) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", cacheStats.hitCount());
+        stats.put("misses", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("evictions", cacheStats.evictionCount());
+        stats.put("size", size);
+        return stats;
+    }
+}
@@ -0,0 +1,222 @@
+package com.conveyal.datatools.manager.persistence;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the indexes declared for a single Mongo collection (see {@link TypedPersistence#declareIndex}). The declared
+ * indexes are created on startup in {@link Persistence#initialize}, so that query performance does not depend on
+ * indexes having been created by hand.
+ *
+ * This also reports how the declared indexes compare to those that actually exist on the collection (see
+ * {@link #getReport}) and, optionally, logs a warning the first time a query of a given shape (i.e., the filter with
+ * its values stripped out) is planned by MongoDB as a full collection scan (see {@link #checkQueryPlan}).
+ */
+public class IndexRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexRegistry.class);
+    /** Name of the index MongoDB maintains on _id for every collection. */
+    private static final String ID_INDEX_NAME = "_id_";
+
+    private final MongoDatabase mongoDatabase;
+    private final MongoCollection<?> mongoCollection;
+    private final String collectionName;
+    /** Declared indexes keyed on index name. */
+    private final Map<String, IndexModel> declaredIndexes = new LinkedHashMap<>();
+    /**
+     * Runs the explain commands used to check query plans, so that the queries being checked (e.g., on request threads)
+     * do not wait on them.
+     */
+    private static final ExecutorService queryPlanExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("query-plan-check").setDaemon(true).build()
+    );
+
+    /** Query shapes that have already been checked for collection scans. */
+    private final Set<String> checkedQueryShapes = ConcurrentHashMap.newKeySet();
+    private boolean logCollectionScans;
+
+    IndexRegistry(MongoDatabase mongoDatabase, MongoCollection<?> mongoCollection, String collectionName) {
+        this.mongoDatabase = mongoDatabase;
+        this.mongoCollection = mongoCollection;
+        this.collectionName = collectionName;
+    }
+
+    /**
+     * Declare an index on the keys (see {@link com.mongodb.client.model.Indexes}). If the options do not contain a
+     * name, the name MongoDB would generate by default is used (e.g., feedSourceId_1_version_1).
+     */
+    void declare(Bson keys, IndexOptions options) {
+        if (options.getName() == null) options.name(defaultIndexName(toBsonDocument(keys)));
+        declaredIndexes.put(options.getName(), new IndexModel(keys, options));
+    }
+
+    void setLogCollectionScans(boolean logCollectionScans) {
+        this.logCollectionScans = logCollectionScans;
+    }
+
+    /**
+     * Create any declared indexes that do not yet exist. Creating an index that already exists with the same keys and
+     * options is a no-op in MongoDB, so this is safe to run on every startup.
+     */
+    void ensureIndexes() {
+        if (declaredIndexes.isEmpty()) return;
+        try {
+            List<String> names = mongoCollection.createIndexes(new ArrayList<>(declaredIndexes.values()));
+            LOG.info("Ensured indexes on {}: {}", collectionName, names);
+        } catch (MongoException e) {
+            // This can happen if an index with the same name but different keys/options was created by hand.
+            LOG.error("Could not create indexes for {}", collectionName, e);
+        }
+        Map<String, Object> report = getReport();
+        if (!((List<?>) report.get("missing")).isEmpty()) {
+            LOG.warn("Declared indexes missing from {}: {}", collectionName, report.get("missing"));
+        }
+        if (!((List<?>) report.get("undeclared")).isEmpty()) {
+            LOG.info("Indexes on {} not declared by the application: {}", collectionName, report.get("undeclared"));
+        }
+    }
+
+    /**
+     * @return a report comparing the declared indexes with the existing indexes on the collection, including the number
+     * of times each existing index has been used since the MongoDB server last restarted (if the user has permission
+     * to run $indexStats). Indexes listed as unused have not been used since then, so they may be candidates for
+     * removal (or a sign that queries are not using the index intended for them).
+     */
+    public Map<String, Object> getReport() {
+        List<String> existing = new ArrayList<>();
+        mongoCollection.listIndexes().forEach((Consumer<Document>) index -> existing.add(index.getString("name")));
+        Map<String, Long> usage = new HashMap<>();
+        try {
+            List<Document> pipeline = Collections.singletonList(new Document("$indexStats", new Document()));
+            mongoCollection.aggregate(pipeline, Document.class)
+                .forEach((Consumer<Document>) stats -> {
+                    Document accesses = (Document) stats.get("accesses");
+                    usage.put(stats.getString("name"), ((Number) accesses.get("ops")).longValue());
+                });
+        } catch (MongoException e) {
+            LOG.debug("Could not read index stats for {}", collectionName, e);
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("declared", new ArrayList<>(declaredIndexes.keySet()));
+        report.put("missing", declaredIndexes.keySet().stream()
+            .filter(name -> !existing.contains(name))
+            .collect(Collectors.toList()));
+        report.put("undeclared", existing.stream()
+            .filter(name -> !ID_INDEX_NAME.equals(name) && !declaredIndexes.containsKey(name))
+            .collect(Collectors.toList()));
+        report.put("unused", existing.stream()
+            .filter(name -> !ID_INDEX_NAME.equals(name) && usage.containsKey(name) && usage.get(name) == 0)
+            .collect(Collectors.toList()));
+        report.put("usage", usage);
+        return report;
+    }
+
+    /**
+     * If enabled, ask MongoDB to plan the query and log a warning if the winning plan is a full collection scan. This is
+     * only done for the first query of each shape (and never for empty filters, which always scan the collection), on
+     * a background thread.
+     */
+    void checkQueryPlan(Bson filter, Bson sort) {
+        if (!logCollectionScans || filter == null) return;
+        BsonDocument filterDocument = toBsonDocument(filter);
+        if (filterDocument.isEmpty()) return;
+        BsonDocument sortDocument = sort != null ? toBsonDocument(sort) : new BsonDocument();
+        String shape = shapeOf(filterDocument).toJson() + shapeOf(sortDocument).toJson();
+        if (!checkedQueryShapes.add(shape)) return;
+        queryPlanExecutor.execute(() -> explainQuery(filterDocument, sortDocument, shape));
+    }
+
+    private void explainQuery(BsonDocument filterDocument, BsonDocument sortDocument, String shape) {
+        try {
+            Document find = new Document("find", collectionName).append("filter", filterDocument);
+            if (!sortDocument.isEmpty()) find.append("sort", sortDocument);
+            Document explain = mongoDatabase.runCommand(
+                new Document("explain", find).append("verbosity", "queryPlanner")
+            );
+            Document queryPlanner = (Document) explain.get("queryPlanner");
+            if (queryPlanner != null && containsCollectionScan(queryPlanner.get("winningPlan"))) {
+                LOG.warn("Query on {} uses a collection scan (consider declaring an index): {}", collectionName, shape);
+            }
+        } catch (MongoException e) {
+            LOG.debug("Could not explain query on {}", collectionName, e);
+        }
+    }
+
+    private BsonDocument toBsonDocument(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, mongoCollection.getCodecRegistry());
+    }
+
+    /** Recursively search a query plan (and its input stages) for a COLLSCAN stage. */
+    private static boolean containsCollectionScan(Object plan) {
+        if (plan instanceof Document) {
+            Document stage = (Document) plan;
+            if ("COLLSCAN".equals(stage.get("stage"))) return true;
+            return stage.values().stream().anyMatch(IndexRegistry::containsCollectionScan);
+        }
+        if (plan instanceof List) {
+            return ((List<?>) plan).stream().anyMatch(IndexRegistry::containsCollectionScan);
+        }
+        return false;
+    }
+
+    /**
+     * Replace all values in the filter with a placeholder so that queries differing only in their values (e.g., the
+     * feed source ID) are treated as the same query.
+     */
+    private static BsonValue shapeOf(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument shape = new BsonDocument();
+            value.asDocument().forEach((key, child) -> shape.put(key, shapeOf(child)));
+            return shape;
+        }
+        if (value.isArray()) {
+            // Keep the distinct shapes of sub-documents (e.g., the clauses of $and/$or) but collapse lists of values
+            // (e.g., for $in) so that the shape does not depend on the number of values/clauses.
+            BsonArray shape = new BsonArray();
+            for (BsonValue child : value.asArray()) {
+                if (!child.isDocument()) continue;
+                BsonValue childShape = shapeOf(child);
+                if (!shape.contains(childShape)) shape.add(childShape);
+            }
+            return shape;
+        }
+        return new BsonInt32(1);
+    }
+
+    /** Construct the index name that MongoDB generates by default from the index keys. */
+    private static String defaultIndexName(BsonDocument keys) {
+        return keys.entrySet().stream()
+            .map(key -> {
+                BsonValue direction = key.getValue();
+                String suffix = direction.isNumber()
+                    ? String.valueOf(direction.asNumber().intValue())
+                    : direction.asString().getValue();
+                return key.getKey() + "_" + suffix;
+            })
+            .collect(Collectors.joining("_"));
+    }
+}
@@ -0,0 +1,339 @@
+package com.conveyal.datatools.manager.persistence;
+
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.manager.models.JobRecord;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.unset;
+
+/**
+ * Records jobs queued in {@link com.conveyal.datatools.manager.utils.JobUtils#heavyExecutor} in MongoDB while they are
+ * queued or running, so that jobs interrupted by a restart can be recreated on startup (see
+ * {@link com.conveyal.datatools.manager.jobs.JobRecovery}). Records are removed once the job finishes or is cancelled.
+ *
+ * Failures to write records are logged rather than thrown, so that a database problem never stops a job from running
+ * (the job would only be lost if the server also restarted).
+ *
+ * Records also serve as the queue for jobs offloaded to worker processes (see
+ * {@link com.conveyal.datatools.manager.jobs.JobWorker}): the server that offloads a job records it as OFFLOADED, a
+ * worker claims it and reports its status (which doubles as a heartbeat) until it is FINISHED, and the offloading
+ * server then copies the final status to its copy of the job and removes the record. Unlike recording, failures to
+ * offload are reported to the caller, which then runs the job itself.
+ *
+ * Several servers may share the database. Each record holds the ID of the server that recorded it (see
+ * {@link #retrieveServerId}), which renews the record's heartbeat while the job is queued or running (see
+ * {@link #renewHeartbeats}). Only records left by a previous run of this server or records whose heartbeat has gone
+ * stale (i.e., their server has stopped) are treated as interrupted, and a server takes over such a record before
+ * recovering it, so that only one server recreates each job. Offloaded records are left for workers.
+ */
+public class JobQueueStore {
+    private static final Logger LOG = LoggerFactory.getLogger(JobQueueStore.class);
+
+    private final TypedPersistence<JobRecord> records;
+    private final String serverId;
+    /** Jobs recorded by this server, so that jobs that were never recorded (e.g., sub-jobs) skip database writes. */
+    private final Set<String> recordedJobIds = ConcurrentHashMap.newKeySet();
+    private volatile Map<String, Object> lastRecoveryStats;
+    /** Whether jobs are recorded (see {@link #setRecording}). */
+    private volatile boolean recording = true;
+
+    JobQueueStore(TypedPersistence<JobRecord> records, String serverId) {
+        this.records = records;
+        this.serverId = serverId;
+    }
+
+    /**
+     * @return the ID of this server, which is application.jobs.server_id if set or otherwise the process ID and host
+     * name (e.g., 1234@host). Setting a fixed ID (distinct for each server) lets a restarted server recover its own
+     * jobs right away, rather than once their heartbeats go stale.
+     */
+    static String createServerId() {
+        String configuredId = getConfigPropertyAsText("application.jobs.server_id", null);
+        if (configuredId != null) return configuredId;
+        String processName = ManagementFactory.getRuntimeMXBean().getName();
+        if (processName.contains("@")) return processName;
+        try {
+            return String.join("@", processName, InetAddress.getLocalHost().getHostName());
+        } catch (UnknownHostException e) {
+            return processName;
+        }
+    }
+
+    public String retrieveServerId() {
+        return serverId;
+    }
+
+    /**
+     * Turn recording of queued jobs on or off. Workers do not record the jobs they run, because the offloaded record
+     * already tracks them.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /** Record the job as queued. Recording a job more than once has no effect. */
+    public void recordQueued(MonitorableJob job) {
+        recordQueued(job, 0);
+    }
+
+    /**
+     * Record the job as queued.
+     * @param attempts the number of times the job has already been recreated after a restart
+     */
+    public void recordQueued(MonitorableJob job, int attempts) {
+        if (!recording || !recordedJobIds.add(job.jobId)) return;
+        JobRecord record = new JobRecord(job, attempts);
+        if (record.parameters != null && !job.saveRecoveryState()) record.parameters = null;
+        record.serverId = serverId;
+        record.heartbeatAt = new Date();
+        try {
+            records.create(record);
+        } catch (MongoException e) {
+            recordedJobIds.remove(job.jobId);
+            LOG.warn("Could not record queued job {} (it will not be recovered after a restart)", job.jobId, e);
+        }
+    }
+
+    public void recordStarted(MonitorableJob job) {
+        if (!recordedJobIds.contains(job.jobId)) return;
+        try {
+            records.updateMany(
+                eq(job.jobId),
+                combine(set("state", JobRecord.State.RUNNING.name()), set("startedAt", new Date()))
+            );
+        } catch (MongoException e) {
+            LOG.warn("Could not record start of job {}", job.jobId, e);
+        }
+    }
+
+    /** Remove the record for the job once it has finished (or been cancelled). */
+    public void recordFinished(MonitorableJob job) {
+        if (!recordedJobIds.remove(job.jobId)) return;
+        removeRecord(job.jobId);
+    }
+
+    /**
+     * Renew the heartbeat of the records for jobs this server has queued or is running, so that other servers do not
+     * treat them as interrupted.
+     */
+    public void renewHeartbeats() {
+        if (recordedJobIds.isEmpty()) return;
+        try {
+            records.updateMany(eq("serverId", serverId), set("heartbeatAt", new Date()));
+        } catch (MongoException e) {
+            LOG.warn("Could not renew heartbeats of recorded jobs", e);
+        }
+    }
+
+    /**
+     * Take over the records left by jobs that did not finish before their server stopped, i.e., records of a previous
+     * run of this server or records without a heartbeat for the given time. Offloaded jobs are not included, because
+     * they are left for workers.
+     * @return the records taken over, oldest first
+     */
+    public List<JobRecord> retrieveInterruptedJobs(long staleMillis) {
+        Date cutoff = new Date(System.currentTimeMillis() - staleMillis);
+        List<JobRecord> interrupted = new ArrayList<>();
+        Bson queuedOrRunning = in("state", JobRecord.State.QUEUED.name(), JobRecord.State.RUNNING.name());
+        for (JobRecord record : records.getFiltered(queuedOrRunning)) {
+            if (recordedJobIds.contains(record.id) || record.isOffloaded()) continue;
+            boolean stale = record.heartbeatAt == null || record.heartbeatAt.before(cutoff);
+            if (!serverId.equals(record.serverId) && !stale) continue;
+            // Only take over the record if no other server has done so in the meantime.
+            Bson unchanged = and(eq(record.id), eq("serverId", record.serverId), eq("heartbeatAt", record.heartbeatAt));
+            if (records.updateMany(unchanged, combine(set("serverId", serverId), set("heartbeatAt", new Date())))
+                .getModifiedCount() > 0) {
+                interrupted.add(record);
+            }
+        }
+        interrupted.sort((a, b) -> a.dateCreated.compareTo(b.dateCreated));
+        return interrupted;
+    }
+
+    /**
+     * Queue the job for a worker rather than running it on this server.
+     * @return whether the job was queued (if not, it should be run on this server)
+     */
+    public boolean offload(MonitorableJob job) {
+        JobRecord record = new JobRecord(job, 0);
+        if (record.parameters == null || !job.saveRecoveryState()) return false;
+        record.state = JobRecord.State.OFFLOADED;
+        record.status = job.status;
+        try {
+            records.create(record);
+            return true;
+        } catch (MongoException e) {
+            job.discardRecoveryState();
+            LOG.warn("Could not offload job {}, running it on this server instead", job.jobId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Claim the oldest offloaded job that has not been claimed.
+     * @return the claimed record, or null if there are no jobs waiting for a worker
+     */
+    public JobRecord claimOffloadedJob(String workerId) {
+        Date now = new Date();
+        return records.getMongoCollection().findOneAndUpdate(
+            eq("state", JobRecord.State.OFFLOADED.name()),
+            combine(
+                set("state", JobRecord.State.RUNNING.name()),
+                set("workerId", workerId),
+                set("startedAt", now),
+                set("heartbeatAt", now)
+            ),
+            new FindOneAndUpdateOptions().sort(ascending("dateCreated")).returnDocument(ReturnDocument.AFTER)
+        );
+    }
+
+    /**
+     * Report the status (and results) of a job claimed by the worker, which also renews the worker's claim. Once the
+     * status is completed, the record is marked as finished.
+     * @param results the job's results (see {@link MonitorableJob#retrieveResults}), or null if it has none
+     * @return the updated record, or null if the worker no longer holds the claim (e.g., it went stale and was
+     * released to another worker)
+     */
+    public JobRecord reportStatus(
+        String jobId,
+        String workerId,
+        MonitorableJob.Status status,
+        Map<String, String> results
+    ) {
+        Date now = new Date();
+        List<Bson> updates = new ArrayList<>();
+        updates.add(set("status", status));
+        updates.add(set("heartbeatAt", now));
+        if (results != null) updates.add(set("results", results));
+        if (status.completed) {
+            updates.add(set("state", JobRecord.State.FINISHED.name()));
+            updates.add(set("finishedAt", now));
+        }
+        return records.getMongoCollection().findOneAndUpdate(
+            and(eq(jobId), eq("workerId", workerId), eq("state", JobRecord.State.RUNNING.name())),
+            combine(updates),
+            new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)
+        );
+    }
+
+    /**
+     * Release claims that have had no heartbeat for the given time (i.e., the worker has stopped), so that another
+     * worker can start the job again. Jobs that have already been claimed the maximum number of times are finished
+     * as failed instead.
+     * @return the number of claims released
+     */
+    public int releaseStaleClaims(long staleMillis, int maxAttempts) {
+        Date cutoff = new Date(System.currentTimeMillis() - staleMillis);
+        Bson staleFilter = and(
+            eq("state", JobRecord.State.RUNNING.name()),
+            ne("workerId", null),
+            lt("heartbeatAt", cutoff)
+        );
+        int released = 0;
+        for (JobRecord record : records.getFiltered(staleFilter)) {
+            // Only update the record if it is still held by the same stale claim.
+            Bson claimFilter = and(eq(record.id), eq("workerId", record.workerId), lt("heartbeatAt", cutoff));
+            if (record.attempts + 1 >= maxAttempts) {
+                MonitorableJob.Status status = record.status != null ? record.status : new MonitorableJob.Status();
+                status.fail(String.format("Job was interrupted %d times and will not be run again", maxAttempts));
+                records.updateMany(claimFilter, combine(
+                    set("state", JobRecord.State.FINISHED.name()),
+                    set("status", status),
+                    set("finishedAt", new Date())
+                ));
+                LOG.error("Offloaded job {} ({}) was interrupted {} times and will not be run again", record.id,
+                    record.type, maxAttempts);
+            } else if (records.updateMany(claimFilter, combine(
+                set("state", JobRecord.State.OFFLOADED.name()),
+                unset("workerId"),
+                inc("attempts", 1)
+            )).getModifiedCount() > 0) {
+                LOG.warn("Worker {} stopped reporting on job {} ({}), releasing it to other workers", record.workerId,
+                    record.id, record.type);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /** @return the records for the given job IDs by ID. Jobs without a record are omitted. */
+    public Map<String, JobRecord> retrieveRecords(Collection<String> jobIds) {
+        return records.getByIds(new ArrayList<>(jobIds)).stream()
+            .collect(Collectors.toMap(record -> record.id, Function.identity()));
+    }
+
+    /**
+     * Cancel an offloaded job. If no worker has claimed the job, the record is removed; otherwise, the worker is asked
+     * to cancel it on its next report.
+     * @return whether the record was removed before any worker claimed the job
+     */
+    public boolean cancelOffloadedJob(String jobId) {
+        if (records.getMongoCollection().deleteOne(
+            and(eq(jobId), eq("state", JobRecord.State.OFFLOADED.name()))
+        ).getDeletedCount() > 0) {
+            return true;
+        }
+        records.updateMany(eq(jobId), set("cancellationRequested", true));
+        return false;
+    }
+
+    /**
+     * Remove records of offloaded jobs that finished long ago but were never picked up (e.g., because the server that
+     * offloaded them restarted in the meantime).
+     */
+    public void removeFinishedRecords(long olderThanMillis) {
+        Date cutoff = new Date(System.currentTimeMillis() - olderThanMillis);
+        records.getMongoCollection().deleteMany(
+            and(eq("state", JobRecord.State.FINISHED.name()), lt("finishedAt", cutoff))
+        );
+    }
+
+    public void removeRecord(String jobId) {
+        try {
+            records.removeById(jobId);
+        } catch (MongoException e) {
+            LOG.warn("Could not remove record for job {}", jobId, e);
+        }
+    }
+
+    public void setLastRecoveryStats(Map<String, Object> lastRecoveryStats) {
+        this.lastRecoveryStats = lastRecoveryStats;
+    }
+
+    /** @return the number of jobs recorded by this server and the results of the last recovery on startup. */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recorded", recordedJobIds.size());
+        stats.put("lastRecovery", lastRecoveryStats);
+        return stats;
+    }
+}
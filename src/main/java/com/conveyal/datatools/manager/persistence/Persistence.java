@@ -7,9 +7,11 @@ import com.conveyal.datatools.manager.codec.URLCodec;
 import com.conveyal.datatools.manager.models.Deployment;
 import com.conveyal.datatools.manager.models.ExternalFeedSourceProperty;
 import com.conveyal.datatools.manager.models.FeedDownloadToken;
+import com.conveyal.datatools.manager.models.FeedProcessingCheckpoint;
 import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.models.FeedVersion;
 import com.conveyal.datatools.manager.models.FeedVersionSummary;
+import com.conveyal.datatools.manager.models.JobRecord;
 import com.conveyal.datatools.manager.models.Label;
 import com.conveyal.datatools.manager.models.Note;
 import com.conveyal.datatools.manager.models.Organization;
@@ -21,13 +23,21 @@ import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Indexes;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.PojoCodecProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import static com.conveyal.datatools.manager.DataManager.getConfigPropertyAsText;
+import static com.conveyal.datatools.manager.DataManager.hasConfigProperty;
 
 /**
  * Groups together a bunch of TypedPersistence abstractions around MongoDB Collections.
@@ -40,6 +50,18 @@ public class Persistence {
     private static final String MONGO_USER = getConfigPropertyAsText("MONGO_USER");
     private static final String MONGO_PASSWORD = getConfigPropertyAsText("MONGO_PASSWORD");
     private static final String MONGO_DB_NAME = getConfigPropertyAsText("MONGO_DB_NAME");
+    /**
+     * Optional per-collection cache settings, e.g. MONGO_CACHE.Project.max_size and MONGO_CACHE.Project.ttl_seconds.
+     * Caching is disabled for any collection not listed here.
+     */
+    private static final String MONGO_CACHE_CONFIG = "MONGO_CACHE";
+    private static final String DEFAULT_CACHE_MAX_SIZE = "1000";
+    private static final String DEFAULT_CACHE_TTL_SECONDS = "60";
+    /**
+     * Whether to log queries that MongoDB plans as collection scans (checked once per query shape in the background,
+     * see {@link IndexRegistry#checkQueryPlan}). Off by default.
+     */
+    private static final String MONGO_LOG_COLLECTION_SCANS_CONFIG = "MONGO_LOG_COLLECTION_SCANS";
 
     private static MongoClient mongo;
     private static MongoDatabase mongoDatabase;
@@ -57,6 +79,18 @@ public class Persistence {
     public static TypedPersistence<Snapshot> snapshots;
     public static TypedPersistence<FeedDownloadToken> tokens;
     public static TypedPersistence<Label> labels;
+    public static TypedPersistence<JobRecord> jobRecords;
+    /** Progress of feed versions being processed, so that interrupted processing can resume where it stopped. */
+    public static TypedPersistence<FeedProcessingCheckpoint> feedProcessingCheckpoints;
+    /** Full validation results, stored outside of the feed version documents. */
+    public static ValidationResultStore validationResults;
+    /** Queued and running jobs, recorded so that they can be recovered after a restart. */
+    public static JobQueueStore jobQueue;
+    /** Locks on resources held by jobs, shared by all servers using the database. */
+    public static ResourceLockStore resourceLocks;
+
+    /** Collections for which caching has been enabled (keyed on collection name). */
+    private static final Map<String, TypedPersistence<?>> cachedCollections = new HashMap<>();
 
     public static void initialize () {
 
@@ -121,12 +155,94 @@ public class Persistence {
         snapshots = new TypedPersistence(mongoDatabase, Snapshot.class);
         tokens = new TypedPersistence(mongoDatabase, FeedDownloadToken.class);
         labels = new TypedPersistence(mongoDatabase, Label.class);
+        jobRecords = new TypedPersistence(mongoDatabase, JobRecord.class);
+        feedProcessingCheckpoints = new TypedPersistence(mongoDatabase, FeedProcessingCheckpoint.class);
+        validationResults = new ValidationResultStore(mongoDatabase);
+        jobQueue = new JobQueueStore(jobRecords, JobQueueStore.createServerId());
+        resourceLocks = new ResourceLockStore(
+            mongoDatabase.getCollection(ResourceLockStore.COLLECTION_NAME),
+            TimeUnit.SECONDS.toMillis(Long.parseLong(
+                getConfigPropertyAsText("application.jobs.resource_lock_lease_seconds", "60")
+            ))
+        );
+
+        // Note: feedVersionSummaries is excluded (see getCollections) because it shares a collection with feedVersions,
+        // so writes to one would not invalidate the other's cache.
+        cachedCollections.clear();
+        for (TypedPersistence<?> collection : getCollections()) {
+            configureCache(collection);
+        }
+
+        // Declare the indexes needed by the most common queries and make sure they exist. Indexes for
+        // feedVersionSummaries queries are declared on feedVersions.
+        feedVersions
+            .declareIndex(Indexes.ascending("feedSourceId", "version"))
+            .declareIndex(Indexes.ascending("namespace"));
+        feedSources.declareIndex(Indexes.ascending("projectId"));
+        deployments
+            .declareIndex(Indexes.ascending("projectId"))
+            .declareIndex(Indexes.ascending("feedSourceId"))
+            .declareIndex(Indexes.ascending("feedVersionIds"));
+        snapshots.declareIndex(Indexes.ascending(Snapshot.FEED_SOURCE_REF, "version"));
+        externalFeedSourceProperties.declareIndex(Indexes.ascending("feedSourceId"));
+        projects.declareIndex(Indexes.ascending("organizationId"));
+        labels.declareIndex(Indexes.ascending("projectId"));
+        tokens.declareIndex(Indexes.ascending("jobId"));
+        boolean logCollectionScans = "true".equals(getConfigPropertyAsText(MONGO_LOG_COLLECTION_SCANS_CONFIG, "false"));
+        for (TypedPersistence<?> collection : getCollections()) {
+            collection.ensureIndexes();
+            collection.setLogCollectionScans(logCollectionScans);
+        }
+        feedVersionSummaries.setLogCollectionScans(logCollectionScans);
+    }
+
+    /** All collections except feedVersionSummaries (which shares its collection with feedVersions). */
+    private static List<TypedPersistence<?>> getCollections() {
+        return Arrays.asList(
+            feedSources,
+            projects,
+            feedVersions,
+            deployments,
+            notes,
+            organizations,
+            externalFeedSourceProperties,
+            servers,
+            snapshots,
+            tokens,
+            labels,
+            jobRecords,
+            feedProcessingCheckpoints
+        );
+    }
+
+    /**
+     * @return a comparison of declared and existing indexes (including usage counts) keyed on collection name.
+     */
+    public static Map<String, Map<String, Object>> getIndexReport() {
+        Map<String, Map<String, Object>> report = new HashMap<>();
+        getCollections().forEach(collection -> report.put(collection.getCollectionName(), collection.getIndexReport()));
+        return report;
+    }
 
-        // TODO: Set up indexes on feed versions by feedSourceId, version #? deployments, feedSources by projectId.
-//        deployments.getMongoCollection().createIndex(Indexes.descending("projectId"));
-//        feedSources.getMongoCollection().createIndex(Indexes.descending("projectId"));
-//        feedVersions.getMongoCollection().createIndex(Indexes.descending("feedSourceId", "version"));
-//        snapshots.getMongoCollection().createIndex(Indexes.descending("feedSourceId", "version"));
+    /**
+     * Enable the read-through cache for the collection if cache settings are defined for it in the config.
+     */
+    private static void configureCache(TypedPersistence<?> collection) {
+        String cacheConfig = String.join(".", MONGO_CACHE_CONFIG, collection.getCollectionName());
+        if (!hasConfigProperty(cacheConfig)) return;
+        long maxSize = Long.parseLong(getConfigPropertyAsText(cacheConfig + ".max_size", DEFAULT_CACHE_MAX_SIZE));
+        long ttlSeconds = Long.parseLong(getConfigPropertyAsText(cacheConfig + ".ttl_seconds", DEFAULT_CACHE_TTL_SECONDS));
+        collection.enableCache(maxSize, ttlSeconds);
+        cachedCollections.put(collection.getCollectionName(), collection);
     }
-    
+
+    /**
+     * @return cache hit/miss counters keyed on collection name for all collections with caching enabled.
+     */
+    public static Map<String, Map<String, Object>> getCacheStats() {
+        Map<String, Map<String, Object>> stats = new HashMap<>();
+        cachedCollections.forEach((name, collection) -> stats.put(name, collection.getCacheStats()));
+        return stats;
+    }
+
 }
@@ -0,0 +1,133 @@
+package com.conveyal.datatools.manager.persistence;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+
+import java.util.Date;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.unset;
+
+/**
+ * Lease-based locks on resources (keyed on resource ID), stored in MongoDB so that they hold across every server
+ * sharing the database (e.g., several instances behind a load balancer).
+ *
+ * A lock is held until it is released or its lease expires, so a lock held by a server that stops is freed once the
+ * lease runs out. Holders must renew the lease (see {@link #renew}) well before it expires. Each time a lock is acquired
+ * its fencing token is incremented, so a holder whose lease expired (e.g., during a long GC pause) and was taken over
+ * can tell that it no longer holds the lock (see {@link #isCurrent}) before writing any results.
+ *
+ * Note: lease expiry is compared against each server's clock, so leases should be much longer than any clock skew
+ * between servers.
+ */
+public class ResourceLockStore {
+    static final String COLLECTION_NAME = "ResourceLock";
+
+    private final MongoCollection<Document> collection;
+    private final long leaseMillis;
+
+    ResourceLockStore(MongoCollection<Document> collection, long leaseMillis) {
+        this.collection = collection;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /** @return a store for the same locks with a different lease length (e.g., to test expiry). */
+    ResourceLockStore withLeaseMillis(long leaseMillis) {
+        return new ResourceLockStore(collection, leaseMillis);
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * Acquire the lock on the resource if it is not held (or its lease has expired).
+     * @param holder description of the holder, for troubleshooting (e.g., the server and job)
+     * @return the lease, or null if the lock is held by someone else
+     */
+    public Lease acquire(String resourceId, String holder) {
+        Date now = new Date();
+        Date expiresAt = new Date(now.getTime() + leaseMillis);
+        try {
+            // If the lock is held, the filter does not match and the upsert fails on the duplicate ID. Released locks are
+            // kept (as expired) so that the fencing token keeps increasing.
+            Document lock = collection.findOneAndUpdate(
+                and(eq(resourceId), lt("expiresAt", now)),
+                combine(
+                    set("holder", holder),
+                    set("acquiredAt", now),
+                    set("expiresAt", expiresAt),
+                    inc("fencingToken", 1L)
+                ),
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)
+            );
+            return new Lease(resourceId, holder, lock.getLong("fencingToken"), expiresAt);
+        } catch (MongoException e) {
+            if (ErrorCategory.fromErrorCode(e.getCode()) == ErrorCategory.DUPLICATE_KEY) return null;
+            throw e;
+        }
+    }
+
+    /**
+     * Extend the lease.
+     * @return false if the lock has since been acquired by someone else (because the lease expired)
+     */
+    public boolean renew(Lease lease) {
+        Date expiresAt = new Date(System.currentTimeMillis() + leaseMillis);
+        UpdateResult result = collection.updateOne(
+            and(eq(lease.resourceId), eq("fencingToken", lease.fencingToken)),
+            set("expiresAt", expiresAt)
+        );
+        if (result.getMatchedCount() == 0) return false;
+        lease.expiresAt = expiresAt;
+        return true;
+    }
+
+    /** Release the lock, unless it has since been acquired by someone else. */
+    public void release(Lease lease) {
+        collection.updateOne(
+            and(eq(lease.resourceId), eq("fencingToken", lease.fencingToken)),
+            combine(set("expiresAt", new Date(0)), unset("holder"))
+        );
+    }
+
+    /**
+     * Fencing check.
+     * @return whether the lease is unexpired and no one else has acquired the lock since
+     */
+    public boolean isCurrent(Lease lease) {
+        return collection.countDocuments(and(
+            eq(lease.resourceId),
+            eq("fencingToken", lease.fencingToken),
+            gt("expiresAt", new Date())
+        )) > 0;
+    }
+
+    /** A lock held on a resource. */
+    public static class Lease {
+        public final String resourceId;
+        public final String holder;
+        /** Increases each time the lock on the resource is acquired. */
+        public final long fencingToken;
+        /** When the lease expires, as of the last acquire or renewal. */
+        public volatile Date expiresAt;
+
+        Lease(String resourceId, String holder, long fencingToken, Date expiresAt) {
+            this.resourceId = resourceId;
+            this.holder = holder;
+            this.fencingToken = fencingToken;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
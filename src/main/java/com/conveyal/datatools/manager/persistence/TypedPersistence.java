@@ -2,21 +2,43 @@ package com.conveyal.datatools.manager.persistence;
 
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
 import com.conveyal.datatools.manager.models.Model;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonString;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.in;
@@ -49,11 +71,21 @@ import static com.mongodb.client.model.Updates.pull;
 public class TypedPersistence<T extends Model> {
 
     private static final Logger LOG = LoggerFactory.getLogger(TypedPersistence.class);
+    /** Default number of documents fetched from MongoDB per round trip when iterating with {@link #stream}. */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    /** Default maximum number of operations sent to MongoDB in a single bulk write (see {@link BulkWriter}). */
+    public static final int DEFAULT_BULK_WRITE_SIZE = 1000;
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
 
     private MongoCollection<T> mongoCollection;
     private Constructor<T> noArgConstructor;
     private String collectionName;
     private final FindOneAndUpdateOptions findOneAndUpdateOptions = new FindOneAndUpdateOptions();
+    /** Optional read-through cache for {@link #getById} and {@link #getFiltered}. Null if caching is disabled. */
+    private EntityCache cache;
+    private Codec<T> codec;
+    /** Indexes declared for this collection (see {@link #declareIndex}). */
+    private final IndexRegistry indexes;
 
     /**
      * Maps a persistence class to a Mongo collection.
@@ -61,6 +93,7 @@ public class TypedPersistence<T extends Model> {
     public TypedPersistence(MongoDatabase mongoDatabase, Class<T> clazz, String collectionName) {
         mongoCollection = mongoDatabase.getCollection(collectionName, clazz);
         this.collectionName = collectionName;
+        indexes = new IndexRegistry(mongoDatabase, mongoCollection, collectionName);
         try {
             noArgConstructor = clazz.getConstructor(new Class<?>[0]);
         } catch (NoSuchMethodException ex) {
@@ -80,10 +113,76 @@ public class TypedPersistence<T extends Model> {
         this(mongoDatabase, clazz, clazz.getSimpleName());
     }
 
+    /**
+     * Enable an in-process read-through cache (see {@link EntityCache}) for lookups by ID and by filter. This should
+     * only be enabled for collections that are read far more often than they are written.
+     * @param maxSize       maximum number of entries (for each of the ID and filter caches)
+     * @param ttlSeconds    time after which an entry is reloaded from MongoDB
+     */
+    public void enableCache(long maxSize, long ttlSeconds) {
+        LOG.info("Enabling cache for {} (max size={}, ttl={}s)", collectionName, maxSize, ttlSeconds);
+        codec = mongoCollection.getCodecRegistry().get(mongoCollection.getDocumentClass());
+        cache = new EntityCache(maxSize, ttlSeconds);
+    }
+
+    /**
+     * @return cache hit/miss counters for this collection or null if caching is not enabled.
+     */
+    public Map<String, Object> getCacheStats() {
+        return cache != null ? cache.getStats() : null;
+    }
+
+    /**
+     * Declare an index for this collection (see {@link com.mongodb.client.model.Indexes} for constructing keys). Declared
+     * indexes are created by {@link #ensureIndexes}.
+     */
+    public TypedPersistence<T> declareIndex(Bson keys) {
+        return declareIndex(keys, new IndexOptions());
+    }
+
+    public TypedPersistence<T> declareIndex(Bson keys, IndexOptions options) {
+        indexes.declare(keys, options);
+        return this;
+    }
+
+    /**
+     * Create any declared indexes that do not exist yet and log any that are missing or not declared.
+     */
+    public void ensureIndexes() {
+        indexes.ensureIndexes();
+    }
+
+    /**
+     * @return a comparison of the declared and existing indexes for this collection (see {@link IndexRegistry#getReport}).
+     */
+    public Map<String, Object> getIndexReport() {
+        return indexes.getReport();
+    }
+
+    /**
+     * Enable or disable logging of queries made through this object that MongoDB plans as full collection scans.
+     */
+    public void setLogCollectionScans(boolean logCollectionScans) {
+        indexes.setLogCollectionScans(logCollectionScans);
+    }
+
+    private MongoCollection<RawBsonDocument> getRawCollection() {
+        return mongoCollection.withDocumentClass(RawBsonDocument.class);
+    }
+
+    private void invalidateCache(String id) {
+        if (cache != null) cache.invalidate(id);
+    }
+
+    private void invalidateCache() {
+        if (cache != null) cache.invalidateAll();
+    }
+
     /**
      * Count the documents matching the provided filter.
      */
     public long count (Bson filter) {
+        indexes.checkQueryPlan(filter, null);
         return mongoCollection.countDocuments(filter);
     }
 
@@ -97,6 +196,7 @@ public class TypedPersistence<T extends Model> {
             throw new RuntimeException("Could not use no-arg constructor to instantiate class.", ex);
         }
         mongoCollection.insertOne(item);
+        invalidateCache(item.id);
         T updatedItem = update(item.id, updateJson);
         return updatedItem;
     }
@@ -107,10 +207,78 @@ public class TypedPersistence<T extends Model> {
     public void create (T newObject) {
         // What happens if an object already exists with the same ID?
         mongoCollection.insertOne(newObject);
+        invalidateCache(newObject.id);
+    }
+
+    /**
+     * Insert all of the objects using unordered bulk writes. This is much faster than calling {@link #create(Model)} for
+     * each object when loading many documents.
+     * @return the number of objects inserted
+     */
+    public int createMany (Collection<T> newObjects) {
+        try (BulkWriter<T> writer = bulkWriter()) {
+            newObjects.forEach(writer::create);
+            writer.flush();
+            return writer.getInsertedCount();
+        }
+    }
+
+    /**
+     * Create a {@link BulkWriter} for queueing multiple inserts, updates and deletes against this collection and
+     * sending them in batches of {@link #DEFAULT_BULK_WRITE_SIZE}.
+     */
+    public BulkWriter<T> bulkWriter () {
+        return bulkWriter(DEFAULT_BULK_WRITE_SIZE);
+    }
+
+    public BulkWriter<T> bulkWriter (int batchSize) {
+        return new BulkWriter<>(this, batchSize);
+    }
+
+    /**
+     * Send the write operations to MongoDB in a single unordered bulk write. Since any number of documents may be
+     * affected, the whole cache is invalidated.
+     */
+    BulkWriteResult bulkWrite (List<WriteModel<T>> operations) {
+        try {
+            return mongoCollection.bulkWrite(operations, UNORDERED);
+        } finally {
+            invalidateCache();
+        }
     }
 
     public void replace (String id, T replaceObject) {
         mongoCollection.replaceOne(eq(id), replaceObject);
+        invalidateCache(id);
+    }
+
+    /**
+     * Like {@link #replace}, but leaves the excluded fields of the stored object as they are, so that fields maintained
+     * by other writers (e.g., a denormalized summary) are not overwritten with a stale copy. Fields of the object are
+     * written with $set and fields that are null in the object (and so are not encoded) are removed with $unset.
+     */
+    public void replaceExcept (String id, T replaceObject, String... excludedFields) {
+        Set<String> excluded = new HashSet<>(Arrays.asList(excludedFields));
+        excluded.add("_id");
+        BsonDocument encoded = new BsonDocument();
+        mongoCollection.getCodecRegistry()
+            .get(mongoCollection.getDocumentClass())
+            .encode(new BsonDocumentWriter(encoded), replaceObject, EncoderContext.builder().build());
+        BsonDocument fieldsToSet = new BsonDocument();
+        encoded.forEach((name, value) -> {
+            if (!excluded.contains(name)) fieldsToSet.put(name, value);
+        });
+        BsonDocument fieldsToUnset = new BsonDocument();
+        BsonDocument stored = mongoCollection.withDocumentClass(BsonDocument.class).find(eq(id)).first();
+        if (stored != null) {
+            for (String name : stored.keySet()) {
+                if (!excluded.contains(name) && !encoded.containsKey(name)) fieldsToUnset.put(name, new BsonString(""));
+            }
+        }
+        BsonDocument update = new BsonDocument("$set", fieldsToSet);
+        if (!fieldsToUnset.isEmpty()) update.put("$unset", fieldsToUnset);
+        mongoCollection.updateOne(eq(id), update);
+        invalidateCache(id);
     }
 
     /**
@@ -119,7 +287,9 @@ public class TypedPersistence<T extends Model> {
     public T update (String id, Document updateDocument) {
         // Set last updated.
         updateDocument.put("lastUpdated", new Date());
-        return mongoCollection.findOneAndUpdate(eq(id), new Document("$set", updateDocument), findOneAndUpdateOptions);
+        T updatedItem = mongoCollection.findOneAndUpdate(eq(id), new Document("$set", updateDocument), findOneAndUpdateOptions);
+        invalidateCache(id);
+        return updatedItem;
     }
 
     /**
@@ -139,21 +309,62 @@ public class TypedPersistence<T extends Model> {
     public T updateUser (String id, Auth0UserProfile profile) {
         String updateJson = String.format("{userId: %s, userEmail: %s}", profile.getUser_id(), profile.getEmail());
         Document updateDocument = Document.parse(updateJson);
-        return mongoCollection.findOneAndUpdate(eq(id), new Document("$set", updateDocument), findOneAndUpdateOptions);
+        T updatedItem = mongoCollection.findOneAndUpdate(eq(id), new Document("$set", updateDocument), findOneAndUpdateOptions);
+        invalidateCache(id);
+        return updatedItem;
     }
 
     public T getById (String id) {
+        if (cache != null) {
+            RawBsonDocument document = cache.getById(id, () -> getRawCollection().find(eq(id)).first());
+            return document != null ? document.decode(codec) : null;
+        }
         return mongoCollection.find(eq(id)).first();
     }
 
     /**
-     * This is not memory efficient.
-     * TODO: Always use iterators / streams, always perform selection of subsets on the Mongo server side ("where clause").
+     * Get the object with the ID, decoding only the fields included in the projection (see
+     * {@link com.mongodb.client.model.Projections}). Fields excluded by the projection are left at their default
+     * values, so the returned object is a partial read model and must never be written back to the database (e.g., with
+     * {@link #replace}). Projected reads bypass the cache.
+     */
+    public T getById (String id, Bson projection) {
+        return mongoCollection.find(eq(id)).projection(projection).first();
+    }
+
+    /**
+     * This is not memory efficient. Use {@link #streamAll} or {@link #stream} when iterating over collections that may
+     * be large.
      */
     public List<T> getAll () {
         return mongoCollection.find().into(new ArrayList<>());
     }
 
+    /**
+     * Lazily iterate over the objects matching the filter, fetching batchSize documents from MongoDB at a time so that
+     * only one batch needs to be held in memory. The returned stream holds an open cursor and must be closed once
+     * consumed (e.g., with try-with-resources).
+     */
+    public Stream<T> stream (Bson filter, int batchSize) {
+        indexes.checkQueryPlan(filter, null);
+        MongoCursor<T> cursor = mongoCollection.find(filter).batchSize(batchSize).iterator();
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(
+            cursor,
+            Spliterator.ORDERED | Spliterator.NONNULL
+        );
+        return StreamSupport.stream(spliterator, false).onClose(cursor::close);
+    }
+
+    /** Convenience wrapper for {@link #stream(Bson, int)} that uses the default batch size. */
+    public Stream<T> stream (Bson filter) {
+        return stream(filter, DEFAULT_BATCH_SIZE);
+    }
+
+    /** Convenience wrapper for {@link #stream(Bson, int)} that iterates over the entire collection. */
+    public Stream<T> streamAll () {
+        return stream(new Document(), DEFAULT_BATCH_SIZE);
+    }
+
     /**
      * Gets all objects with one of the IDs passed
      * @param ids   List of IDs to return objects with
@@ -163,15 +374,40 @@ public class TypedPersistence<T extends Model> {
         return mongoCollection.find(in("_id", ids)).into(new ArrayList<>());
     }
 
+    /**
+     * Projected variant of {@link #getByIds(List)} (see {@link #getById(String, Bson)} for caveats).
+     */
+    public List<T> getByIds (List<String> ids, Bson projection) {
+        return mongoCollection.find(in("_id", ids)).projection(projection).into(new ArrayList<>());
+    }
+
     /**
      * Get all objects satisfying the supplied Mongo filter.
      * This ties our persistence directly to Mongo for now but is expedient.
      * We should really have a bit more abstraction here.
      */
     public List<T> getFiltered (Bson filter) {
+        indexes.checkQueryPlan(filter, null);
+        if (cache != null) {
+            String filterKey = filter
+                .toBsonDocument(BsonDocument.class, mongoCollection.getCodecRegistry())
+                .toJson();
+            return cache.getFiltered(filterKey, () -> getRawCollection().find(filter).into(new ArrayList<>()))
+                .stream()
+                .map(document -> document.decode(codec))
+                .collect(Collectors.toList());
+        }
         return mongoCollection.find(filter).into(new ArrayList<>());
     }
 
+    /**
+     * Projected variant of {@link #getFiltered(Bson)} (see {@link #getById(String, Bson)} for caveats).
+     */
+    public List<T> getFiltered (Bson filter, Bson projection) {
+        indexes.checkQueryPlan(filter, null);
+        return mongoCollection.find(filter).projection(projection).into(new ArrayList<>());
+    }
+
     /**
      * Expose the internal MongoCollection to the caller.
      * This ties our persistence directly to Mongo for now but is expedient.
@@ -182,18 +418,33 @@ public class TypedPersistence<T extends Model> {
         return this.mongoCollection;
     }
 
+    public String getCollectionName () {
+        return this.collectionName;
+    }
+
     /**
      * Get all objects satisfying the supplied Mongo filter.
      * This ties our persistence directly to Mongo for now but is expedient.
      * We should really have a bit more abstraction here.
      */
     public T getOneFiltered (Bson filter, Bson sortBy) {
+        indexes.checkQueryPlan(filter, sortBy);
         if (sortBy != null)
             return mongoCollection.find(filter).sort(sortBy).first();
         else
             return mongoCollection.find(filter).first();
     }
 
+    /**
+     * Projected variant of {@link #getOneFiltered(Bson, Bson)} (see {@link #getById(String, Bson)} for caveats).
+     */
+    public T getOneFiltered (Bson filter, Bson sortBy, Bson projection) {
+        indexes.checkQueryPlan(filter, sortBy);
+        FindIterable<T> results = mongoCollection.find(filter).projection(projection);
+        if (sortBy != null) results = results.sort(sortBy);
+        return results.first();
+    }
+
     /** Convenience wrapper for #getOneFiltered that supplies null for sortBy arg. */
     public T getOneFiltered (Bson filter) {
         return getOneFiltered(filter, null);
@@ -201,6 +452,7 @@ public class TypedPersistence<T extends Model> {
 
     public boolean removeById (String id) {
         DeleteResult result = mongoCollection.deleteOne(eq(id));
+        invalidateCache(id);
         if (result.getDeletedCount() == 1) {
             LOG.info("Deleted object id={} type={}", id, collectionName);
             return true;
@@ -224,11 +476,14 @@ public class TypedPersistence<T extends Model> {
      * Apply update filter to documents that match query.
      */
     public UpdateResult updateMany(Bson query, Bson update) {
-        return mongoCollection.updateMany(query, update);
+        UpdateResult result = mongoCollection.updateMany(query, update);
+        invalidateCache();
+        return result;
     }
 
     public boolean removeFiltered (Bson filter) {
         DeleteResult result = mongoCollection.deleteMany(filter);
+        invalidateCache();
         long count = result.getDeletedCount();
         if (count >= 1) {
             LOG.info("Deleted {} objects of type {}", count, collectionName);
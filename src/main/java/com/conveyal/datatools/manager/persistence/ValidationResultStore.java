@@ -0,0 +1,185 @@
+package com.conveyal.datatools.manager.persistence;
+
+import com.conveyal.gtfs.validator.ValidationResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.Binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Stores the full validation result for each feed version outside of the feed version document, as gzip-compressed
+ * BSON keyed on the feed version ID. Most of the size of a validation result is taken up by its per-day service arrays
+ * (dailyBusSeconds, dailyTripCounts, etc.), which are only needed when viewing a single version. Keeping them out of
+ * the feed version documents means that listing and summarizing versions does not have to read and decode them.
+ *
+ * The feed version document keeps a compact copy of the result (see {@link #compact}) with everything but those
+ * arrays, so existing code that checks dates, error counts or bounds continues to work against the embedded result.
+ * The results are encoded with the same codecs used for the embedded result, so no separate mapping is needed.
+ */
+public class ValidationResultStore {
+    private static final String COLLECTION_NAME = "ValidationResult";
+    /** Prefix shared by the per-day service arrays, which are dropped from the compact result. */
+    private static final String DAILY_FIELD_PREFIX = "daily";
+
+    private final MongoCollection<Document> collection;
+    private final Codec<ValidationResult> codec;
+
+    ValidationResultStore(MongoDatabase mongoDatabase) {
+        this.collection = mongoDatabase.getCollection(COLLECTION_NAME);
+        this.codec = mongoDatabase.getCodecRegistry().get(ValidationResult.class);
+    }
+
+    /**
+     * Store (or overwrite) the full validation result for the feed version.
+     * @return the compressed size in bytes of the stored result
+     */
+    public int store(String feedVersionId, ValidationResult result) {
+        byte[] encoded = encode(result);
+        byte[] compressed = gzip(encoded);
+        Document document = new Document("_id", feedVersionId)
+            .append("data", new Binary(compressed))
+            .append("compressedSize", compressed.length)
+            .append("uncompressedSize", encoded.length)
+            .append("dateCreated", new Date());
+        collection.replaceOne(eq(feedVersionId), document, new ReplaceOptions().upsert(true));
+        return compressed.length;
+    }
+
+    /**
+     * @return the full validation result stored for the feed version, or null if none has been stored (e.g., for
+     * versions created before results were stored separately, which still have the full result embedded).
+     */
+    public ValidationResult retrieve(String feedVersionId) {
+        Document document = collection.find(eq(feedVersionId)).first();
+        if (document == null) return null;
+        return decode(document.get("data", Binary.class).getData());
+    }
+
+    /**
+     * Lazily iterate over the full validation results stored for all feed versions (e.g., to dump them), keyed by feed
+     * version ID. The returned stream holds an open cursor and must be closed once consumed.
+     */
+    public Stream<Map.Entry<String, ValidationResult>> streamAll() {
+        MongoCursor<Document> cursor = collection.find().batchSize(TypedPersistence.DEFAULT_BATCH_SIZE).iterator();
+        Spliterator<Document> spliterator = Spliterators.spliteratorUnknownSize(
+            cursor,
+            Spliterator.ORDERED | Spliterator.NONNULL
+        );
+        return StreamSupport.stream(spliterator, false)
+            .map(document -> new AbstractMap.SimpleImmutableEntry<>(
+                document.getString("_id"),
+                decode(document.get("data", Binary.class).getData())
+            ))
+            .map(entry -> (Map.Entry<String, ValidationResult>) entry)
+            .onClose(cursor::close);
+    }
+
+    public void delete(String feedVersionId) {
+        collection.deleteOne(eq(feedVersionId));
+    }
+
+    /**
+     * @return a copy of the validation result without the per-day service arrays, to be embedded in the feed version.
+     */
+    public ValidationResult compact(ValidationResult result) {
+        BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), result, EncoderContext.builder().build());
+        document.keySet().removeIf(key -> key.startsWith(DAILY_FIELD_PREFIX));
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    /**
+     * @return whether the result contains anything that {@link #compact} would remove.
+     */
+    public boolean isCompact(ValidationResult result) {
+        return encode(result).length == encode(compact(result)).length;
+    }
+
+    /**
+     * @return the size in bytes of the result when encoded as BSON (i.e., the space it takes up when embedded).
+     */
+    public int encodedSize(ValidationResult result) {
+        return encode(result).length;
+    }
+
+    /**
+     * @return the number of stored results and their total compressed and uncompressed sizes in bytes.
+     */
+    public Map<String, Object> getStats() {
+        Document totals = collection.aggregate(Collections.singletonList(
+            new Document("$group", new Document("_id", null)
+                .append("count", new Document("$sum", 1))
+                .append("compressedSize", new Document("$sum", "$compressedSize"))
+                .append("uncompressedSize", new Document("$sum", "$uncompressedSize")))
+        )).first();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", totals != null ? totals.get("count") : 0);
+        stats.put("compressedSize", totals != null ? totals.get("compressedSize") : 0);
+        stats.put("uncompressedSize", totals != null ? totals.get("uncompressedSize") : 0);
+        return stats;
+    }
+
+    private byte[] encode(ValidationResult result) {
+        ByteBuf buffer = new RawBsonDocument(result, codec).getByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private ValidationResult decode(byte[] compressed) {
+        return new RawBsonDocument(gunzip(compressed)).decode(codec);
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            // Not expected when writing to memory.
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) {
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) > 0) uncompressed.write(buffer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not decompress stored validation result", e);
+        }
+        return uncompressed.toByteArray();
+    }
+}
@@ -1,5 +1,7 @@
 package com.conveyal.datatools.manager.utils;
 
+import com.conveyal.datatools.common.status.JobRegistry;
+import com.conveyal.datatools.common.status.JobScheduler;
 import com.conveyal.datatools.common.status.MonitorableJob;
 import com.conveyal.datatools.manager.auth.Auth0UserProfile;
 import com.conveyal.datatools.manager.jobs.DeployJob;
@@ -11,11 +13,9 @@ import com.mongodb.client.FindIterable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.function.Predicate;
@@ -24,32 +24,25 @@ import java.util.stream.Collectors;
 public class JobUtils {
     private static final Logger LOG = LoggerFactory.getLogger(JobUtils.class);
 
-    // Heavy executor should contain long-lived CPU-intensive tasks (e.g., feed loading/validation)
-    public static Executor heavyExecutor = Executors.newFixedThreadPool(4);
+    // Heavy executor should contain long-lived CPU-intensive tasks (e.g., feed loading/validation). Jobs are started in
+    // order of priority (see JobScheduler), so interactive jobs are not held up by background work.
+    public static JobScheduler heavyExecutor = JobScheduler.fromConfig();
 
     // light executor is for tasks for things that should finish quickly (e.g., email notifications)
     public static Executor lightExecutor = Executors.newSingleThreadExecutor();
 
-    /**
-     * Stores jobs underway by user ID. NOTE: any set created and stored here must be created with
-     * {@link Sets#newConcurrentHashSet()} or similar thread-safe Set.
-     */
-    public static Map<String, Set<MonitorableJob>> userJobsMap = new ConcurrentHashMap<>();
+    /** Jobs known to this server, indexed by job ID, owner and feed source. */
+    public static final JobRegistry jobRegistry = JobRegistry.fromConfig();
 
     private static final Map<String, DeployJob> deploymentJobsByServer = new HashMap<>();
 
     public static Set<MonitorableJob> getAllJobs() {
-        return userJobsMap.values().stream()
-                .flatMap(Collection::stream)
-                .collect(Collectors.toSet());
+        return jobRegistry.getAllJobs();
     }
 
     /** Shorthand method for getting a single job by job ID. */
     public static MonitorableJob getJobByJobId(String jobId) {
-        for (MonitorableJob job : getAllJobs()) {
-            if (job.jobId.equals(jobId)) return job;
-        }
-        return null;
+        return jobRegistry.get(jobId);
     }
 
     /**
@@ -57,22 +50,14 @@ public class JobUtils {
      * @param clearCompleted if true, remove requested job if it has completed or errored
      */
     public static MonitorableJob getJobById(String userId, String jobId, boolean clearCompleted) {
-        // Get jobs set directly from userJobsMap because we may remove an element from it below.
-        Set<MonitorableJob> userJobs = userJobsMap.get(userId);
-        if (userJobs == null) {
-            return null;
+        MonitorableJob job = jobRegistry.get(jobId);
+        // if job is not found (because it doesn't exist or was completed) or belongs to another user.
+        if (job == null || !job.retrieveUserId().equals(userId)) return null;
+        if (clearCompleted && JobRegistry.isFinished(job)) {
+            // remove job if completed or errored
+            jobRegistry.remove(job);
         }
-        for (MonitorableJob job : userJobs) {
-            if (job.jobId.equals(jobId)) {
-                if (clearCompleted && (job.status.completed || job.status.error)) {
-                    // remove job if completed or errored
-                    userJobs.remove(job);
-                }
-                return job;
-            }
-        }
-        // if job is not found (because it doesn't exist or was completed).
-        return null;
+        return job;
     }
 
     /**
@@ -87,22 +72,17 @@ public class JobUtils {
     }
 
     /**
-     * Get set of active jobs by user ID. If there are no active jobs, return a new set.
-     *
-     * NOTE: this should be a concurrent hash set so that it is threadsafe.
+     * Get set of jobs by user ID. If there are no jobs, return an empty set.
      *
      * @param clearCompleted if true, remove all completed and errored jobs for this user.
      */
     public static Set<MonitorableJob> getJobsByUserId(String userId, boolean clearCompleted) {
-        Set<MonitorableJob> allJobsForUser = userJobsMap.get(userId);
-        if (allJobsForUser == null) {
-            return Sets.newConcurrentHashSet();
-        }
+        Set<MonitorableJob> allJobsForUser = jobRegistry.getJobsForUser(userId);
         if (clearCompleted) {
             // Any staged jobs will still have their status updated, so they need to be retrieved again with any status
             // updates. All completed or errored jobs are in their final state and will not be updated any longer, so we
             // remove them once the client has seen them.
-            userJobsMap.put(userId, filterStagedAndActiveJobs(allJobsForUser));
+            allJobsForUser.stream().filter(JobRegistry::isFinished).forEach(jobRegistry::remove);
         }
         return allJobsForUser;
     }
@@ -115,16 +95,20 @@ public class JobUtils {
         return filterJobs(getAllJobs(), job -> job.active);
     }
 
+    /**
+     * Get the active jobs for the feed source. Note: this excludes "staged" jobs, i.e., those which have not yet started.
+     */
+    public static Set<MonitorableJob> getActiveJobsForFeedSource(String feedSourceId) {
+        return filterJobs(jobRegistry.getJobsForFeedSource(feedSourceId), job -> job.active);
+    }
+
     /**
      * Filter the input set of jobs with the provided filter.
      */
     private static Set<MonitorableJob> filterJobs(Set<MonitorableJob> jobs, Predicate<MonitorableJob> filter) {
-        // Note: this must be a thread-safe set in case it is placed into the DataManager#userJobsMap.
-        Set<MonitorableJob> filteredJobs = Sets.newConcurrentHashSet();
-        jobs.stream()
+        return jobs.stream()
             .filter(filter)
-            .forEach(filteredJobs::add);
-        return filteredJobs;
+            .collect(Collectors.toSet());
     }
 
     /**
@@ -132,7 +116,7 @@ public class JobUtils {
      * may or may not be active.
      */
     public static Set<MonitorableJob> filterStagedAndActiveJobs(Set<MonitorableJob> jobs) {
-        return filterJobs(jobs, job -> !job.status.completed && !job.status.error);
+        return filterJobs(jobs, job -> !JobRegistry.isFinished(job));
     }
 
     /**
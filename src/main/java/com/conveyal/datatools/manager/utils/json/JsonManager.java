@@ -2,6 +2,7 @@ package com.conveyal.datatools.manager.utils.json;
 
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
@@ -100,6 +101,21 @@ public class JsonManager<T> {
         return ow.writeValueAsString(map);
     }
 
+    /**
+     * Create a generator for streaming JSON to the output stream (e.g., when a response is too large to build as a
+     * single string). Objects should be written to the generator with {@link #write(JsonGenerator, Object)}.
+     */
+    public JsonGenerator createGenerator(OutputStream outputStream) throws IOException {
+        return om.getFactory().createGenerator(outputStream);
+    }
+
+    /**
+     * Write an object to the generator using this manager's view and serializers.
+     */
+    public void write(JsonGenerator generator, Object o) throws IOException {
+        ow.writeValue(generator, o);
+    }
+
     public T read (String s) throws JsonParseException, JsonMappingException, IOException {
         return om.readValue(s, theClass);
     }
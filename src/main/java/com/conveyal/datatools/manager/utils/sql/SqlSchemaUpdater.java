@@ -2,6 +2,7 @@ package com.conveyal.datatools.manager.utils.sql;
 
 import com.conveyal.datatools.manager.models.FeedSource;
 import com.conveyal.datatools.manager.models.FeedVersion;
+import com.conveyal.datatools.manager.models.Project;
 import com.conveyal.datatools.manager.models.Snapshot;
 import com.conveyal.datatools.manager.persistence.Persistence;
 import com.conveyal.gtfs.loader.Table;
@@ -20,6 +21,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
@@ -68,50 +70,60 @@ public class SqlSchemaUpdater implements AutoCloseable {
     public Collection<NamespaceCheck> checkReferencedNamespaces(List<String> namespaceTypesToCheck) {
         resetCheckedNamespaces();
 
-        Persistence.projects.getAll().forEach(p -> {
-            System.out.printf("Project %s%n", p.name);
-            Persistence.feedSources.getFiltered(eq("projectId", p.id)).forEach(fs -> {
-                System.out.printf("- FeedSource %s %s%n", fs.name, fs.id);
-                if (namespaceTypesToCheck.contains(EDITOR) && !Strings.isNullOrEmpty(fs.editorNamespace)) {
-                    checkTablesForNamespace(fs.editorNamespace, fs, "editor");
-                }
+        try (Stream<Project> projects = Persistence.projects.streamAll()) {
+            projects.forEach(p -> checkReferencedNamespaces(p, namespaceTypesToCheck));
+        }
 
-                Bson feedSourceIdFilter = eq("feedSourceId", fs.id);
-                Bson feedSourceIdNamespaceFilter = and(
-                    eq("feedSourceId", fs.id),
-                    not(eq("namespace", null))
-                );
+        // Once done, print the SQL statements to update the tables.
+        printSqlChanges();
+
+        return checkedNamespaces.values();
+    }
 
-                if (namespaceTypesToCheck.contains(VERSIONS)) {
-                    List<FeedVersion> allFeedVersions = Persistence.feedVersions.getFiltered(feedSourceIdFilter);
-                    List<FeedVersion> feedVersions = Persistence.feedVersions.getFiltered(feedSourceIdNamespaceFilter);
-                    System.out.printf("\t- FeedVersions (%d/%d with valid namespace)%n", feedVersions.size(), allFeedVersions.size());
+    /**
+     * Check namespaces of the specified types that are referenced from the project's feed sources.
+     */
+    private void checkReferencedNamespaces(Project p, List<String> namespaceTypesToCheck) {
+        System.out.printf("Project %s%n", p.name);
+        Persistence.feedSources.getFiltered(eq("projectId", p.id)).forEach(fs -> {
+            System.out.printf("- FeedSource %s %s%n", fs.name, fs.id);
+            if (namespaceTypesToCheck.contains(EDITOR) && !Strings.isNullOrEmpty(fs.editorNamespace)) {
+                checkTablesForNamespace(fs.editorNamespace, fs, "editor");
+            }
+
+            Bson feedSourceIdFilter = eq("feedSourceId", fs.id);
+            Bson feedSourceIdNamespaceFilter = and(
+                eq("feedSourceId", fs.id),
+                not(eq("namespace", null))
+            );
+
+            if (namespaceTypesToCheck.contains(VERSIONS)) {
+                // Count and stream versions rather than loading them (and their validation results) into memory.
+                long allFeedVersionsCount = Persistence.feedVersions.count(feedSourceIdFilter);
+                long feedVersionsCount = Persistence.feedVersions.count(feedSourceIdNamespaceFilter);
+                System.out.printf("\t- FeedVersions (%d/%d with valid namespace)%n", feedVersionsCount, allFeedVersionsCount);
+                try (Stream<FeedVersion> feedVersions = Persistence.feedVersions.stream(feedSourceIdNamespaceFilter)) {
                     feedVersions.forEach(
                         fv -> {
                             checkTablesForNamespace(fv.namespace, fs, "v" + fv.version);
                         }
                     );
                 }
+            }
 
-                if (namespaceTypesToCheck.contains(SNAPSHOTS)) {
-                    List<Snapshot> allSnapshots = Persistence.snapshots.getFiltered(feedSourceIdFilter);
-                    List<Snapshot> snapshots = Persistence.snapshots.getFiltered(feedSourceIdNamespaceFilter);
-                    System.out.printf("\t- Snapshots (%d/%d with valid namespace)%n", snapshots.size(), allSnapshots.size());
-                    snapshots.forEach(
-                        sn -> {
-                            checkTablesForNamespace(sn.namespace, fs, sn.name == null ? "(unnamed)" : sn.name);
-
-                            // TODO: Consider scanning/upgrading namespaces referenced by snapshotOf (except "mapdb_editor" references).
-                        }
-                    );
-                }
-            });}
-        );
+            if (namespaceTypesToCheck.contains(SNAPSHOTS)) {
+                List<Snapshot> allSnapshots = Persistence.snapshots.getFiltered(feedSourceIdFilter);
+                List<Snapshot> snapshots = Persistence.snapshots.getFiltered(feedSourceIdNamespaceFilter);
+                System.out.printf("\t- Snapshots (%d/%d with valid namespace)%n", snapshots.size(), allSnapshots.size());
+                snapshots.forEach(
+                    sn -> {
+                        checkTablesForNamespace(sn.namespace, fs, sn.name == null ? "(unnamed)" : sn.name);
 
-        // Once done, print the SQL statements to update the tables.
-        printSqlChanges();
-
-        return checkedNamespaces.values();
+                        // TODO: Consider scanning/upgrading namespaces referenced by snapshotOf (except "mapdb_editor" references).
+                    }
+                );
+            }
+        });
     }
 
     private void printSqlChanges() {
@@ -0,0 +1,92 @@
+package com.conveyal.datatools.common.status;
+
+import com.conveyal.datatools.UnitTest;
+import com.conveyal.datatools.common.status.MonitorableJob.JobType;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests that {@link JobRegistry} indexes jobs and evicts finished jobs by age and count.
+ */
+public class JobRegistryTest extends UnitTest {
+    private static final Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+
+    @Test
+    void canLookUpJobsByIdUserAndFeedSource() {
+        JobRegistry registry = new JobRegistry(10, TimeUnit.HOURS.toMillis(1));
+        MonitorableJob job = new TestFeedSourceJob("feed-source-a");
+        MonitorableJob otherJob = new TestFeedSourceJob("feed-source-b");
+        registry.register(job);
+        registry.register(otherJob);
+        assertThat(registry.get(job.jobId), equalTo(job));
+        assertThat(registry.getJobsForUser(user.getUser_id()), containsInAnyOrder(job, otherJob));
+        // Jobs are only indexed by feed source once started.
+        assertThat(registry.getJobsForFeedSource("feed-source-a"), empty());
+        job.run();
+        assertThat(registry.getJobsForFeedSource("feed-source-a"), contains(job));
+
+        registry.remove(job);
+        assertThat(registry.get(job.jobId), nullValue());
+        assertThat(registry.getJobsForUser(user.getUser_id()), contains(otherJob));
+        assertThat(registry.getJobsForFeedSource("feed-source-a"), empty());
+    }
+
+    @Test
+    void canEvictFinishedJobsByAgeAndCount() {
+        JobRegistry registry = new JobRegistry(2, TimeUnit.HOURS.toMillis(1));
+        long now = System.currentTimeMillis();
+        MonitorableJob expiredJob = createFinishedJob(registry, now - TimeUnit.HOURS.toMillis(2));
+        MonitorableJob oldestJob = createFinishedJob(registry, now - 3000);
+        MonitorableJob olderJob = createFinishedJob(registry, now - 2000);
+        MonitorableJob newestJob = createFinishedJob(registry, now - 1000);
+        TestFeedSourceJob unfinishedJob = new TestFeedSourceJob("feed-source-a");
+        registry.register(unfinishedJob);
+
+        // The expired job is evicted by age and the oldest remaining finished job to keep within the count limit.
+        assertThat(registry.evictCompletedJobs(), equalTo(2));
+        assertThat(
+            registry.getJobsForUser(user.getUser_id()),
+            containsInAnyOrder(olderJob, newestJob, unfinishedJob)
+        );
+        assertThat(registry.get(expiredJob.jobId), nullValue());
+        assertThat(registry.get(oldestJob.jobId), nullValue());
+        assertThat(registry.getStats().get("evicted"), equalTo(2L));
+    }
+
+    private static MonitorableJob createFinishedJob(JobRegistry registry, long finishedTime) {
+        MonitorableJob job = new TestFeedSourceJob("feed-source-a");
+        job.status.completeSuccessfully("Done");
+        job.status.startTime = finishedTime;
+        job.status.duration = 0;
+        registry.register(job);
+        return job;
+    }
+
+    private static class TestFeedSourceJob extends FeedSourceJob {
+        private final String feedSourceId;
+
+        TestFeedSourceJob(String feedSourceId) {
+            super(user, "Test job", JobType.PROCESS_FEED);
+            this.feedSourceId = feedSourceId;
+        }
+
+        @Override
+        public String getFeedSourceId() {
+            return feedSourceId;
+        }
+
+        @Override
+        public void jobLogic() {
+            // Nothing to do.
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.conveyal.datatools.common.status;
+
+import com.conveyal.datatools.UnitTest;
+import com.conveyal.datatools.common.status.MonitorableJob.JobPriority;
+import com.conveyal.datatools.common.status.MonitorableJob.JobType;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Tests that {@link JobScheduler} respects its per-priority, per-user, memory and queue limits and deduplicates jobs.
+ */
+public class JobSchedulerTest extends UnitTest {
+    private static final Logger LOG = LoggerFactory.getLogger(JobSchedulerTest.class);
+
+    @Test
+    void canRunInteractiveJobsWhileBackgroundJobsAreQueued() throws InterruptedException {
+        Map<JobPriority, Integer> limits = new EnumMap<>(JobPriority.class);
+        limits.put(JobPriority.BACKGROUND, 1);
+        JobScheduler scheduler = new JobScheduler(2, limits);
+        CountDownLatch releaseBackgroundJobs = new CountDownLatch(1);
+        CountDownLatch backgroundJobsFinished = new CountDownLatch(2);
+        Auth0UserProfile systemUser = Auth0UserProfile.createSystemUser();
+        for (int i = 0; i < 2; i++) {
+            scheduler.execute(new TestJob(systemUser, JobType.PROCESS_FEED, () -> {
+                releaseBackgroundJobs.await();
+                backgroundJobsFinished.countDown();
+            }));
+        }
+        // Only one background job may run, leaving the other thread for interactive jobs.
+        Map<String, Object> backgroundStats = (Map<String, Object>) scheduler.getStats().get("background");
+        assertThat(backgroundStats.get("running"), equalTo(1));
+        assertThat(backgroundStats.get("queued"), equalTo(1));
+
+        CountDownLatch interactiveJobFinished = new CountDownLatch(1);
+        scheduler.execute(new TestJob(Auth0UserProfile.createTestAdminUser(), JobType.PROCESS_FEED,
+            interactiveJobFinished::countDown));
+        assertThat(interactiveJobFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+
+        releaseBackgroundJobs.countDown();
+        assertThat(backgroundJobsFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test
+    void canRunOtherUsersJobsWhileOneUserHasJobsQueued() throws InterruptedException {
+        JobScheduler scheduler = new JobScheduler(2, new EnumMap<>(JobPriority.class), 1);
+        CountDownLatch releaseBusyUserJobs = new CountDownLatch(1);
+        CountDownLatch busyUserJobsFinished = new CountDownLatch(3);
+        Auth0UserProfile busyUser = Auth0UserProfile.createTestAdminUser();
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute(new TestJob(busyUser, JobType.PROCESS_FEED, () -> {
+                releaseBusyUserJobs.await();
+                busyUserJobsFinished.countDown();
+            }));
+        }
+        // Only one of the busy user's jobs may run, even though a second thread is free.
+        Map<String, Integer> busyUserStats = scheduler.getStats(busyUser.getUser_id());
+        assertThat(busyUserStats.get("running"), equalTo(1));
+        assertThat(busyUserStats.get("queued"), equalTo(2));
+
+        CountDownLatch otherUserJobFinished = new CountDownLatch(1);
+        scheduler.execute(new TestJob(new Auth0UserProfile("other@example.com", "user_id:other"), JobType.PROCESS_FEED,
+            otherUserJobFinished::countDown));
+        assertThat(otherUserJobFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+
+        releaseBusyUserJobs.countDown();
+        assertThat(busyUserJobsFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test
+    void canHoldBackJobsThatExceedMemoryBudget() throws InterruptedException {
+        JobScheduler scheduler = new JobScheduler(4, new EnumMap<>(JobPriority.class), 4, 100);
+        Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+        CountDownLatch releaseFirstJob = new CountDownLatch(1);
+        CountDownLatch laterJobsFinished = new CountDownLatch(2);
+        scheduler.execute(new TestJob(user, JobType.PROCESS_FEED, 60, releaseFirstJob::await));
+        // The second job does not fit alongside the first, and the small third job must not jump ahead of it.
+        scheduler.execute(new TestJob(user, JobType.PROCESS_FEED, 60, laterJobsFinished::countDown));
+        scheduler.execute(new TestJob(user, JobType.PROCESS_FEED, 10, laterJobsFinished::countDown));
+        Map<String, Object> stats = scheduler.getStats();
+        assertThat(stats.get("running"), equalTo(1));
+        assertThat(stats.get("waitingOnMemory"), equalTo(true));
+
+        releaseFirstJob.countDown();
+        assertThat(laterJobsFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test
+    void canAttachIdenticalJobToJobInFlight() throws InterruptedException {
+        JobScheduler scheduler = new JobScheduler(2, new EnumMap<>(JobPriority.class), 2);
+        Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+        CountDownLatch releaseFirstJob = new CountDownLatch(1);
+        CountDownLatch firstJobFinished = new CountDownLatch(1);
+        TestJob first = new TestJob(user, JobType.FETCH_SINGLE_FEED, () -> {
+            releaseFirstJob.await();
+            firstJobFinished.countDown();
+        });
+        first.deduplicationKey = "FETCH_SINGLE_FEED:feed";
+        scheduler.execute(first);
+        TestJob duplicate = new TestJob(user, JobType.FETCH_SINGLE_FEED, () -> {
+            throw new IllegalStateException("Duplicate job should not run");
+        });
+        duplicate.deduplicationKey = first.deduplicationKey;
+        scheduler.execute(duplicate);
+        assertThat(duplicate.attachedToJobId, equalTo(first.jobId));
+        assertThat(duplicate.status, equalTo(first.status));
+        assertThat(scheduler.getStats().get("deduplicated"), equalTo(1L));
+
+        first.result = "feed-version";
+        releaseFirstJob.countDown();
+        assertThat(firstJobFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+        // Wait for the scheduler to register that the first job has finished (after its results are shared).
+        while (scheduler.getStats(user.getUser_id()).get("running") > 0) Thread.sleep(10);
+        // The attached job is given the first job's results and, once the first job has finished, an identical job
+        // runs again.
+        assertThat(duplicate.result, equalTo(first.result));
+        CountDownLatch laterJobFinished = new CountDownLatch(1);
+        TestJob later = new TestJob(user, JobType.FETCH_SINGLE_FEED, laterJobFinished::countDown);
+        later.deduplicationKey = first.deduplicationKey;
+        scheduler.execute(later);
+        assertThat(laterJobFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(later.attachedToJobId, equalTo(null));
+    }
+
+    @Test
+    void canAttachIdenticalJobToOffloadedJob() {
+        JobScheduler scheduler = new JobScheduler(2, new EnumMap<>(JobPriority.class), 2);
+        List<MonitorableJob> offloadedJobs = new ArrayList<>();
+        scheduler.setOffloader(new JobScheduler.Offloader() {
+            @Override
+            public boolean offload(MonitorableJob job) {
+                return offloadedJobs.add(job);
+            }
+
+            @Override
+            public boolean remove(MonitorableJob job) {
+                return offloadedJobs.remove(job);
+            }
+        });
+        Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+        TestJob first = new TestJob(user, JobType.PROCESS_FEED, () -> { });
+        first.deduplicationKey = "PROCESS_FEED:version";
+        scheduler.execute(first);
+        TestJob duplicate = new TestJob(user, JobType.PROCESS_FEED, () -> { });
+        duplicate.deduplicationKey = first.deduplicationKey;
+        scheduler.execute(duplicate);
+        // Only the first job is offloaded, and the duplicate follows it.
+        assertThat(offloadedJobs.size(), equalTo(1));
+        assertThat(duplicate.attachedToJobId, equalTo(first.jobId));
+
+        // Once the offloaded job finishes, the attached job is given its results and an identical job is offloaded.
+        first.result = "feed-version";
+        scheduler.finishOffloadedJob(first);
+        assertThat(duplicate.result, equalTo(first.result));
+        TestJob later = new TestJob(user, JobType.PROCESS_FEED, () -> { });
+        later.deduplicationKey = first.deduplicationKey;
+        scheduler.execute(later);
+        assertThat(offloadedJobs.size(), equalTo(2));
+        assertThat(later.attachedToJobId, equalTo(null));
+    }
+
+    @Test
+    void canCancelAttachedJob() throws InterruptedException {
+        JobScheduler scheduler = new JobScheduler(2, new EnumMap<>(JobPriority.class), 2);
+        Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+        CountDownLatch releaseFirstJob = new CountDownLatch(1);
+        TestJob first = new TestJob(user, JobType.FETCH_SINGLE_FEED, releaseFirstJob::await);
+        first.deduplicationKey = "FETCH_SINGLE_FEED:feed";
+        scheduler.execute(first);
+        // Cancelling another user's attached job only detaches it.
+        TestJob otherUsersJob = new TestJob(new Auth0UserProfile("other@example.com", "user_id:other"),
+            JobType.FETCH_SINGLE_FEED, () -> { });
+        otherUsersJob.deduplicationKey = first.deduplicationKey;
+        scheduler.execute(otherUsersJob);
+        otherUsersJob.requestCancellation();
+        assertThat(otherUsersJob.attachedToJobId, equalTo(null));
+        assertThat(otherUsersJob.status.completed, equalTo(true));
+        assertThat(first.isCancellationRequested(), equalTo(false));
+        // Cancelling the same user's attached job cancels the job it follows.
+        TestJob sameUsersJob = new TestJob(user, JobType.FETCH_SINGLE_FEED, () -> { });
+        sameUsersJob.deduplicationKey = first.deduplicationKey;
+        scheduler.execute(sameUsersJob);
+        sameUsersJob.requestCancellation();
+        assertThat(first.isCancellationRequested(), equalTo(true));
+        releaseFirstJob.countDown();
+    }
+
+    @Test
+    void canTurnAwayJobsOnceQueueIsFull() throws InterruptedException {
+        JobScheduler scheduler = new JobScheduler(1, new EnumMap<>(JobPriority.class), 1);
+        scheduler.setQueueLimits(10, 2);
+        Auth0UserProfile busyUser = Auth0UserProfile.createTestAdminUser();
+        String otherUserId = "user_id:other";
+        CountDownLatch releaseJobs = new CountDownLatch(1);
+        CountDownLatch jobsFinished = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute(new TestJob(busyUser, JobType.PROCESS_FEED, () -> {
+                releaseJobs.await();
+                jobsFinished.countDown();
+            }));
+        }
+        // One job is running and two are queued, so the busy user is at their limit but other users are not.
+        long retryAfterMillis = scheduler.retrieveRetryAfterMillis(
+            busyUser.getUser_id(),
+            JobPriority.INTERACTIVE,
+            MonitorableJob.JobWorkload.CPU
+        );
+        assertThat(retryAfterMillis > 0, equalTo(true));
+        assertThat(
+            scheduler.retrieveRetryAfterMillis(otherUserId, JobPriority.INTERACTIVE, MonitorableJob.JobWorkload.CPU),
+            equalTo(0L)
+        );
+        Map<String, Integer> stats = scheduler.getStats(busyUser.getUser_id());
+        assertThat(stats.get("queued"), equalTo(2));
+        assertThat(stats.get("estimatedWaitSeconds") > 0, equalTo(true));
+
+        releaseJobs.countDown();
+        assertThat(jobsFinished.await(10, TimeUnit.SECONDS), equalTo(true));
+        while (scheduler.getStats(busyUser.getUser_id()).get("running") > 0) Thread.sleep(10);
+        assertThat(
+            scheduler.retrieveRetryAfterMillis(
+                busyUser.getUser_id(),
+                JobPriority.INTERACTIVE,
+                MonitorableJob.JobWorkload.CPU
+            ),
+            equalTo(0L)
+        );
+    }
+
+    /**
+     * Compares running a mix of I/O-bound and CPU-bound jobs with and without a separate scheduler for I/O-bound jobs,
+     * logging the threads held and throughput of each.
+     */
+    @Test
+    void canRunIoBoundJobsWithoutHoldingCpuThreads() throws InterruptedException {
+        long sharedMillis = runMixedJobs(false);
+        long separateMillis = runMixedJobs(true);
+        // With 2 threads shared, the 10 jobs take at least 5 rounds. Separately, the I/O-bound jobs all wait at once.
+        assertThat(separateMillis < sharedMillis, equalTo(true));
+    }
+
+    /** @return the time taken to run 8 I/O-bound and 2 CPU-bound jobs (each taking 200 ms) */
+    private static long runMixedJobs(boolean separateIoJobs) throws InterruptedException {
+        JobScheduler scheduler = new JobScheduler(2, new EnumMap<>(JobPriority.class), 2);
+        if (separateIoJobs) scheduler.setIoScheduler(new JobScheduler(8, new EnumMap<>(JobPriority.class), 8));
+        Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+        int ioJobs = 8;
+        int cpuJobs = 2;
+        CountDownLatch finished = new CountDownLatch(ioJobs + cpuJobs);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peakRunning = new AtomicInteger();
+        JobBody body = () -> {
+            peakRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(200);
+            running.decrementAndGet();
+            finished.countDown();
+        };
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < ioJobs; i++) scheduler.execute(new TestJob(user, JobType.FETCH_SINGLE_FEED, body));
+        for (int i = 0; i < cpuJobs; i++) scheduler.execute(new TestJob(user, JobType.PROCESS_FEED, body));
+        assertThat(finished.await(30, TimeUnit.SECONDS), equalTo(true));
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        LOG.info(
+            "I/O-bound jobs {}: {} threads held at peak, {} jobs in {} ms ({} jobs/s)",
+            separateIoJobs ? "separate" : "shared",
+            peakRunning.get(),
+            ioJobs + cpuJobs,
+            elapsedMillis,
+            String.format("%.1f", (ioJobs + cpuJobs) * 1000D / elapsedMillis)
+        );
+        return elapsedMillis;
+    }
+
+    private interface JobBody {
+        void run() throws Exception;
+    }
+
+    private static class TestJob extends MonitorableJob {
+        private final transient JobBody body;
+        private final long memoryEstimate;
+        private String deduplicationKey;
+        private volatile String result;
+
+        TestJob(Auth0UserProfile owner, JobType type, JobBody body) {
+            this(owner, type, 0, body);
+        }
+
+        TestJob(Auth0UserProfile owner, JobType type, long memoryEstimate, JobBody body) {
+            super(owner, "Test job", type);
+            this.body = body;
+            this.memoryEstimate = memoryEstimate;
+        }
+
+        @Override
+        public long retrieveMemoryEstimate() {
+            return memoryEstimate;
+        }
+
+        @Override
+        public String retrieveDeduplicationKey() {
+            return deduplicationKey;
+        }
+
+        @Override
+        public Map<String, String> retrieveResults() {
+            return result != null ? Collections.singletonMap("result", result) : null;
+        }
+
+        @Override
+        public void applyResults(Map<String, String> results) {
+            result = results.get("result");
+        }
+
+        @Override
+        public void jobLogic() throws Exception {
+            body.run();
+        }
+    }
+}
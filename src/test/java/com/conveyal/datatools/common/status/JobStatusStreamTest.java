@@ -0,0 +1,65 @@
+package com.conveyal.datatools.common.status;
+
+import com.conveyal.datatools.UnitTest;
+import com.conveyal.datatools.common.status.MonitorableJob.JobType;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests that {@link JobStatusStream} only sends jobs that changed since the last message.
+ */
+public class JobStatusStreamTest extends UnitTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void canSendOnlyChangedJobs() throws IOException {
+        Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+        MonitorableJob job = new TestJob(user);
+        MonitorableJob otherJob = new TestJob(user);
+        JobStatusStream stream = new JobStatusStream();
+
+        // The first message contains all jobs.
+        JsonNode message = nextMessage(stream, job, otherJob);
+        assertThat(message.get("updated").size(), equalTo(2));
+        assertThat(message.get("removed").size(), equalTo(0));
+        // Nothing is sent if nothing changed.
+        assertThat(stream.nextMessage(JobStatusStream.serialize(Arrays.asList(job, otherJob))), nullValue());
+
+        // Several progress updates between messages are coalesced into the latest status.
+        job.status.update("Halfway", 50);
+        job.status.update("Almost done", 90);
+        message = nextMessage(stream, job, otherJob);
+        assertThat(message.get("updated").size(), equalTo(1));
+        assertThat(message.get("updated").get(0).get("jobId").asText(), equalTo(job.jobId));
+        assertThat(message.get("updated").get(0).get("status").get("message").asText(), equalTo("Almost done"));
+
+        // Jobs no longer present are listed as removed.
+        message = nextMessage(stream, job);
+        assertThat(message.get("updated").size(), equalTo(0));
+        assertThat(message.get("removed").get(0).asText(), equalTo(otherJob.jobId));
+    }
+
+    private static JsonNode nextMessage(JobStatusStream stream, MonitorableJob... jobs) throws IOException {
+        return mapper.readTree(stream.nextMessage(JobStatusStream.serialize(Arrays.asList(jobs))));
+    }
+
+    private static class TestJob extends MonitorableJob {
+        TestJob(Auth0UserProfile owner) {
+            super(owner, "Test job", JobType.UNKNOWN_TYPE);
+        }
+
+        @Override
+        public void jobLogic() {
+            // Nothing to do.
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.conveyal.datatools.common.status;
+
+import com.conveyal.datatools.UnitTest;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Tests for cooperative cancellation of {@link MonitorableJob}s and for running their sub-jobs.
+ */
+public class MonitorableJobTest extends UnitTest {
+    private static final Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+
+    @Test
+    void canCancelRunningJobAndSubJobs() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        LoopingJob job = new LoopingJob(started);
+        LoopingJob subJob = new LoopingJob(new CountDownLatch(1));
+        job.addNextJob(subJob);
+        Thread thread = new Thread(job);
+        thread.start();
+        assertThat(started.await(10, TimeUnit.SECONDS), equalTo(true));
+
+        job.requestCancellation();
+        thread.join(10000);
+        assertThat(job.status.cancelled, equalTo(true));
+        assertThat(job.status.completed, equalTo(true));
+        assertThat(job.cleanedUp, equalTo(true));
+        // The sub-job should never have started.
+        assertThat(subJob.status.completed, equalTo(true));
+        assertThat(subJob.iterations, equalTo(0));
+    }
+
+    @Test
+    void canFinishJobCancelledAfterItsWorkIsDone() {
+        StepJob job = new StepJob(null);
+        // The cancellation arrives as the job's work completes.
+        job.cancelWhenDone = true;
+        job.run();
+        assertThat(job.status.cancelled, equalTo(false));
+        assertThat(job.status.error, equalTo(false));
+        assertThat(job.finished, equalTo(true));
+    }
+
+    @Test
+    void canRunIndependentSubJobsAtTheSameTime() {
+        // Each of the independent sub-jobs waits until both have started, so they only complete if run together.
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        StepJob parent = new StepJob(null);
+        StepJob first = new StepJob(bothStarted);
+        StepJob second = new StepJob(bothStarted);
+        StepJob dependent = new StepJob(null);
+        parent.addSubJob(first);
+        parent.addSubJob(second);
+        parent.addSubJob(dependent, first, second);
+        parent.run();
+        assertThat(first.status.error, equalTo(false));
+        assertThat(second.status.error, equalTo(false));
+        assertThat(dependent.completedBeforeStart, equalTo(2));
+        assertThat(parent.status.error, equalTo(false));
+    }
+
+    @Test
+    void canCancelSubJobsAfterError() {
+        StepJob parent = new StepJob(null);
+        StepJob failing = new StepJob(null);
+        failing.fail = true;
+        StepJob next = new StepJob(null);
+        parent.addNextJob(failing, next);
+        parent.run();
+        assertThat(next.started, equalTo(false));
+        assertThat(next.status.error, equalTo(true));
+        assertThat(parent.status.error, equalTo(true));
+    }
+
+    /**
+     * Job that (optionally) waits on a latch, recording how many of its dependencies had completed when it started.
+     */
+    private static class StepJob extends MonitorableJob {
+        private final transient CountDownLatch latch;
+        private volatile boolean started = false;
+        private volatile boolean fail = false;
+        private volatile boolean cancelWhenDone = false;
+        private volatile boolean finished = false;
+        private volatile int completedBeforeStart = 0;
+
+        StepJob(CountDownLatch latch) {
+            super(user, "Step job", JobType.UNKNOWN_TYPE);
+            this.latch = latch;
+        }
+
+        @Override
+        public void jobLogic() throws InterruptedException {
+            started = true;
+            completedBeforeStart = (int) dependencies.stream().filter(job -> job.status.completed).count();
+            if (latch != null) {
+                latch.countDown();
+                if (!latch.await(10, TimeUnit.SECONDS)) status.fail("Timed out waiting on other sub-job");
+            }
+            if (fail) status.fail("Failed on purpose");
+            if (cancelWhenDone) requestCancellation();
+        }
+
+        @Override
+        public void jobFinished() {
+            finished = true;
+        }
+    }
+
+    /** Job that loops (with a cancellation checkpoint) until cancelled. */
+    private static class LoopingJob extends MonitorableJob {
+        private final transient CountDownLatch started;
+        private volatile int iterations = 0;
+        private volatile boolean cleanedUp = false;
+
+        LoopingJob(CountDownLatch started) {
+            super(user, "Looping job", JobType.UNKNOWN_TYPE);
+            this.started = started;
+        }
+
+        @Override
+        public void jobLogic() throws InterruptedException {
+            started.countDown();
+            while (true) {
+                checkCancelled();
+                iterations++;
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        protected void cleanUpAfterCancellation() {
+            cleanedUp = true;
+        }
+    }
+}
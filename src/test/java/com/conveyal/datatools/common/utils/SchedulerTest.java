@@ -0,0 +1,62 @@
+package com.conveyal.datatools.common.utils;
+
+import com.conveyal.datatools.UnitTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Tests for spreading out auto fetches with {@link Scheduler} and {@link AutoFetchStartTimes}.
+ */
+public class SchedulerTest extends UnitTest {
+    @Test
+    void canSpreadFetchesAcrossWindow() {
+        long windowSeconds = 3600;
+        Set<Long> minutesUsed = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            String feedSourceId = "feed-source-" + i;
+            long jitterSeconds = Scheduler.getJitterSeconds(feedSourceId, windowSeconds);
+            assertThat(jitterSeconds >= 0, equalTo(true));
+            assertThat(jitterSeconds, lessThan(windowSeconds));
+            // The jitter must not change between calls (e.g., after a restart).
+            assertThat(Scheduler.getJitterSeconds(feedSourceId, windowSeconds), equalTo(jitterSeconds));
+            minutesUsed.add(jitterSeconds / 60);
+        }
+        // 100 feeds should be spread over many of the 60 minutes in the window, rather than bunched together.
+        assertThat(minutesUsed.size(), greaterThan(30));
+        assertThat(Scheduler.getJitterSeconds("feed-source", 0), equalTo(0L));
+    }
+
+    @Test
+    void canSpaceFetchesScheduledForSameTime() {
+        long spacingMillis = TimeUnit.SECONDS.toMillis(6);
+        long intervalMillis = TimeUnit.DAYS.toMillis(1);
+        long startMillis = TimeUnit.DAYS.toMillis(20000) + TimeUnit.HOURS.toMillis(2);
+        AutoFetchStartTimes startTimes = new AutoFetchStartTimes(spacingMillis);
+        for (int i = 0; i < 10; i++) {
+            assertThat(
+                startTimes.reserve("feed-source-" + i, startMillis, intervalMillis),
+                equalTo(startMillis + i * spacingMillis)
+            );
+        }
+        // A fetch scheduled a day later recurs at the same times as the others, so it is kept apart from them too.
+        assertThat(
+            startTimes.reserve("next-day", startMillis + intervalMillis + 1000, intervalMillis),
+            equalTo(startMillis + intervalMillis + 10 * spacingMillis)
+        );
+        // Rescheduling a feed source frees up its previous start time.
+        startTimes.reserve("feed-source-0", startMillis + TimeUnit.HOURS.toMillis(1), intervalMillis);
+        assertThat(startTimes.reserve("another", startMillis, intervalMillis), equalTo(startMillis));
+        // Fetches with a different interval do not recur at the same times, so they are not kept apart.
+        assertThat(startTimes.reserve("hourly", startMillis, TimeUnit.HOURS.toMillis(1)), equalTo(startMillis));
+        // Without a rate limit, fetches start at the requested time.
+        assertThat(new AutoFetchStartTimes(0).reserve("feed-source-1", startMillis, intervalMillis), equalTo(startMillis));
+    }
+}
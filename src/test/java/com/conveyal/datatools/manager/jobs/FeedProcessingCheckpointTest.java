@@ -0,0 +1,120 @@
+package com.conveyal.datatools.manager.jobs;
+
+import com.conveyal.datatools.DatatoolsTest;
+import com.conveyal.datatools.TestUtils;
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.FeedProcessingCheckpoint;
+import com.conveyal.datatools.manager.models.FeedRetrievalMethod;
+import com.conveyal.datatools.manager.models.FeedSource;
+import com.conveyal.datatools.manager.models.FeedVersion;
+import com.conveyal.datatools.manager.models.JobRecord;
+import com.conveyal.datatools.manager.models.Project;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests that processing of a feed interrupted after the load stage is recovered from its
+ * {@link FeedProcessingCheckpoint} without loading the feed again.
+ */
+public class FeedProcessingCheckpointTest extends DatatoolsTest {
+    private static final Auth0UserProfile user = Auth0UserProfile.createTestAdminUser();
+    private static Project project;
+    private static FeedSource feedSource;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        DatatoolsTest.setUp();
+        project = new Project();
+        project.name = TestUtils.appendDate("Checkpoint test project");
+        Persistence.projects.create(project);
+        feedSource = new FeedSource("Checkpoint test feed", project.id, FeedRetrievalMethod.MANUALLY_UPLOADED);
+        Persistence.feedSources.create(feedSource);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        feedSource.delete();
+        project.delete();
+    }
+
+    @Test
+    void canResumeProcessingAfterLoad() {
+        FeedVersion version = TestUtils.getFeedVersionFromGTFSFile(
+            feedSource,
+            new File(TestUtils.getGtfsResourcePath("caltrain_gtfs_lite.zip"))
+        );
+        ProcessSingleFeedJob job = new ProcessSingleFeedJob(version, user, true);
+        // Recording the job for recovery records the checkpoint.
+        Map<String, String> parameters = job.retrieveRecoveryParameters();
+        assertThat(FeedProcessingCheckpoint.retrieve(version.id), nullValue());
+        assertThat(job.saveRecoveryState(), equalTo(true));
+        assertThat(FeedProcessingCheckpoint.retrieve(version.id), notNullValue());
+
+        // Load the feed, as the job would have before the server stopped.
+        LoadFeedJob loadFeedJob = new LoadFeedJob(version, user, true);
+        loadFeedJob.run();
+        assertThat(loadFeedJob.status.error, equalTo(false));
+        FeedProcessingCheckpoint checkpoint = FeedProcessingCheckpoint.retrieve(version.id);
+        assertThat(checkpoint.loadedAt, notNullValue());
+        assertThat(checkpoint.feedVersion.namespace, equalTo(version.namespace));
+
+        JobRecord record = new JobRecord();
+        record.userId = Auth0UserProfile.SYSTEM_USER_ID;
+        record.type = MonitorableJob.JobType.PROCESS_FEED;
+        record.parameters = parameters;
+        MonitorableJob resumedJob = JobRecovery.recreate(record);
+        resumedJob.run();
+        assertThat(resumedJob.status.error, equalTo(false));
+
+        // The resumed job validated and stored the namespace that was already loaded.
+        FeedVersion storedVersion = Persistence.feedVersions.getById(version.id);
+        assertThat(storedVersion.namespace, equalTo(version.namespace));
+        assertThat(storedVersion.validationResult, notNullValue());
+        assertThat(FeedProcessingCheckpoint.retrieve(version.id), nullValue());
+    }
+
+    @Test
+    void canResumeProcessingAfterVersionWasStored() {
+        FeedVersion version = TestUtils.getFeedVersionFromGTFSFile(
+            feedSource,
+            new File(TestUtils.getGtfsResourcePath("caltrain_gtfs_lite.zip"))
+        );
+        ProcessSingleFeedJob job = new ProcessSingleFeedJob(version, user, true);
+        Map<String, String> parameters = job.retrieveRecoveryParameters();
+        assertThat(job.saveRecoveryState(), equalTo(true));
+        LoadFeedJob loadFeedJob = new LoadFeedJob(version, user, true);
+        loadFeedJob.run();
+        assertThat(loadFeedJob.status.error, equalTo(false));
+        // Store the version, as validation would have before the server stopped during the sub-jobs that follow.
+        int versionCount = feedSource.feedVersionCount();
+        version.version = versionCount + 1;
+        Persistence.feedVersions.create(version);
+
+        JobRecord record = new JobRecord();
+        record.userId = Auth0UserProfile.SYSTEM_USER_ID;
+        record.type = MonitorableJob.JobType.PROCESS_FEED;
+        record.parameters = parameters;
+        MonitorableJob resumedJob = JobRecovery.recreate(record);
+        resumedJob.run();
+        assertThat(resumedJob.status.error, equalTo(false));
+
+        // The stored version was updated rather than created (and numbered) again.
+        assertThat(feedSource.feedVersionCount(), equalTo(versionCount + 1));
+        FeedVersion storedVersion = Persistence.feedVersions.getById(version.id);
+        assertThat(storedVersion.version, equalTo(versionCount + 1));
+        assertThat(storedVersion.validationResult, notNullValue());
+        assertThat(FeedProcessingCheckpoint.retrieve(version.id), nullValue());
+    }
+}
@@ -0,0 +1,117 @@
+package com.conveyal.datatools.manager.jobs;
+
+import com.conveyal.datatools.DatatoolsTest;
+import com.conveyal.datatools.common.status.MonitorableJob.JobType;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.JobRecord;
+import com.conveyal.datatools.manager.models.Project;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests that {@link JobRecovery} requeues interrupted jobs once and removes the records it handles, leaving the jobs of
+ * servers that are still running.
+ */
+public class JobRecoveryTest extends DatatoolsTest {
+    private static Project project;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        DatatoolsTest.setUp();
+        // A project without feed sources, so that the recovered fetch has nothing to do.
+        project = new Project();
+        project.name = "Job recovery test project";
+        Persistence.projects.create(project);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        Persistence.projects.removeById(project.id);
+    }
+
+    @Test
+    void canRecoverInterruptedJobsOnce() {
+        Map<String, String> fetchProjectParameters = Collections.singletonMap("projectId", project.id);
+        List<JobRecord> records = Arrays.asList(
+            createRecord(JobType.FETCH_PROJECT_FEEDS, fetchProjectParameters, JobRecord.State.RUNNING, 0),
+            // Identical to the first record, e.g., left over from a restart during a previous recovery.
+            createRecord(JobType.FETCH_PROJECT_FEEDS, fetchProjectParameters, JobRecord.State.QUEUED, 1),
+            createRecord(JobType.PROCESS_FEED, null, JobRecord.State.RUNNING, 0),
+            // Records that cannot be recreated are each lost (not duplicates of one another).
+            createRecord(JobType.PROCESS_FEED, null, JobRecord.State.QUEUED, 0),
+            createRecord(
+                JobType.FETCH_PROJECT_FEEDS,
+                Collections.singletonMap("projectId", "deleted-project"),
+                JobRecord.State.QUEUED,
+                JobRecovery.MAX_ATTEMPTS
+            )
+        );
+        Map<String, Object> stats = JobRecovery.recover(records);
+        assertThat(stats.get("restarted"), equalTo(1));
+        assertThat(stats.get("requeued"), equalTo(0));
+        assertThat(stats.get("duplicates"), equalTo(1));
+        assertThat(stats.get("lost"), equalTo(2));
+        assertThat(stats.get("dropped"), equalTo(1));
+        for (JobRecord record : records) {
+            assertThat(Persistence.jobRecords.getById(record.id), nullValue());
+        }
+    }
+
+    @Test
+    void canLeaveJobsOfRunningServers() {
+        Map<String, String> parameters = Collections.singletonMap("projectId", project.id);
+        JobRecord running = createRecord(JobType.FETCH_PROJECT_FEEDS, parameters, JobRecord.State.RUNNING, 0);
+        running.serverId = "running-server";
+        running.heartbeatAt = new Date();
+        Persistence.jobRecords.replace(running.id, running);
+        JobRecord stopped = createRecord(JobType.FETCH_PROJECT_FEEDS, parameters, JobRecord.State.RUNNING, 0);
+        stopped.serverId = "stopped-server";
+        stopped.heartbeatAt = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5));
+        Persistence.jobRecords.replace(stopped.id, stopped);
+
+        List<String> interruptedIds = Persistence.jobQueue.retrieveInterruptedJobs(TimeUnit.MINUTES.toMillis(1))
+            .stream()
+            .map(record -> record.id)
+            .collect(Collectors.toList());
+        assertThat(interruptedIds.contains(stopped.id), equalTo(true));
+        assertThat(interruptedIds.contains(running.id), equalTo(false));
+        // This server has taken over the stopped server's record.
+        assertThat(
+            Persistence.jobRecords.getById(stopped.id).serverId,
+            equalTo(Persistence.jobQueue.retrieveServerId())
+        );
+        Persistence.jobRecords.removeById(running.id);
+        Persistence.jobRecords.removeById(stopped.id);
+    }
+
+    private static JobRecord createRecord(
+        JobType type,
+        Map<String, String> parameters,
+        JobRecord.State state,
+        int attempts
+    ) {
+        JobRecord record = new JobRecord();
+        record.userId = Auth0UserProfile.SYSTEM_USER_ID;
+        record.type = type;
+        record.state = state;
+        record.parameters = parameters;
+        record.attempts = attempts;
+        Persistence.jobRecords.create(record);
+        return record;
+    }
+}
@@ -0,0 +1,71 @@
+package com.conveyal.datatools.manager.jobs;
+
+import com.conveyal.datatools.DatatoolsTest;
+import com.conveyal.datatools.UnitTest;
+import com.conveyal.datatools.common.status.MonitorableJob;
+import com.conveyal.datatools.manager.auth.Auth0UserProfile;
+import com.conveyal.datatools.manager.models.JobRecord;
+import com.conveyal.datatools.manager.persistence.JobQueueStore;
+import com.conveyal.datatools.manager.persistence.Persistence;
+import com.conveyal.datatools.manager.utils.JobUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests that jobs offloaded by {@link OffloadedJobs} are run by a {@link JobWorker} and that claims of workers that
+ * stop reporting are released to other workers.
+ */
+public class JobWorkerTest extends UnitTest {
+    @BeforeAll
+    public static void setUp() throws IOException {
+        DatatoolsTest.setUp();
+    }
+
+    @Test
+    void canRunOffloadedJobOnWorker() throws InterruptedException {
+        OffloadedJobs offloadedJobs = new OffloadedJobs(JobUtils.heavyExecutor);
+        // Safe to run against any database, because it skips feed versions that do not need migrating.
+        MonitorableJob job = new StoreValidationResultsJob(Auth0UserProfile.createSystemUser());
+        assertThat(offloadedJobs.offload(job), equalTo(true));
+        assertThat(Persistence.jobRecords.getById(job.jobId).state, equalTo(JobRecord.State.OFFLOADED));
+        // The API server's copy of the job counts as in progress while a worker runs it.
+        assertThat(job.active, equalTo(true));
+
+        JobWorker worker = new JobWorker("test-worker", 1, TimeUnit.MINUTES.toMillis(1));
+        for (int i = 0; i < 100 && !job.status.completed; i++) {
+            worker.poll();
+            offloadedJobs.sync();
+            Thread.sleep(100);
+        }
+        assertThat(job.status.completed, equalTo(true));
+        assertThat(job.status.error, equalTo(false));
+        assertThat(job.active, equalTo(false));
+        assertThat(Persistence.jobRecords.getById(job.jobId), nullValue());
+    }
+
+    @Test
+    void canReleaseClaimOfStoppedWorker() throws InterruptedException {
+        JobQueueStore store = Persistence.jobQueue;
+        MonitorableJob job = new StoreValidationResultsJob(Auth0UserProfile.createSystemUser());
+        assertThat(store.offload(job), equalTo(true));
+        assertThat(store.claimOffloadedJob("stopped-worker").id, equalTo(job.jobId));
+        assertThat(store.claimOffloadedJob("other-worker"), nullValue());
+
+        // Let the heartbeat go stale.
+        Thread.sleep(10);
+        assertThat(store.releaseStaleClaims(0, JobRecovery.MAX_ATTEMPTS), equalTo(1));
+        JobRecord record = store.claimOffloadedJob("other-worker");
+        assertThat(record.id, equalTo(job.jobId));
+        assertThat(record.attempts, equalTo(1));
+        // The stopped worker can no longer report on the job.
+        assertThat(store.reportStatus(job.jobId, "stopped-worker", job.status, null), nullValue());
+        store.removeRecord(job.jobId);
+    }
+}
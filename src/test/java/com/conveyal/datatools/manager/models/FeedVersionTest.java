@@ -19,6 +19,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.stream.Stream;
 
@@ -68,6 +69,78 @@ public class FeedVersionTest extends UnitTest {
         assertThat(feedVersion1.id, not(equalTo(feedVersion2.id)));
     }
 
+    /**
+     * Make sure the denormalized version summary on the feed source is kept up to date as versions are created and
+     * deleted.
+     */
+    @Test
+    void canMaintainFeedSourceVersionSummary() {
+        FeedSource summarizedFeedSource = new FeedSource("Summarized feed source");
+        summarizedFeedSource.projectId = project.id;
+        Persistence.feedSources.create(summarizedFeedSource);
+        FeedVersion version = createFeedVersionFromGtfsZip(summarizedFeedSource, "bart_old_lite.zip");
+
+        FeedSource.VersionSummary summary = Persistence.feedSources.getById(summarizedFeedSource.id).versionSummary;
+        assertThat(summary.versionCount, equalTo(1L));
+        assertThat(summary.latestVersionId, equalTo(version.id));
+        assertThat(summary.latestValidation.feedVersionId, equalTo(version.id));
+
+        version.delete();
+        summary = Persistence.feedSources.getById(summarizedFeedSource.id).versionSummary;
+        assertThat(summary.versionCount, equalTo(0L));
+        assertThat(summary.latestVersionId, equalTo(null));
+
+        // Rebuilding should yield the same result.
+        FeedSource.rebuildVersionSummaries(false);
+        assertThat(Persistence.feedSources.getById(summarizedFeedSource.id).versionSummary.versionCount, equalTo(0L));
+    }
+
+    /**
+     * Make sure the full validation result is stored outside of the feed version, leaving a compact copy embedded.
+     */
+    @Test
+    void canStoreValidationResultSeparately() {
+        FeedVersion version = createFeedVersionFromGtfsZip(feedSource, "bart_old_lite.zip");
+        ValidationResult embeddedResult = Persistence.feedVersions.getById(version.id).validationResult;
+        ValidationResult fullResult = version.retrieveFullValidationResult();
+        assertThat(Persistence.validationResults.isCompact(embeddedResult), equalTo(true));
+        assertThat(Persistence.validationResults.isCompact(fullResult), equalTo(false));
+        assertThat(embeddedResult.lastCalendarDate, equalTo(fullResult.lastCalendarDate));
+        assertThat(embeddedResult.errorCount, equalTo(fullResult.errorCount));
+
+        version.delete();
+        assertThat(Persistence.validationResults.retrieve(version.id), equalTo(null));
+    }
+
+    /**
+     * Make sure the feed version bounds stored on a deployment are recomputed when the deployment's versions change,
+     * and that reading the bounds does not store them.
+     */
+    @Test
+    void canCacheDeploymentBounds() {
+        FeedVersion version = createFeedVersionFromGtfsZip(feedSource, "bart_old_lite.zip");
+        Deployment deployment = new Deployment();
+        deployment.projectId = project.id;
+        Persistence.deployments.create(deployment);
+
+        assertThat(deployment.retrieveFeedVersionBounds(), equalTo(null));
+
+        deployment.feedVersionIds = Collections.singletonList(version.id);
+        Persistence.deployments.updateField(deployment.id, "feedVersionIds", deployment.feedVersionIds);
+        Bounds bounds = deployment.retrieveFeedVersionBounds();
+        assertThat(bounds.areValid(), equalTo(true));
+        assertThat(Persistence.deployments.getById(deployment.id).boundsCache, equalTo(null));
+        // Once stored, the bounds should be stored along with the versions they were computed from.
+        deployment.storeBoundsCache();
+        Deployment.BoundsCache cache = Persistence.deployments.getById(deployment.id).boundsCache;
+        assertThat(cache.feedVersionIds, equalTo(Collections.singleton(version.id)));
+        assertThat(cache.bounds.north, equalTo(bounds.north));
+
+        Deployment.clearBoundsCache(version.id);
+        cache = Persistence.deployments.getById(deployment.id).boundsCache;
+        assertThat(cache.bounds.north, equalTo(bounds.north));
+    }
+
     /**
      * Detect feeds with fatal exceptions (a blocking issue for publishing).
      */
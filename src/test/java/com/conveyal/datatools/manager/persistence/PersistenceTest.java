@@ -10,7 +10,10 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  * Created by landon on 9/6/17.
@@ -47,6 +50,23 @@ public class PersistenceTest extends UnitTest {
             "Found FeedSource ID should equal inserted ID.");
     }
 
+    @Test
+    public void bulkWriteFeedSources() {
+        FeedSource first = new FeedSource("bulk feed source 1");
+        FeedSource second = new FeedSource("bulk feed source 2");
+        assertEquals(2, Persistence.feedSources.createMany(Arrays.asList(first, second)));
+        try (BulkWriter<FeedSource> writer = Persistence.feedSources.bulkWriter()) {
+            writer.updateField(first.id, "name", "renamed");
+            writer.removeById(second.id);
+            writer.flush();
+            assertEquals(1, writer.getModifiedCount());
+            assertEquals(1, writer.getDeletedCount());
+        }
+        assertEquals("renamed", Persistence.feedSources.getById(first.id).name);
+        assertNull(Persistence.feedSources.getById(second.id));
+        Persistence.feedSources.removeById(first.id);
+    }
+
 //    @Test
 //    public void createOrganization() {
 //        Organization organization = new Organization();
@@ -0,0 +1,58 @@
+package com.conveyal.datatools.manager.persistence;
+
+import com.conveyal.datatools.DatatoolsTest;
+import com.conveyal.datatools.UnitTest;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests that {@link ResourceLockStore} only lets one holder hold a lock at a time and fences off expired holders.
+ */
+public class ResourceLockStoreTest extends UnitTest {
+    @BeforeAll
+    public static void setUp() throws IOException {
+        DatatoolsTest.setUp();
+    }
+
+    @Test
+    void canOnlyAcquireLockOnce() {
+        ResourceLockStore locks = Persistence.resourceLocks;
+        String resourceId = UUID.randomUUID().toString();
+        ResourceLockStore.Lease lease = locks.acquire(resourceId, "first");
+        assertThat(lease, notNullValue());
+        assertThat(locks.acquire(resourceId, "second"), nullValue());
+
+        locks.release(lease);
+        assertThat(locks.isCurrent(lease), equalTo(false));
+        ResourceLockStore.Lease nextLease = locks.acquire(resourceId, "second");
+        assertThat(nextLease, notNullValue());
+        assertThat(nextLease.fencingToken, greaterThan(lease.fencingToken));
+        locks.release(nextLease);
+    }
+
+    @Test
+    void canTakeOverExpiredLock() throws InterruptedException {
+        ResourceLockStore locks = Persistence.resourceLocks.withLeaseMillis(100);
+        String resourceId = UUID.randomUUID().toString();
+        ResourceLockStore.Lease expiredLease = locks.acquire(resourceId, "stalled");
+        Thread.sleep(200);
+
+        ResourceLockStore.Lease lease = locks.acquire(resourceId, "other");
+        assertThat(lease, notNullValue());
+        // The stalled holder can no longer renew, write under or release the lock.
+        assertThat(locks.renew(expiredLease), equalTo(false));
+        assertThat(locks.isCurrent(expiredLease), equalTo(false));
+        locks.release(expiredLease);
+        assertThat(locks.isCurrent(lease), equalTo(true));
+        locks.release(lease);
+    }
+}